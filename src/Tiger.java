@@ -1,33 +1,273 @@
-import java.io.BufferedInputStream;
-import java.io.FileInputStream;
-import java.io.InputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
+import ast.Ast;
+import ast.AstDump;
+import elaborator.Elaborator;
+import elaborator.TypeError;
 import lexer.Lexer;
-import lexer.Token;
+import lexer.ParallelLexer;
+import lexer.Source;
+import lexer.TokFile;
+import lexer.TokenBuffer;
+import lexer.TokenCursor;
+import lexer.TokenDump;
+import lexer.TokenPipe;
+import parser.ClassIndex;
+import parser.Diagnostic;
+import parser.LLParser;
+import parser.ParallelParser;
 import parser.Parser;
+import control.Batch;
+import control.Cache;
 import control.CommandLine;
-import control.Control;
+import control.CompilerContext;
+import control.Daemon;
+import control.FlightRecording;
+import control.Metrics;
+import control.Options;
 
 public class Tiger
 {
+  // lex a whole file on -lexthreads threads
+  static TokenBuffer lexInParallel(String fname, CompilerContext context)
+      throws IOException
+  {
+    Metrics.Timer read = context.metrics.start("read");
+    byte[] input = Files.readAllBytes(Paths.get(fname));
+    read.stop(input.length, "bytes");
+    return lexInParallel(input, context);
+  }
+
+  static TokenBuffer lexInParallel(byte[] input, CompilerContext context)
+  {
+    int threads = context.options.lexThreads;
+    if (threads == 0)
+      threads = Runtime.getRuntime().availableProcessors();
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      Metrics.Timer lex = context.metrics.start("lex");
+      TokenBuffer tokens = ParallelLexer.lex(input, context, pool);
+      lex.stop(tokens.size(), "tokens");
+      return tokens;
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  // parse all the tokens of a file on -parsethreads threads
+  static Ast parseInParallel(TokenBuffer tokens, CompilerContext context)
+  {
+    int threads = context.options.parseThreads;
+    if (threads == 0)
+      threads = Runtime.getRuntime().availableProcessors();
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      return new ParallelParser(tokens, pool, context).parse();
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  // all the tokens of a file: read back from a .tok file, or lexed
+  static TokenBuffer tokens(String fname, CompilerContext context)
+      throws IOException
+  {
+    if (fname.endsWith(".tok")) {
+      Metrics.Timer read = context.metrics.start("read");
+      byte[] bytes = Files.readAllBytes(Paths.get(fname));
+      read.stop(bytes.length, "bytes");
+      Metrics.Timer lex = context.metrics.start("lex");
+      TokenBuffer tokens = TokFile.read(new ByteArrayInputStream(bytes),
+          context.symbols);
+      lex.stop(tokens.size(), "tokens");
+      return tokens;
+    }
+    if (context.options.lexThreads != 1)
+      return lexInParallel(fname, context);
+
+    Metrics.Timer read = context.metrics.start("read");
+    Source source = Source.open(fname);
+    read.stop(Math.max(0, source.length()), "bytes");
+    Metrics.Timer lex = context.metrics.start("lex");
+    Lexer lexer = new Lexer(fname, source, context);
+    while (lexer.scan())
+      ;
+    source.close();
+    lex.stop(lexer.tokens().size(), "tokens");
+    return lexer.tokens();
+  }
+
+  // the parse of the tokens, on -parsethreads threads, by the -parser
+  static Ast parse(TokenBuffer tokens, CompilerContext context)
+  {
+    Metrics.Timer parse = context.metrics.start("parse");
+    Ast ast;
+    if (context.options.parseThreads != 1)
+      ast = parseInParallel(tokens, context);
+    else if (context.options.backend == Options.Backend.TABLE)
+      ast = new LLParser(tokens, context).parse();
+    else
+      ast = new Parser(new TokenCursor(tokens), context).parse();
+    parse.stop(ast.size(), "nodes");
+    return ast;
+  }
+
+  // type check a tree without syntax errors, if -check; whether it has
+  // no type errors
+  static boolean check(Ast ast, CompilerContext context)
+  {
+    if (!context.options.check)
+      return true;
+    Metrics.Timer check = context.metrics.start("check");
+    List<TypeError> errors = new Elaborator(ast).check();
+    check.stop(ast.tokens().lineCount(), "lines");
+    Elaborator.report(errors, ast.tokens());
+    return errors.isEmpty();
+  }
+
+  // the -lex dump and the -tok file of the tokens, if asked for
+  static void output(TokenBuffer tokens, Options options) throws IOException
+  {
+    if (options.dumpTokens)
+      dump(tokens, tokens.size());
+    if (options.tokFile != null) {
+      try (OutputStream out = new BufferedOutputStream(new FileOutputStream(
+          options.tokFile))) {
+        TokFile.write(tokens, out);
+      }
+    }
+  }
+
+  // Compile through the -cache: the file is read whole, and lexed and
+  // parsed only if its bytes were not compiled before. -lex and -tok are
+  // served from the tokens of a hit; -lexthreads, -parsethreads and
+  // -parser choose how a miss is lexed and parsed.
+  static void compileCached(String fname, CompilerContext context)
+      throws IOException
+  {
+    Options options = context.options;
+    Cache cache = new Cache(Paths.get(options.cacheDir), options.cacheLimit);
+    Metrics.Timer read = context.metrics.start("read");
+    byte[] bytes = Files.readAllBytes(Paths.get(fname));
+    read.stop(bytes.length, "bytes");
+    Metrics.Timer lookup = context.metrics.start("cache");
+    String key = Cache.key(bytes, fname.endsWith(".tok"), options);
+    boolean tree = options.dumpAst || options.check;
+    boolean lexed = options.dumpTokens || options.tokFile != null;
+    Cache.Entry hit = cache.get(key, tree || lexed);
+    lookup.stop(hit == null ? 0 : 1, "hits");
+
+    TokenBuffer tokens = null;
+    Ast ast = null;
+    List<Diagnostic> diagnostics;
+    if (hit != null) {
+      // decode only what is printed
+      diagnostics = hit.diagnostics();
+      if (!diagnostics.isEmpty() || tree || lexed)
+        tokens = hit.tokens(context.symbols);
+      output(tokens, options);
+      if (diagnostics.isEmpty() && tree)
+        ast = hit.ast(tokens, options.astOffHeap);
+      Parser.report(diagnostics, tokens, options.maxErrors);
+    } else {
+      if (fname.endsWith(".tok") || options.lexThreads == 1) {
+        Metrics.Timer lex = context.metrics.start("lex");
+        if (fname.endsWith(".tok"))
+          tokens = TokFile.read(new ByteArrayInputStream(bytes),
+              context.symbols);
+        else {
+          Lexer lexer = new Lexer(fname, Source.of(bytes), context);
+          while (lexer.scan())
+            ;
+          tokens = lexer.tokens();
+        }
+        lex.stop(tokens.size(), "tokens");
+      } else
+        tokens = lexInParallel(bytes, context);
+      output(tokens, options);
+      // with -cacheclasses, only the classes that changed since the file
+      // was last compiled, if it was indexed then (see Cache)
+      Path path = Paths.get(fname);
+      ClassIndex classes = options.cacheClasses ? cache.classes(path) : null;
+      if (classes == null)
+        ast = parse(tokens, context);
+      else {
+        Metrics.Timer parse = context.metrics.start("parse");
+        classes = ClassIndex.parse(tokens, context, classes);
+        ast = classes.ast();
+        parse.stop(ast.size(), "nodes");
+        Parser.report(context.diagnostics(), tokens, options.maxErrors);
+      }
+      diagnostics = context.diagnostics();
+      Metrics.Timer store = context.metrics.start("store");
+      try {
+        cache.put(key, tokens, ast, diagnostics);
+        if (options.cacheClasses)
+          cache.putClasses(path, classes == null ? ClassIndex.EMPTY
+              : classes);
+        cache.trim();
+      } catch (IOException e) {
+        // the cache is only an optimization
+      }
+      store.stop(ast.size(), "nodes");
+    }
+    System.err.println(cache.stats());
+    if (!diagnostics.isEmpty() || !check(ast, context))
+      finish(context, 1);
+    if (options.dumpAst)
+      AstDump.write(ast, System.out);
+    finish(context, 0);
+  }
+
+  // write the -metrics report, and end with status if it is not 0
+  static void finish(CompilerContext context, int status) throws IOException
+  {
+    context.metrics.report(context.options, Paths.get(""), System.err);
+    if (status != 0)
+      System.exit(status);
+  }
+
+  // the token stream, as -lex and -testlexer show it
+  static void dump(TokenBuffer tokens, int count) throws IOException
+  {
+    TokenDump dump = new TokenDump(System.out);
+    dump.write(tokens, 0, count);
+    dump.flush();
+  }
+
   public static void main(String[] args)
   {
-    InputStream fstream;
+    Source source;
     Parser parser;
+    Ast ast;
 
     // ///////////////////////////////////////////////////////
     // handle command line arguments
     CommandLine cmd = new CommandLine();
     String fname = cmd.scan(args);
+    Options options = cmd.options();
+    CompilerContext context = new CompilerContext(options,
+        fname == null ? "" : fname);
+    if (options.jfrFile != null)
+      FlightRecording.start(options.jfrFile);
 
     // /////////////////////////////////////////////
     // the straight-line interpreter (and compiler)    
-    switch (Control.ConSlp.action){
+    switch (options.slp){
     case NONE:
       break;
     default:
-      slp.Main slpmain = new slp.Main();
-      if (Control.ConSlp.div) {
+      slp.Main slpmain = new slp.Main(context);
+      if (options.slpDiv) {
         slpmain.doit(slp.Samples.dividebyzero);
         System.exit(0);
       }
@@ -35,26 +275,30 @@ public class Tiger
       System.exit(0);
     }
 
-    
+    // a compiler that stays up, for clients to send compiles to
+    if (options.socket != null) {
+      Daemon.run(options);
+      return;
+    }
+
     if (fname == null) {
       cmd.usage();
       return;
     }
 
+    // many files, or a directory of them: compile them all in this JVM
+    if (cmd.batch(Paths.get("")))
+      System.exit(Batch.run(cmd.files(), options) == 0 ? 0 : 1);
+
     // /////////////////////////////////////////////////////
     // it would be helpful to be able to test the lexer
     // independently.
-    if (Control.ConLexer.test) {
+    if (options.testLexer) {
       System.out.println("Testing the lexer. All tokens:");
       try {
-        fstream = new BufferedInputStream(new FileInputStream(fname));
-        Lexer lexer = new Lexer(fname, fstream);
-        Token token = lexer.nextToken();
-        while (token.kind != Token.Kind.TOKEN_EOF) {
-          System.out.println(token.toString());
-          token = lexer.nextToken();
-        }
-        fstream.close();
+        TokenBuffer tokens = tokens(fname, context);
+        // all but TOKEN_EOF
+        dump(tokens, tokens.size() - 1);
       } catch (Exception e) {
         e.printStackTrace();
       }
@@ -64,12 +308,56 @@ public class Tiger
     // /////////////////////////////////////////////////////////
     // normal compilation phases.
     try {
-      fstream = new BufferedInputStream(new FileInputStream(fname));
-      parser = new Parser(fname, fstream);
-
-      parser.parse();
+      // what compiling these bytes produced before, if it was kept
+      if (options.cacheDir != null) {
+        compileCached(fname, context);
+        return;
+      }
 
-      fstream.close();
+      // the parser pulls tokens from the lexer as it goes, unless the
+      // whole token stream is wanted first, or the phases are timed
+      // without -pipeline (which CommandLine keeps from the others)
+      if (!options.pipeline && (fname.endsWith(".tok")
+          || options.lexThreads != 1 || options.parseThreads != 1
+          || options.backend != Options.Backend.DESCENT
+          || options.dumpTokens || options.tokFile != null
+          || options.metrics != null || options.jfrFile != null)) {
+        TokenBuffer tokens = tokens(fname, context);
+        output(tokens, options);
+        ast = parse(tokens, context);
+        if (!context.diagnostics().isEmpty() || !check(ast, context))
+          finish(context, 1);
+        if (options.dumpAst)
+          AstDump.write(ast, System.out);
+        finish(context, 0);
+        return;
+      }
+      if (options.pipeline) {
+        // the lexer runs ahead on its own thread, and times itself there
+        Metrics.Timer read = context.metrics.start("read");
+        source = Source.open(fname);
+        read.stop(Math.max(0, source.length()), "bytes");
+        TokenPipe pipe = TokenPipe.lex(fname, source, context);
+        Metrics.Timer parse = context.metrics.start("parse");
+        ast = new Parser(new TokenCursor(pipe), context).parse();
+        parse.stop(ast.size(), "nodes");
+        pipe.cancel();
+        source.close();
+        if (!context.diagnostics().isEmpty() || !check(ast, context))
+          finish(context, 1);
+        if (options.dumpAst)
+          AstDump.write(ast, System.out);
+        finish(context, 0);
+        return;
+      }
+      source = Source.open(fname);
+      parser = new Parser(fname, source, context);
+      ast = parser.parse();
+      source.close();
+      if (!parser.diagnostics().isEmpty() || !check(ast, context))
+        System.exit(1);
+      if (options.dumpAst)
+        AstDump.write(ast, System.out);
     } catch (Exception e) {
       e.printStackTrace();
       System.exit(1);
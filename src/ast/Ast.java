@@ -0,0 +1,279 @@
+package ast;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import lexer.TokenBuffer;
+import util.Symbol;
+
+/**
+ * A syntax tree, stored as an arena of nodes numbered from 0.
+ *
+ * Node n has a kind, its first child, its next sibling (NIL for none) and
+ * the index of its token in the TokenBuffer the tree was parsed from, from
+ * which its position and symbol, if any, are found. That is sixteen bytes
+ * a node in four parallel int arrays, and no object per node; the children
+ * a node of each kind has are listed in NodeKind.
+ *
+ * The arrays live on the Java heap, or optionally off it, in pages of
+ * direct memory, so that a tree for a very large input is neither limited
+ * by the size of a Java array nor scanned by the garbage collector.
+ */
+public final class Ast {
+    public static final int NIL = -1;
+    private static final NodeKind[] KINDS = NodeKind.values();
+
+    private static final int KIND = 0;
+    private static final int FIRST = 1;
+    private static final int NEXT = 2;
+    private static final int TOKEN = 3;
+
+    // where the four fields of the nodes are kept
+    private abstract static class Store {
+        abstract int get(int field, int n);
+
+        abstract void set(int field, int n, int value);
+
+        // make room for nodes [0, capacity)
+        abstract void reserve(int capacity);
+
+        abstract long bytes();
+
+        // Copy nodes [0, count) of from to [at, at + count), adding at to
+        // the links that are not NIL.
+        void copy(Store from, int count, int at) {
+            for (int n = 0; n < count; n++) {
+                int first = from.get(FIRST, n);
+                int next = from.get(NEXT, n);
+                set(KIND, at + n, from.get(KIND, n));
+                set(FIRST, at + n, first == NIL ? NIL : first + at);
+                set(NEXT, at + n, next == NIL ? NIL : next + at);
+                set(TOKEN, at + n, from.get(TOKEN, n));
+            }
+        }
+
+        // Copy the nodes laid out in nodes as Ast.copy(int[], ...) takes
+        // them to those from at on.
+        void copy(int[] nodes, int at, int base) {
+            for (int i = 0, n = at; i < nodes.length; i += 4, n++) {
+                set(KIND, n, nodes[i]);
+                set(TOKEN, n, nodes[i + 1] + base);
+                set(FIRST, n, nodes[i + 2] == NIL ? NIL : nodes[i + 2] + at);
+                set(NEXT, n, nodes[i + 3] == NIL ? NIL : nodes[i + 3] + at);
+            }
+        }
+    }
+
+    private static final class Heap extends Store {
+        private final int[][] fields = new int[4][];
+
+        Heap(int capacity) {
+            for (int f = 0; f < 4; f++)
+                fields[f] = new int[capacity];
+        }
+
+        int get(int field, int n) {
+            return fields[field][n];
+        }
+
+        void set(int field, int n, int value) {
+            fields[field][n] = value;
+        }
+
+        void reserve(int capacity) {
+            if (capacity > fields[0].length) {
+                int c = Math.max(capacity, fields[0].length * 2);
+                for (int f = 0; f < 4; f++)
+                    fields[f] = Arrays.copyOf(fields[f], c);
+            }
+        }
+
+        long bytes() {
+            return 16L * fields[0].length;
+        }
+
+        void copy(Store from, int count, int at) {
+            if (!(from instanceof Heap)) {
+                super.copy(from, count, at);
+                return;
+            }
+            int[][] src = ((Heap) from).fields;
+            System.arraycopy(src[KIND], 0, fields[KIND], at, count);
+            System.arraycopy(src[TOKEN], 0, fields[TOKEN], at, count);
+            for (int f = FIRST; f <= NEXT; f++) {
+                int[] a = src[f];
+                int[] b = fields[f];
+                for (int n = 0; n < count; n++)
+                    b[at + n] = a[n] == NIL ? NIL : a[n] + at;
+            }
+        }
+
+        void copy(int[] nodes, int at, int base) {
+            int[] kind = fields[KIND];
+            int[] token = fields[TOKEN];
+            int[] first = fields[FIRST];
+            int[] next = fields[NEXT];
+            for (int i = 0, n = at; i < nodes.length; i += 4, n++) {
+                kind[n] = nodes[i];
+                token[n] = nodes[i + 1] + base;
+                first[n] = nodes[i + 2] == NIL ? NIL : nodes[i + 2] + at;
+                next[n] = nodes[i + 3] == NIL ? NIL : nodes[i + 3] + at;
+            }
+        }
+    }
+
+    // pages of PAGE nodes, each laid out as four int arrays in a row
+    private static final class OffHeap extends Store {
+        private static final int SHIFT = 12;
+        private static final int PAGE = 1 << SHIFT;
+        private ByteBuffer[] pages = new ByteBuffer[0];
+
+        OffHeap(int capacity) {
+            reserve(capacity);
+        }
+
+        private static int offset(int field, int n) {
+            return (field * PAGE + (n & (PAGE - 1))) * 4;
+        }
+
+        int get(int field, int n) {
+            return pages[n >>> SHIFT].getInt(offset(field, n));
+        }
+
+        void set(int field, int n, int value) {
+            pages[n >>> SHIFT].putInt(offset(field, n), value);
+        }
+
+        void reserve(int capacity) {
+            int need = (int) (((long) capacity + PAGE - 1) >>> SHIFT);
+            if (need <= pages.length)
+                return;
+            int old = pages.length;
+            pages = Arrays.copyOf(pages, need);
+            for (int p = old; p < need; p++)
+                pages[p] = ByteBuffer.allocateDirect(16 * PAGE)
+                        .order(ByteOrder.nativeOrder());
+        }
+
+        long bytes() {
+            return 16L * PAGE * pages.length;
+        }
+    }
+
+    private final TokenBuffer tokens;
+    private final Store store;
+    private int size;
+    private int root = NIL;
+
+    public Ast(TokenBuffer tokens, int capacity, boolean offHeap) {
+        this.tokens = tokens;
+        capacity = Math.max(capacity, 16);
+        this.store = offHeap ? new OffHeap(capacity) : new Heap(capacity);
+    }
+
+    // an arena sized for the tokens there are so far; a program has a node
+    // for about every two tokens
+    public Ast(TokenBuffer tokens, boolean offHeap) {
+        this(tokens, tokens.size() / 2 + tokens.size() / 8, offHeap);
+    }
+
+    // a new node with no children yet
+    public int add(NodeKind kind, int token) {
+        store.reserve(size + 1);
+        int n = size++;
+        store.set(KIND, n, kind.ordinal());
+        store.set(FIRST, n, NIL);
+        store.set(NEXT, n, NIL);
+        store.set(TOKEN, n, token);
+        return n;
+    }
+
+    // Make room for count nodes after the last, to be filled in by copy();
+    // returns the number of the first of them
+    public int extend(int count) {
+        store.reserve(size + count);
+        int first = size;
+        size += count;
+        return first;
+    }
+
+    // Copy all the nodes of other to those numbered from at on, renumbering
+    // the links between them. Copies to different nodes may run at once.
+    public void copy(Ast other, int at) {
+        store.copy(other.store, other.size, at);
+    }
+
+    // Copy nodes laid out four ints each, as kind ordinal, token, first
+    // child and next sibling, with the links numbered from 0, to those
+    // numbered from at on (see extend), adding at to the links that are
+    // not NIL and base to the tokens.
+    public void copy(int[] nodes, int at, int base) {
+        store.copy(nodes, at, base);
+    }
+
+    public void setFirstChild(int n, int child) {
+        store.set(FIRST, n, child);
+    }
+
+    public void setNextSibling(int n, int sibling) {
+        store.set(NEXT, n, sibling);
+    }
+
+    public void setRoot(int n) {
+        root = n;
+    }
+
+    public int root() {
+        return root;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // bytes taken by the nodes, including room not used yet
+    public long bytes() {
+        return store.bytes();
+    }
+
+    public TokenBuffer tokens() {
+        return tokens;
+    }
+
+    public NodeKind kind(int n) {
+        return KINDS[store.get(KIND, n)];
+    }
+
+    public int firstChild(int n) {
+        return store.get(FIRST, n);
+    }
+
+    public int nextSibling(int n) {
+        return store.get(NEXT, n);
+    }
+
+    public int token(int n) {
+        return store.get(TOKEN, n);
+    }
+
+    // the identifier or literal at the node, or null
+    public Symbol symbol(int n) {
+        return tokens.symbol(token(n));
+    }
+
+    // the i-th child of n (from 0), or NIL
+    public int child(int n, int i) {
+        int c = firstChild(n);
+        while (i-- > 0 && c != NIL)
+            c = nextSibling(c);
+        return c;
+    }
+
+    public int childCount(int n) {
+        int count = 0;
+        for (int c = firstChild(n); c != NIL; c = nextSibling(c))
+            count++;
+        return count;
+    }
+}
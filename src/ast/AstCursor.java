@@ -0,0 +1,97 @@
+package ast;
+
+import java.util.Arrays;
+
+import util.Symbol;
+
+/**
+ * A position in an Ast that moves between parents, children and siblings,
+ * remembering the way it came down so that it can go back up.
+ *
+ * A pre-order walk of a whole tree, without recursion:
+ *
+ *   AstCursor c = new AstCursor(ast);
+ *   do {
+ *       ... c.kind(), c.depth() ...
+ *   } while (c.firstChild() || c.nextInTree());
+ */
+public final class AstCursor {
+    private final Ast ast;
+    private int node;
+    private int[] path = new int[32]; // the ancestors of node, root first
+    private int depth;
+
+    public AstCursor(Ast ast, int node) {
+        this.ast = ast;
+        this.node = node;
+    }
+
+    public AstCursor(Ast ast) {
+        this(ast, ast.root());
+    }
+
+    public int node() {
+        return node;
+    }
+
+    // number of ancestors of the node below the cursor's starting point
+    public int depth() {
+        return depth;
+    }
+
+    public NodeKind kind() {
+        return ast.kind(node);
+    }
+
+    public int token() {
+        return ast.token(node);
+    }
+
+    public Symbol symbol() {
+        return ast.symbol(node);
+    }
+
+    // move to the first child, if there is one
+    public boolean firstChild() {
+        int c = ast.firstChild(node);
+        if (c == Ast.NIL)
+            return false;
+        if (depth == path.length)
+            path = Arrays.copyOf(path, depth * 2);
+        path[depth++] = node;
+        node = c;
+        return true;
+    }
+
+    // move to the next sibling, if there is one
+    public boolean nextSibling() {
+        int s = ast.nextSibling(node);
+        if (s == Ast.NIL || depth == 0)
+            return false;
+        node = s;
+        return true;
+    }
+
+    // move to the parent, unless at the starting point
+    public boolean parent() {
+        if (depth == 0)
+            return false;
+        node = path[--depth];
+        return true;
+    }
+
+    // move to the next node in pre-order that is not below this one:
+    // the next sibling of the node or of its nearest ancestor that has one
+    public boolean nextInTree() {
+        int at = node;
+        int d = depth;
+        do {
+            if (nextSibling())
+                return true;
+        } while (parent());
+        // nothing after it: stay where we were (the path above is intact)
+        depth = d;
+        node = at;
+        return false;
+    }
+}
@@ -0,0 +1,29 @@
+package ast;
+
+import java.io.PrintStream;
+
+import util.Symbol;
+
+/**
+ * Prints a syntax tree, one node per line, indented by depth: its kind,
+ * its identifier or literal if it has one, and the line of its token.
+ */
+public final class AstDump {
+    public static void write(Ast ast, PrintStream out) {
+        if (ast.root() == Ast.NIL)
+            return;
+        StringBuilder sb = new StringBuilder();
+        AstCursor c = new AstCursor(ast);
+        do {
+            sb.setLength(0);
+            for (int i = 0; i < c.depth(); i++)
+                sb.append("  ");
+            sb.append(c.kind());
+            Symbol s = c.symbol();
+            if (s != null)
+                sb.append(' ').append(s.name);
+            sb.append(" : at line ").append(ast.tokens().line(c.token()));
+            out.println(sb);
+        } while (c.firstChild() || c.nextInTree());
+    }
+}
@@ -0,0 +1,165 @@
+package ast;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import util.Symbol;
+
+/**
+ * The classes each class of a program depends on: the one it extends, the
+ * ones named as the type of a field, parameter, local or method, the ones
+ * it creates, and the ones whose methods it calls.
+ *
+ * The class of a call's receiver is found as a type checker would, from
+ * the declarations: "new C()" is a C, "this" is the enclosing class, a
+ * variable has the type it was declared with (a local, a parameter, or a
+ * field of the class or a superclass), and a call returns the type its
+ * method was declared to return. The class that declares the method
+ * called, if it is a superclass of the receiver's, counts too. Receivers
+ * of no known class (an undeclared name, say) add nothing.
+ */
+public final class Dependencies {
+    // what a class declares, as far as calls into it need
+    private static final class Declared {
+        String superclass; // or null
+        final Map<String, String> fields = new HashMap<>(); // -> class
+        final Map<String, String> methods = new HashMap<>(); // -> class
+    }
+
+    private final Ast ast;
+    private final Map<String, Declared> classes = new HashMap<>();
+
+    // the declarations of all the classes in ast
+    public Dependencies(Ast ast) {
+        this.ast = ast;
+        for (int d = ast.firstChild(ast.root()); d != Ast.NIL; d = ast
+                .nextSibling(d)) {
+            if (ast.kind(d) != NodeKind.CLASS_DECL || ast.symbol(d) == null)
+                continue;
+            Declared c = new Declared();
+            classes.putIfAbsent(ast.symbol(d).name, c);
+            for (int m = ast.firstChild(d); m != Ast.NIL; m = ast
+                    .nextSibling(m)) {
+                Symbol s = ast.symbol(m);
+                if (s == null)
+                    continue;
+                switch (ast.kind(m)) {
+                case EXTENDS:
+                    c.superclass = s.name;
+                    break;
+                case VAR_DECL:
+                    c.fields.putIfAbsent(s.name, type(ast.firstChild(m)));
+                    break;
+                case METHOD_DECL:
+                    c.methods.putIfAbsent(s.name, type(ast.firstChild(m)));
+                    break;
+                default:
+                }
+            }
+        }
+    }
+
+    // the class a type node names, or null
+    private String type(int t) {
+        return t != Ast.NIL && ast.kind(t) == NodeKind.CLASS_TYPE
+                && ast.symbol(t) != null ? ast.symbol(t).name : null;
+    }
+
+    // The class that declares a member of class c, looking in c and then
+    // up its superclasses; null if none does. A cycle of extends, which
+    // is an error, ends the search.
+    private String declaring(String c, boolean field, String member) {
+        for (int steps = 0; c != null && steps <= classes.size(); steps++) {
+            Declared d = classes.get(c);
+            if (d == null)
+                return null;
+            if ((field ? d.fields : d.methods).containsKey(member))
+                return c;
+            c = d.superclass;
+        }
+        return null;
+    }
+
+    // the class of expression e, or null if it is not known to be one
+    private String classOf(int e, String self, Map<String, String> locals,
+            Set<String> into) {
+        Symbol s = ast.symbol(e);
+        switch (ast.kind(e)) {
+        case NEW_OBJECT:
+            return s == null ? null : s.name;
+        case THIS:
+            return self;
+        case ID: {
+            if (s == null)
+                return null;
+            if (locals.containsKey(s.name))
+                return locals.get(s.name);
+            String d = declaring(self, true, s.name);
+            return d == null ? null : classes.get(d).fields.get(s.name);
+        }
+        case CALL: {
+            String receiver = classOf(ast.firstChild(e), self, locals, into);
+            if (receiver == null || s == null)
+                return null;
+            into.add(receiver);
+            String d = declaring(receiver, false, s.name);
+            if (d == null)
+                return null;
+            into.add(d);
+            return classes.get(d).methods.get(s.name);
+        }
+        default:
+            return null;
+        }
+    }
+
+    // the types and receivers in the tree at n, in a method with locals
+    private void uses(int n, String self, Map<String, String> locals,
+            Set<String> into) {
+        AstCursor c = new AstCursor(ast, n);
+        do {
+            switch (c.kind()) {
+            case CLASS_TYPE:
+            case NEW_OBJECT:
+            case EXTENDS:
+                if (c.symbol() != null)
+                    into.add(c.symbol().name);
+                break;
+            case CALL:
+                classOf(c.node(), self, locals, into);
+                break;
+            default:
+            }
+        } while (c.firstChild() || c.nextInTree());
+    }
+
+    // The names of the classes the main class or class declaration d
+    // depends on, other than itself, in order.
+    public Set<String> of(int d) {
+        Set<String> into = new TreeSet<>();
+        String self = ast.symbol(d) == null ? null : ast.symbol(d).name;
+        Map<String, String> none = Map.of();
+        for (int m = ast.firstChild(d); m != Ast.NIL; m = ast.nextSibling(m)) {
+            if (ast.kind(m) != NodeKind.METHOD_DECL) {
+                uses(m, self, none, into);
+                continue;
+            }
+            // parameters and locals hide fields
+            Map<String, String> locals = new HashMap<>();
+            for (int v = ast.firstChild(m); v != Ast.NIL; v = ast
+                    .nextSibling(v)) {
+                NodeKind k = ast.kind(v);
+                if ((k == NodeKind.FORMAL || k == NodeKind.VAR_DECL)
+                        && ast.symbol(v) != null)
+                    locals.putIfAbsent(ast.symbol(v).name,
+                            type(ast.firstChild(v)));
+            }
+            uses(m, self, locals, into);
+        }
+        if (self != null)
+            into.remove(self);
+        return into;
+    }
+}
@@ -0,0 +1,58 @@
+package ast;
+
+/**
+ * The kinds of syntax tree nodes, with the children each one has, in
+ * order, and the token it points at. "*" marks a list of any length;
+ * a child that failed to parse is left out.
+ */
+public enum NodeKind {
+    // MainClass ClassDecl*; token 0
+    PROGRAM,
+    // ID (the parameter of main) Statement; token: the class name
+    MAIN_CLASS,
+    // EXTENDS? VarDecl* MethodDecl*; token: the class name
+    CLASS_DECL,
+    // no children; token: the superclass name
+    EXTENDS,
+    // Type; token: the variable name
+    VAR_DECL,
+    // Type (returned) Formal* VarDecl* Statement* RETURN; token: the name
+    METHOD_DECL,
+    // Type; token: the parameter name
+    FORMAL,
+    // Exp; token: "return"
+    RETURN,
+
+    // types, with no children; token: "int", "boolean" or the class name
+    INT_TYPE, INT_ARRAY_TYPE, BOOLEAN_TYPE, CLASS_TYPE,
+
+    // Statement*; token: "{"
+    BLOCK,
+    // Exp Statement Statement; token: "if"
+    IF,
+    // Exp Statement; token: "while"
+    WHILE,
+    // Exp; token: "System"
+    PRINT,
+    // Exp; token: the variable
+    ASSIGN,
+    // Exp (index) Exp (value); token: the array variable
+    ARRAY_ASSIGN,
+
+    // Exp Exp; token: the operator
+    AND, LT, ADD, SUB, TIMES,
+    // Exp; token: "!"
+    NOT,
+    // Exp (array) Exp (index); token: "["
+    INDEX,
+    // Exp; token: "length"
+    LENGTH,
+    // Exp (receiver) Exp* (arguments); token: the method name
+    CALL,
+    // no children; token: the literal, keyword or identifier
+    NUM, TRUE, FALSE, THIS, ID,
+    // Exp (size); token: "new"
+    NEW_INT_ARRAY,
+    // no children; token: the class name
+    NEW_OBJECT;
+}
@@ -0,0 +1,201 @@
+package ast;
+
+/**
+ * A visitor over an Ast, with a method for each kind of node.
+ *
+ * visit(n) calls the method for the kind of n. Each method visits the
+ * children of its node by default, and returns the result of the last one
+ * (or defaultResult() if it has none); override the ones that matter.
+ */
+public abstract class Visitor<R> {
+    protected final Ast ast;
+
+    protected Visitor(Ast ast) {
+        this.ast = ast;
+    }
+
+    protected R defaultResult() {
+        return null;
+    }
+
+    public R visitChildren(int n) {
+        R result = defaultResult();
+        for (int c = ast.firstChild(n); c != Ast.NIL; c = ast.nextSibling(c))
+            result = visit(c);
+        return result;
+    }
+
+    public R visit(int n) {
+        switch (ast.kind(n)) {
+        case PROGRAM:
+            return visitProgram(n);
+        case MAIN_CLASS:
+            return visitMainClass(n);
+        case CLASS_DECL:
+            return visitClassDecl(n);
+        case EXTENDS:
+            return visitExtends(n);
+        case VAR_DECL:
+            return visitVarDecl(n);
+        case METHOD_DECL:
+            return visitMethodDecl(n);
+        case FORMAL:
+            return visitFormal(n);
+        case RETURN:
+            return visitReturn(n);
+        case INT_TYPE:
+        case INT_ARRAY_TYPE:
+        case BOOLEAN_TYPE:
+        case CLASS_TYPE:
+            return visitType(n);
+        case BLOCK:
+            return visitBlock(n);
+        case IF:
+            return visitIf(n);
+        case WHILE:
+            return visitWhile(n);
+        case PRINT:
+            return visitPrint(n);
+        case ASSIGN:
+            return visitAssign(n);
+        case ARRAY_ASSIGN:
+            return visitArrayAssign(n);
+        case AND:
+        case LT:
+        case ADD:
+        case SUB:
+        case TIMES:
+            return visitBinary(n);
+        case NOT:
+            return visitNot(n);
+        case INDEX:
+            return visitIndex(n);
+        case LENGTH:
+            return visitLength(n);
+        case CALL:
+            return visitCall(n);
+        case NUM:
+            return visitNum(n);
+        case TRUE:
+        case FALSE:
+            return visitBoolean(n);
+        case THIS:
+            return visitThis(n);
+        case ID:
+            return visitId(n);
+        case NEW_INT_ARRAY:
+            return visitNewIntArray(n);
+        case NEW_OBJECT:
+            return visitNewObject(n);
+        default:
+            return visitChildren(n);
+        }
+    }
+
+    public R visitProgram(int n) {
+        return visitChildren(n);
+    }
+
+    public R visitMainClass(int n) {
+        return visitChildren(n);
+    }
+
+    public R visitClassDecl(int n) {
+        return visitChildren(n);
+    }
+
+    public R visitExtends(int n) {
+        return visitChildren(n);
+    }
+
+    public R visitVarDecl(int n) {
+        return visitChildren(n);
+    }
+
+    public R visitMethodDecl(int n) {
+        return visitChildren(n);
+    }
+
+    public R visitFormal(int n) {
+        return visitChildren(n);
+    }
+
+    public R visitReturn(int n) {
+        return visitChildren(n);
+    }
+
+    // INT_TYPE, INT_ARRAY_TYPE, BOOLEAN_TYPE or CLASS_TYPE
+    public R visitType(int n) {
+        return visitChildren(n);
+    }
+
+    public R visitBlock(int n) {
+        return visitChildren(n);
+    }
+
+    public R visitIf(int n) {
+        return visitChildren(n);
+    }
+
+    public R visitWhile(int n) {
+        return visitChildren(n);
+    }
+
+    public R visitPrint(int n) {
+        return visitChildren(n);
+    }
+
+    public R visitAssign(int n) {
+        return visitChildren(n);
+    }
+
+    public R visitArrayAssign(int n) {
+        return visitChildren(n);
+    }
+
+    // AND, LT, ADD, SUB or TIMES
+    public R visitBinary(int n) {
+        return visitChildren(n);
+    }
+
+    public R visitNot(int n) {
+        return visitChildren(n);
+    }
+
+    public R visitIndex(int n) {
+        return visitChildren(n);
+    }
+
+    public R visitLength(int n) {
+        return visitChildren(n);
+    }
+
+    public R visitCall(int n) {
+        return visitChildren(n);
+    }
+
+    public R visitNum(int n) {
+        return visitChildren(n);
+    }
+
+    // TRUE or FALSE
+    public R visitBoolean(int n) {
+        return visitChildren(n);
+    }
+
+    public R visitThis(int n) {
+        return visitChildren(n);
+    }
+
+    public R visitId(int n) {
+        return visitChildren(n);
+    }
+
+    public R visitNewIntArray(int n) {
+        return visitChildren(n);
+    }
+
+    public R visitNewObject(int n) {
+        return visitChildren(n);
+    }
+}
@@ -0,0 +1,117 @@
+package bench;
+
+import java.io.FileWriter;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import ast.Ast;
+import ast.NodeKind;
+import lexer.Lexer;
+import lexer.Source;
+import lexer.Token;
+import lexer.TokenBuffer;
+import lexer.TokenCursor;
+import parser.Parser;
+import util.SymbolTable;
+
+// The syntax tree arena against a tree of one object per node, on the
+// programs under test/ and a synthetic one.
+//
+//   java -cp bin bench.AstBench [-o ast.json] [size]
+//
+// Benchmarks, scored in nodes/s, all parsing tokens lexed beforehand:
+//   arena    Parser.parse() into an Ast on the heap
+//   offheap  the same, with the Ast in direct memory
+//   objects  the same, then the tree copied into objects as a parser
+//            building them would: a node with its kind, a Token and an
+//            ArrayList of children
+//
+// Bytes per node are the bytes allocated on the heap per node built; for
+// objects that includes the arena it was copied from (about 16), and for
+// offheap it leaves out the direct memory (16 a node, in 64KB pages).
+public class AstBench {
+    private static final PrintStream OUT = System.out;
+    private static final PrintStream NULL = new PrintStream(
+            OutputStream.nullOutputStream());
+
+    static final class Node {
+        final NodeKind kind;
+        final Token token;
+        final List<Node> children = new ArrayList<>();
+
+        Node(NodeKind kind, Token token) {
+            this.kind = kind;
+            this.token = token;
+        }
+    }
+
+    static Node objects(Ast ast, int n) {
+        Node node = new Node(ast.kind(n), ast.tokens().token(ast.token(n)));
+        for (int c = ast.firstChild(n); c != Ast.NIL; c = ast.nextSibling(c))
+            node.children.add(objects(ast, c));
+        return node;
+    }
+
+    static Ast parse(TokenBuffer tokens, boolean offHeap) {
+        // parse() reports success on stdout
+        System.setOut(NULL);
+        try {
+            TokenCursor cursor = new TokenCursor(tokens);
+            return new Parser(cursor, new Ast(tokens, offHeap)).parse();
+        } finally {
+            System.setOut(OUT);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String json = "ast.json";
+        long size = 1 << 20;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-o") && i + 1 < args.length)
+                json = args[++i];
+            else
+                size = FrontEndBench.size(args[i]);
+        }
+
+        List<String> names = new ArrayList<>();
+        List<byte[]> inputs = new ArrayList<>();
+        for (Path p : Inputs.testPrograms()) {
+            names.add(p.getFileName().toString());
+            inputs.add(Files.readAllBytes(p));
+        }
+        names.add("synthetic-" + size);
+        inputs.add(Inputs.program(size));
+
+        Harness harness = new Harness(3, 5, 500);
+        System.out.println(Harness.header());
+        for (int i = 0; i < inputs.size(); i++) {
+            Lexer lexer = new Lexer("bench", Source.of(inputs.get(i)),
+                    new SymbolTable());
+            while (lexer.scan())
+                ;
+            TokenBuffer tokens = lexer.tokens();
+            int nodes = parse(tokens, false).size();
+            String name = names.get(i);
+            long bytes = inputs.get(i).length;
+            System.out.println(Harness.row(harness.measure("arena", name,
+                    bytes, "node", () -> parse(tokens, false).size())));
+            System.out.println(Harness.row(harness.measure("offheap", name,
+                    bytes, "node", () -> parse(tokens, true).size())));
+            System.out.println(Harness.row(harness.measure("objects", name,
+                    bytes, "node", () -> {
+                        Ast ast = parse(tokens, false);
+                        objects(ast, ast.root());
+                        return nodes;
+                    })));
+        }
+        try (Writer w = new FileWriter(json)) {
+            harness.writeJson(w);
+        }
+        System.out.println("results written to " + json);
+    }
+}
@@ -0,0 +1,61 @@
+package bench;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// A build of many files: one JVM per file, as test/test.bat runs them,
+// against one JVM for all of them in batch mode.
+//
+//   java -cp bin bench.BatchBench [files] [size]
+//
+// The files are synthetic programs of the given size (8K by default), in
+// a temporary directory. Each way is timed once, end to end, including
+// the start of the JVMs.
+public class BatchBench {
+    static long run(List<String> args) throws Exception {
+        List<String> cmd = new ArrayList<>();
+        cmd.add(System.getProperty("java.home") + File.separator + "bin"
+                + File.separator + "java");
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add("Tiger");
+        cmd.addAll(args);
+        long start = System.nanoTime();
+        Process p = new ProcessBuilder(cmd)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        if (p.waitFor() != 0)
+            throw new AssertionError("compile failed: " + args);
+        return System.nanoTime() - start;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        long size = args.length > 1 ? FrontEndBench.size(args[1]) : 8 << 10;
+
+        Path dir = Files.createTempDirectory("tiger-batch");
+        dir.toFile().deleteOnExit();
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Path p = dir.resolve("P" + i + ".java");
+            Files.write(p, Inputs.program(size + 64 * i));
+            p.toFile().deleteOnExit();
+            files.add(p.toString());
+        }
+        System.out.printf("%d files of %d bytes or more%n", count, size);
+
+        long forked = 0;
+        for (String f : files)
+            forked += run(List.of(f));
+        System.out.printf("one JVM per file  %8.0f ms%n", forked / 1e6);
+        long one = run(List.of("-jobs", "1", dir.toString()));
+        System.out.printf("batch, 1 job      %8.0f ms  speedup %.1f%n",
+                one / 1e6, (double) forked / one);
+        long all = run(List.of(dir.toString()));
+        System.out.printf("batch, all cores  %8.0f ms  speedup %.1f%n",
+                all / 1e6, (double) forked / all);
+    }
+}
@@ -0,0 +1,85 @@
+package bench;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Repeat builds of many files through the compile cache (-cache): a build
+// without it, the first build with it, a build of the same files again,
+// and a build after a tenth of them changed. Then one large file, after
+// one of its classes changed: the last one, which no other class depends
+// on, or the first one, which all the others do, one through another.
+//
+//   java -cp bin bench.CacheBench [files] [size] [large size]
+//
+// The files are synthetic programs of the given size (64K by default, and
+// 8M for the large one), in a temporary directory, built in batch mode,
+// one JVM a build, timed end to end.
+public class CacheBench {
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        long size = args.length > 1 ? FrontEndBench.size(args[1]) : 64 << 10;
+        long large = args.length > 2 ? FrontEndBench.size(args[2]) : 8 << 20;
+
+        Path dir = Files.createTempDirectory("tiger-cache");
+        Path src = Files.createDirectory(dir.resolve("src"));
+        Path cache = dir.resolve("cache");
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Path p = src.resolve("P" + i + ".java");
+            Files.write(p, Inputs.program(size + 64 * i));
+            files.add(p);
+        }
+        System.out.printf("%d files of %d bytes or more%n", count, size);
+
+        List<String> plain = List.of(src.toString());
+        List<String> cached = List.of("-cache", cache.toString(),
+                src.toString());
+        BatchBench.run(plain); // to read the files into the page cache
+        long none = BatchBench.run(plain);
+        System.out.printf("no cache          %8.0f ms%n", none / 1e6);
+        long cold = BatchBench.run(cached);
+        System.out.printf("cold cache        %8.0f ms  speedup %.1f%n",
+                cold / 1e6, (double) none / cold);
+        long warm = BatchBench.run(cached);
+        System.out.printf("warm cache        %8.0f ms  speedup %.1f%n",
+                warm / 1e6, (double) none / warm);
+        for (int i = 0; i < count; i += 10)
+            Files.write(files.get(i), Inputs.program(size + 64 * i + 1));
+        long changed = BatchBench.run(cached);
+        System.out.printf("a tenth changed   %8.0f ms  speedup %.1f%n",
+                changed / 1e6, (double) none / changed);
+
+        Path big = dir.resolve("Big.java");
+        String text = new String(Inputs.program(large),
+                StandardCharsets.US_ASCII);
+        Files.writeString(big, text);
+        System.out.printf("one file of %d bytes%n", text.length());
+        plain = List.of(big.toString());
+        cached = List.of("-cache", cache.toString(), big.toString());
+        BatchBench.run(plain);
+        none = BatchBench.run(plain);
+        System.out.printf("no cache          %8.0f ms%n", none / 1e6);
+        BatchBench.run(cached);
+        int lastClass = text.lastIndexOf("(i * 7 + 3)");
+        Files.writeString(big, text.substring(0, lastClass) + "(i * 7 + 4)"
+                + text.substring(lastClass + 11));
+        long last = BatchBench.run(cached);
+        System.out.printf("last class changed%8.0f ms  speedup %.1f%n",
+                last / 1e6, (double) none / last);
+        int firstClass = text.indexOf("(i * 7 + 3)");
+        Files.writeString(big, text.substring(0, firstClass) + "(i * 7 + 4)"
+                + text.substring(firstClass + 11));
+        long first = BatchBench.run(cached);
+        System.out.printf("first class changed%7.0f ms  speedup %.1f%n",
+                first / 1e6, (double) none / first);
+
+        try (Stream<Path> s = Files.walk(dir)) {
+            s.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile()
+                    .delete());
+        }
+    }
+}
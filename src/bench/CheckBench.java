@@ -0,0 +1,112 @@
+package bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import ast.Ast;
+import control.CompilerContext;
+import control.Options;
+import elaborator.Elaborator;
+import elaborator.TypeError;
+import lexer.Source;
+import parser.Parser;
+
+// The type checker's throughput, per source line, against the parser's on
+// the same file: the programs under test/, each on its own and then all of
+// them, and synthetic programs of many classes, by size.
+//
+//   java -cp bin bench.CheckBench [megabytes]...
+//
+// The synthetic programs (1, 4 and 16 MB by default) are in a temporary
+// directory. Each file is parsed, and its tree checked, the best of a few
+// runs each; a file that does not check is an error.
+public class CheckBench {
+    private static final int WARMUP = 5;
+    private static final int RUNS = 10;
+
+    static Ast parse(String file) throws Exception {
+        Source source = Source.open(file);
+        try {
+            CompilerContext context = new CompilerContext(Options.DEFAULT);
+            Ast ast = new Parser(file, source, context).parseQuietly();
+            if (!context.diagnostics().isEmpty())
+                throw new AssertionError(file + ": syntax errors");
+            return ast;
+        } finally {
+            source.close();
+        }
+    }
+
+    static List<TypeError> check(Ast ast) {
+        return new Elaborator(ast).check();
+    }
+
+    // the best time of parsing and of checking file, in ns
+    static long[] measure(String file) throws Exception {
+        long parse = Long.MAX_VALUE;
+        long check = Long.MAX_VALUE;
+        for (int i = 0; i < WARMUP + RUNS; i++) {
+            long start = System.nanoTime();
+            Ast ast = parse(file);
+            long parsed = System.nanoTime();
+            List<TypeError> errors = check(ast);
+            long checked = System.nanoTime();
+            if (!errors.isEmpty())
+                throw new AssertionError(file + ": "
+                        + errors.get(0).format(ast.tokens()));
+            if (i >= WARMUP) {
+                parse = Math.min(parse, parsed - start);
+                check = Math.min(check, checked - parsed);
+            }
+        }
+        return new long[] { parse, check };
+    }
+
+    static void print(String name, long lines, long[] t) {
+        System.out.printf("%-20s %8d lines  parse %8.2f ms %7.0f ns/line"
+                + "  check %8.2f ms %7.0f ns/line  %6.2f M lines/s%n", name,
+                lines, t[0] / 1e6, (double) t[0] / lines, t[1] / 1e6,
+                (double) t[1] / lines, lines * 1e3 / t[1]);
+    }
+
+    public static void main(String[] args) throws Exception {
+        long[] sizes = args.length == 0 ? new long[] { 1, 4, 16 }
+                : new long[args.length];
+        for (int i = 0; i < args.length; i++)
+            sizes[i] = Long.parseLong(args[i]);
+
+        Path dir = Files.createTempDirectory("tiger-check");
+        dir.toFile().deleteOnExit();
+
+        // compile the parser and the checker before timing either
+        Path warm = dir.resolve("Warm.java");
+        Files.write(warm, Inputs.program(1 << 20));
+        for (int i = 0; i < 3; i++)
+            measure(warm.toString());
+        Files.delete(warm);
+
+        long allLines = 0;
+        long[] all = new long[2];
+        for (Path p : Inputs.testPrograms()) {
+            String file = p.toString();
+            long lines = parse(file).tokens().lineCount();
+            long[] t = measure(file);
+            print(p.getFileName().toString(), lines, t);
+            allLines += lines;
+            all[0] += t[0];
+            all[1] += t[1];
+        }
+        print("test/", allLines, all);
+
+        for (long mb : sizes) {
+            Path p = dir.resolve("P" + mb + ".java");
+            Files.write(p, Inputs.program(mb << 20));
+            p.toFile().deleteOnExit();
+            String file = p.toString();
+            long lines = parse(file).tokens().lineCount();
+            print(mb + " MB", lines, measure(file));
+            Files.delete(p);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package bench;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import control.Client;
+
+// Compiles sent to a daemon that stays up, against a JVM for each compile,
+// and the first compile a daemon serves, with and without warming it up.
+//
+//   java -cp bin bench.DaemonBench [files] [size]
+//
+// The files are synthetic programs of the given size (8K by default), in
+// a temporary directory; each is compiled on its own, as an editor or a
+// build that compiles what changed would. The requests are sent from this
+// JVM, so a client's own start is not counted; the warmed-up daemon goes
+// first, so that it also pays for loading the client's classes.
+public class DaemonBench {
+    private static final PrintStream OUT = System.out;
+    private static final PrintStream ERR = System.err;
+    private static final PrintStream NULL = new PrintStream(
+            OutputStream.nullOutputStream());
+
+    static String java() {
+        return System.getProperty("java.home") + File.separator + "bin"
+                + File.separator + "java";
+    }
+
+    static long fork(String file) throws Exception {
+        long start = System.nanoTime();
+        Process p = new ProcessBuilder(java(), "-cp",
+                System.getProperty("java.class.path"), "Tiger", file)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        if (p.waitFor() != 0)
+            throw new AssertionError("compile failed: " + file);
+        return System.nanoTime() - start;
+    }
+
+    // a daemon, warmed up with the given rounds, once it listens
+    static Process daemon(Path socket, int warmup) throws Exception {
+        Process p = new ProcessBuilder(java(), "-cp",
+                System.getProperty("java.class.path"), "Tiger",
+                "-daemon", socket.toString(), "-warmup",
+                Integer.toString(warmup))
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        while (!Files.exists(socket)) {
+            if (!p.isAlive())
+                throw new AssertionError("the daemon did not start");
+            Thread.sleep(10);
+        }
+        return p;
+    }
+
+    static long send(Path socket, String... args) throws Exception {
+        System.setOut(NULL);
+        System.setErr(NULL);
+        try {
+            long start = System.nanoTime();
+            if (Client.compile(socket.toString(), args, null, null) != 0)
+                throw new AssertionError("compile failed: " + args[0]);
+            return System.nanoTime() - start;
+        } finally {
+            System.setOut(OUT);
+            System.setErr(ERR);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        long size = args.length > 1 ? FrontEndBench.size(args[1]) : 8 << 10;
+
+        Path dir = Files.createTempDirectory("tiger-daemon");
+        dir.toFile().deleteOnExit();
+        Path socket = dir.resolve("tiger.sock");
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Path p = dir.resolve("P" + i + ".java");
+            Files.write(p, Inputs.program(size + 64 * i));
+            p.toFile().deleteOnExit();
+            files.add(p.toString());
+        }
+        System.out.printf("%d files of %d bytes or more%n", count, size);
+
+        long forked = 0;
+        for (String f : files)
+            forked += fork(f);
+        System.out.printf("one JVM per compile  %8.0f ms  %6.1f ms/file%n",
+                forked / 1e6, forked / 1e6 / count);
+
+        for (int warmup : new int[] { 5, 0 }) {
+            Process p = daemon(socket, warmup);
+            try {
+                long first = send(socket, files.get(0));
+                long all = 0;
+                for (String f : files)
+                    all += send(socket, f);
+                System.out.printf("daemon, warmup %d     %8.0f ms  %6.1f ms/file"
+                        + "  speedup %.1f  first %.1f ms%n", warmup,
+                        all / 1e6, all / 1e6 / count, (double) forked / all,
+                        first / 1e6);
+            } finally {
+                p.destroy();
+                p.waitFor();
+                Files.deleteIfExists(socket);
+            }
+        }
+    }
+}
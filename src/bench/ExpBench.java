@@ -0,0 +1,87 @@
+package bench;
+
+import java.io.FileWriter;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import ast.Ast;
+import lexer.Lexer;
+import lexer.Source;
+import lexer.TokenBuffer;
+import lexer.TokenCursor;
+import parser.Parser;
+import util.SymbolTable;
+
+// The parser on expression-heavy inputs: programs that are mostly long
+// expressions, and single expressions nested deeper and deeper.
+//
+//   java -cp bin bench.ExpBench [-o exp.json] [size]
+//
+// Each benchmark parses tokens lexed beforehand, and is scored in tokens/s.
+// The nested inputs alternate "(" and "!", two levels of the grammar each;
+// a parser that recurses for them fails on the deepest with a
+// StackOverflowError, which is reported in place of a score.
+public class ExpBench {
+    private static final PrintStream OUT = System.out;
+    private static final PrintStream NULL = new PrintStream(
+            OutputStream.nullOutputStream());
+
+    static Ast parse(TokenBuffer tokens) {
+        // parse() reports success on stdout
+        System.setOut(NULL);
+        try {
+            return new Parser(new TokenCursor(tokens)).parse();
+        } finally {
+            System.setOut(OUT);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String json = "exp.json";
+        long size = 1 << 20;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-o") && i + 1 < args.length)
+                json = args[++i];
+            else
+                size = FrontEndBench.size(args[i]);
+        }
+
+        List<String> names = new ArrayList<>();
+        List<byte[]> inputs = new ArrayList<>();
+        names.add("expressions-" + size);
+        inputs.add(Inputs.expressions(size));
+        for (int depth = 100; depth <= 1000000; depth *= 10) {
+            names.add("nested-" + depth);
+            inputs.add(Inputs.nested(depth));
+        }
+
+        Harness harness = new Harness(3, 5, 500);
+        System.out.println(Harness.header());
+        for (int i = 0; i < inputs.size(); i++) {
+            Lexer lexer = new Lexer("bench", Source.of(inputs.get(i)),
+                    new SymbolTable());
+            while (lexer.scan())
+                ;
+            TokenBuffer tokens = lexer.tokens();
+            String name = names.get(i);
+            try {
+                parse(tokens);
+            } catch (StackOverflowError e) {
+                System.out.println("parse " + name + ": stack overflow");
+                continue;
+            }
+            System.out.println(Harness.row(harness.measure("parse", name,
+                    inputs.get(i).length, "token", () -> {
+                        parse(tokens);
+                        return tokens.size();
+                    })));
+        }
+        try (Writer w = new FileWriter(json)) {
+            harness.writeJson(w);
+        }
+        System.out.println("results written to " + json);
+    }
+}
@@ -0,0 +1,174 @@
+package bench;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import lexer.Lexer;
+import lexer.Source;
+import lexer.Token;
+import lexer.TokenBuffer;
+import lexer.TokenCursor;
+import parser.Parser;
+import util.SymbolTable;
+
+// Throughput and allocation of the front end, on the programs under test/
+// and on synthetic programs from 1KB up.
+//
+//   java -Xmx2g -cp bin bench.FrontEndBench [-o results.json]
+//       [-sizes 1K,10K,100K,1M,10M,100M] [-warmup 3] [-iterations 5]
+//       [-time ms] [-notest]
+//
+// Benchmarks, all scored in tokens/s:
+//   scan       Lexer.scan() into the token buffer
+//   nextToken  Lexer.nextToken(), one Token object each
+//   parse      Parser.parse() on a source, lexing as it goes
+//   parseTok   Parser.parse() on tokens lexed beforehand
+//
+// Each result also has bytes/s and bytes allocated per token. The largest
+// inputs need a big heap: the token buffer takes about four times the
+// size of the input.
+public class FrontEndBench {
+    private static final PrintStream OUT = System.out;
+    private static final PrintStream NULL = new PrintStream(
+            OutputStream.nullOutputStream());
+
+    static final class Input {
+        final String name;
+        final byte[] bytes;
+        final int tokens;
+
+        Input(String name, byte[] bytes) {
+            this.name = name;
+            this.bytes = bytes;
+            this.tokens = lex(bytes).size();
+        }
+    }
+
+    static TokenBuffer lex(byte[] bytes) {
+        Lexer lexer = new Lexer("bench", Source.of(bytes), new SymbolTable());
+        while (lexer.scan())
+            ;
+        return lexer.tokens();
+    }
+
+    static long nextToken(byte[] bytes) {
+        Lexer lexer = new Lexer("bench", Source.of(bytes), new SymbolTable());
+        long n = 1;
+        while (lexer.nextToken().kind != Token.Kind.TOKEN_EOF)
+            n++;
+        return n;
+    }
+
+    static long parse(Parser parser, int tokens) {
+        // parse() reports success on stdout
+        System.setOut(NULL);
+        try {
+            parser.parse();
+        } finally {
+            System.setOut(OUT);
+        }
+        return tokens;
+    }
+
+    static long size(String s) {
+        long unit = 1;
+        char c = Character.toUpperCase(s.charAt(s.length() - 1));
+        if (c == 'K' || c == 'M' || c == 'G') {
+            unit = c == 'K' ? 1 << 10 : c == 'M' ? 1 << 20 : 1 << 30;
+            s = s.substring(0, s.length() - 1);
+        }
+        return Long.parseLong(s) * unit;
+    }
+
+    static void usage() {
+        System.err.println("usage: FrontEndBench [-o file] [-sizes list]"
+                + " [-warmup n] [-iterations n] [-time ms] [-notest]");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) throws Exception {
+        String json = "bench.json";
+        String sizes = "1K,10K,100K,1M,10M,100M";
+        int warmup = 3;
+        int iterations = 5;
+        long time = 500;
+        boolean tests = true;
+        for (int i = 0; i < args.length; i++) {
+            boolean hasArg = i + 1 < args.length;
+            switch (args[i]) {
+            case "-o":
+                if (!hasArg)
+                    usage();
+                json = args[++i];
+                break;
+            case "-sizes":
+                if (!hasArg)
+                    usage();
+                sizes = args[++i];
+                break;
+            case "-warmup":
+                if (!hasArg)
+                    usage();
+                warmup = Integer.parseInt(args[++i]);
+                break;
+            case "-iterations":
+                if (!hasArg)
+                    usage();
+                iterations = Integer.parseInt(args[++i]);
+                break;
+            case "-time":
+                if (!hasArg)
+                    usage();
+                time = Long.parseLong(args[++i]);
+                break;
+            case "-notest":
+                tests = false;
+                break;
+            default:
+                usage();
+            }
+        }
+
+        List<Input> inputs = new ArrayList<>();
+        if (tests)
+            for (Path p : Inputs.testPrograms())
+                inputs.add(new Input(p.getFileName().toString(),
+                        Files.readAllBytes(p)));
+        for (String s : sizes.split(","))
+            if (!s.isEmpty())
+                inputs.add(new Input("synthetic-" + s, Inputs.program(size(s))));
+
+        Harness harness = new Harness(warmup, iterations, time);
+        System.out.println(Harness.header());
+        for (Input in : inputs) {
+            byte[] b = in.bytes;
+            int n = in.tokens;
+            System.out.println(Harness.row(harness.measure("scan", in.name,
+                    b.length, "token", () -> lex(b).size())));
+            System.out.println(Harness.row(harness.measure("nextToken",
+                    in.name, b.length, "token", () -> nextToken(b))));
+            System.out.println(Harness.row(harness.measure("parse", in.name,
+                    b.length, "token", () -> parse(
+                            new Parser(in.name, Source.of(b)), n))));
+            TokenBuffer tokens = lex(b);
+            System.out.println(Harness.row(harness.measure("parseTok",
+                    in.name, b.length, "token", () -> parse(
+                            new Parser(new TokenCursor(tokens)), n))));
+        }
+
+        try (Writer w = new FileWriter(json)) {
+            harness.writeJson(w);
+        } catch (IOException e) {
+            System.err.println("cannot write " + json + ": " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.println("results written to " + json);
+    }
+}
@@ -0,0 +1,225 @@
+package bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+/**
+ * A small benchmark harness in the manner of JMH.
+ *
+ * Each benchmark is an operation that processes some input and returns how
+ * many units (tokens, say) it handled. The harness runs warmup iterations,
+ * then measurement iterations of at least a fixed duration each, repeating
+ * the operation as often as fits, and records units/s, bytes/s and bytes
+ * allocated per unit (from the thread's allocation counter, which is what
+ * JMH's GC profiler reads too).
+ *
+ * Results are printed as a table and can be written as JSON laid out like
+ * JMH's, so runs can be compared over time with the same tools.
+ *
+ * For benchmarks that compare two ways of doing the same work, best()
+ * times single calls instead, and gives the fastest.
+ */
+public class Harness {
+    public interface Op {
+        long run() throws Exception;
+    }
+
+    public static final class Result {
+        final String benchmark;
+        final String input;
+        final long bytes; // input size
+        final String unit; // what op() counts, in the singular
+        final double[] samples; // units per second, one per iteration
+        final double bytesPerSecond;
+        final double allocPerUnit; // NaN if the JVM cannot tell
+
+        Result(String benchmark, String input, long bytes, String unit,
+                double[] samples, double bytesPerSecond, double allocPerUnit) {
+            this.benchmark = benchmark;
+            this.input = input;
+            this.bytes = bytes;
+            this.unit = unit;
+            this.samples = samples;
+            this.bytesPerSecond = bytesPerSecond;
+            this.allocPerUnit = allocPerUnit;
+        }
+
+        double score() {
+            double sum = 0;
+            for (double s : samples)
+                sum += s;
+            return sum / samples.length;
+        }
+
+        double stdev() {
+            double mean = score();
+            double sum = 0;
+            for (double s : samples)
+                sum += (s - mean) * (s - mean);
+            return samples.length < 2 ? 0 : Math.sqrt(sum / (samples.length - 1));
+        }
+    }
+
+    private static final PrintStream OUT = System.out;
+    private static final PrintStream NULL = new PrintStream(
+            OutputStream.nullOutputStream());
+
+    // what the calls best() timed returned, in sum, kept where the JIT
+    // cannot prove it unused and drop the calls' work
+    private static volatile long sink;
+
+    private final int warmups;
+    private final int iterations;
+    private final long iterationNanos;
+    private final List<Result> results = new ArrayList<>();
+
+    public Harness(int warmups, int iterations, long iterationMillis) {
+        this.warmups = warmups;
+        this.iterations = iterations;
+        this.iterationNanos = iterationMillis * 1_000_000;
+    }
+
+    // bytes allocated by this thread so far, or -1
+    private static long allocated() {
+        java.lang.management.ThreadMXBean mx = ManagementFactory
+                .getThreadMXBean();
+        if (!(mx instanceof com.sun.management.ThreadMXBean))
+            return -1;
+        return ((com.sun.management.ThreadMXBean) mx)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public Result measure(String benchmark, String input, long bytes,
+            String unit, Op op) throws Exception {
+        for (int i = 0; i < warmups; i++)
+            iteration(op, bytes);
+
+        double[] samples = new double[iterations];
+        double bytesPerSecond = 0;
+        long units = 0;
+        long alloc = 0;
+        for (int i = 0; i < iterations; i++) {
+            long[] it = iteration(op, bytes);
+            samples[i] = it[0] / (it[2] / 1e9);
+            bytesPerSecond += it[1] / (it[2] / 1e9) / iterations;
+            units += it[0];
+            alloc = it[3] < 0 || alloc < 0 ? -1 : alloc + it[3];
+        }
+        Result r = new Result(benchmark, input, bytes, unit, samples,
+                bytesPerSecond, alloc < 0 ? Double.NaN : (double) alloc / units);
+        results.add(r);
+        return r;
+    }
+
+    // {units, bytes, nanos, allocated bytes}
+    private long[] iteration(Op op, long bytes) throws Exception {
+        long units = 0;
+        long ops = 0;
+        long alloc = allocated();
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            units += op.run();
+            ops++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < iterationNanos);
+        long after = allocated();
+        return new long[] { units, ops * bytes, elapsed,
+                alloc < 0 ? -1 : after - alloc };
+    }
+
+    // the least time of runs calls of op, in ns, after warmups calls that
+    // are not timed
+    public static long best(int warmups, int runs, Op op) throws Exception {
+        long best = Long.MAX_VALUE;
+        long units = 0;
+        for (int i = 0; i < warmups + runs; i++) {
+            long start = System.nanoTime();
+            units += op.run();
+            long t = System.nanoTime() - start;
+            if (i >= warmups && t < best)
+                best = t;
+        }
+        sink = units;
+        return best;
+    }
+
+    // what call returns, with what it prints on stdout thrown away (as
+    // parse() prints "No error!")
+    public static <T> T quietly(Callable<T> call) throws Exception {
+        System.setOut(NULL);
+        try {
+            return call.call();
+        } finally {
+            System.setOut(OUT);
+        }
+    }
+
+    public List<Result> results() {
+        return results;
+    }
+
+    public static String header() {
+        return String.format(Locale.ROOT, "%-12s %-20s %12s %14s %10s %10s %9s",
+                "benchmark", "input", "bytes", "score", "stdev", "MB/s",
+                "B/unit");
+    }
+
+    public static String row(Result r) {
+        return String.format(Locale.ROOT,
+                "%-12s %-20s %12d %14.0f %10.0f %10.1f %9.1f  %s/s",
+                r.benchmark, r.input, r.bytes, r.score(), r.stdev(),
+                r.bytesPerSecond / (1 << 20), r.allocPerUnit, r.unit + "s");
+    }
+
+    private static String quote(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static String number(double d) {
+        return Double.isNaN(d) ? "null" : String.format(Locale.ROOT, "%.3f", d);
+    }
+
+    // the results, in the layout of JMH's JSON output; scoreError is the
+    // standard deviation of the iterations rather than a confidence interval
+    public void writeJson(Writer w) throws IOException {
+        w.write("[\n");
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            w.write("  {\n");
+            w.write("    \"benchmark\" : " + quote("bench." + r.benchmark) + ",\n");
+            w.write("    \"mode\" : \"thrpt\",\n");
+            w.write("    \"warmupIterations\" : " + warmups + ",\n");
+            w.write("    \"measurementIterations\" : " + iterations + ",\n");
+            w.write("    \"jvm\" : " + quote(System.getProperty("java.home")) + ",\n");
+            w.write("    \"jdkVersion\" : " + quote(System.getProperty("java.version")) + ",\n");
+            w.write("    \"params\" : { \"input\" : " + quote(r.input)
+                    + ", \"bytes\" : \"" + r.bytes + "\" },\n");
+            w.write("    \"primaryMetric\" : {\n");
+            w.write("      \"score\" : " + number(r.score()) + ",\n");
+            w.write("      \"scoreError\" : " + number(r.stdev()) + ",\n");
+            w.write("      \"scoreUnit\" : " + quote(r.unit + "s/s") + ",\n");
+            w.write("      \"rawData\" : [ [ ");
+            for (int s = 0; s < r.samples.length; s++)
+                w.write((s > 0 ? ", " : "") + number(r.samples[s]));
+            w.write(" ] ]\n");
+            w.write("    },\n");
+            w.write("    \"secondaryMetrics\" : {\n");
+            w.write("      \"bytes/s\" : { \"score\" : "
+                    + number(r.bytesPerSecond) + ", \"scoreUnit\" : \"B/s\" },\n");
+            w.write("      \"gc.alloc.rate.norm\" : { \"score\" : "
+                    + number(r.allocPerUnit) + ", \"scoreUnit\" : "
+                    + quote("B/" + r.unit) + " }\n");
+            w.write("    }\n");
+            w.write(i < results.size() - 1 ? "  },\n" : "  }\n");
+        }
+        w.write("]\n");
+    }
+}
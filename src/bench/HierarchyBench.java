@@ -0,0 +1,95 @@
+package bench;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ast.Ast;
+import elaborator.ClassHierarchy;
+import elaborator.ClassHierarchy.Layout;
+import elaborator.ClassTable;
+import elaborator.Elaborator;
+import elaborator.TypeError;
+import elaborator.Types;
+
+// The class hierarchy pass, on programs of many classes: the time to lay
+// them out, and a subtype check by pre-order numbers against one that
+// walks up the superclasses, on random pairs of classes; then the whole
+// type check, which reads the layouts. By shape: a chain of classes, each
+// extending the one before, and trees of a few fanouts.
+//
+//   java -cp bin bench.HierarchyBench [classes]
+//
+// The programs (Inputs.hierarchy, of 2000 classes by default, the chain
+// of a quarter of that) are parsed once; the times are the best of a few
+// runs.
+public class HierarchyBench {
+    private static final int WARMUP = 10;
+    private static final int RUNS = 20;
+    private static final int PAIRS = 1 << 20;
+
+    // whether c is o or extends it, the way the checker found out before
+    static boolean walk(Layout c, Layout o) {
+        for (; c != null; c = c.superclass)
+            if (c == o)
+                return true;
+        return false;
+    }
+
+    static void measure(String shape, int classes, int fanout)
+            throws Exception {
+        Path p = Inputs.tempFile(Inputs.hierarchy(classes, fanout));
+        Ast ast = CheckBench.parse(p.toString());
+        List<TypeError> errors = new ArrayList<>();
+        ClassTable table = new ClassTable(ast, new Types(), errors);
+        ClassHierarchy h = new ClassHierarchy(table, ast, errors);
+        if (!errors.isEmpty())
+            throw new AssertionError(errors.get(0).format(ast.tokens()));
+
+        long layout = Harness.best(WARMUP, RUNS, () -> new ClassHierarchy(
+                table, ast, new ArrayList<>()).size());
+        Random r = new Random(7);
+        Layout[] a = new Layout[PAIRS];
+        Layout[] b = new Layout[PAIRS];
+        for (int i = 0; i < PAIRS; i++) {
+            a[i] = h.get(r.nextInt(h.size()));
+            // an ancestor half the time
+            b[i] = a[i];
+            if (r.nextBoolean())
+                for (int up = r.nextInt(classes); up > 0
+                        && b[i].superclass != null; up--)
+                    b[i] = b[i].superclass;
+            else
+                b[i] = h.get(r.nextInt(h.size()));
+        }
+        long interval = Harness.best(WARMUP, RUNS, () -> {
+            long n = 0;
+            for (int i = 0; i < PAIRS; i++)
+                if (a[i].isSubclassOf(b[i]))
+                    n++;
+            return n;
+        });
+        long chain = Harness.best(WARMUP, RUNS, () -> {
+            long n = 0;
+            for (int i = 0; i < PAIRS; i++)
+                if (walk(a[i], b[i]))
+                    n++;
+            return n;
+        });
+        long check = Harness.best(WARMUP, RUNS, () -> new Elaborator(ast)
+                .check().size());
+        System.out.printf("%-10s %6d classes  layout %7.2f ms  subtype:"
+                + " interval %5.1f ns, walk %7.1f ns  check %7.2f ms%n", shape,
+                classes, layout / 1e6, (double) interval / PAIRS,
+                (double) chain / PAIRS, check / 1e6);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int classes = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        measure("chain", classes / 4, 1);
+        measure("fanout 2", classes, 2);
+        measure("fanout 4", classes, 4);
+        measure("fanout 16", classes, 16);
+    }
+}
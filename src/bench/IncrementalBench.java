@@ -0,0 +1,66 @@
+package bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import parser.IncrementalParser;
+import util.SymbolTable;
+
+// Edit-to-diagnostics latency of IncrementalParser on a large file.
+//
+//   java -cp bin bench.IncrementalBench [lines]
+//
+// Each kind of edit is made in the middle of the file and undone, many
+// times over; the latency of each edit (with its diagnostics up to date)
+// is reported as a median and a 99th percentile, next to the time to lex
+// and parse the whole file from scratch.
+public class IncrementalBench {
+    private static final int WARMUP = 200;
+    private static final int RUNS = 1000;
+
+    static void run(IncrementalParser p, String name, String anchor,
+            int at, int removed, String inserted) {
+        String text = new String(p.text(), StandardCharsets.ISO_8859_1);
+        int offset = text.indexOf(anchor, text.length() / 2) + at;
+        byte[] was = Arrays.copyOfRange(p.text(), offset, offset + removed);
+        byte[] now = inserted.getBytes(StandardCharsets.ISO_8859_1);
+        long[] times = new long[RUNS];
+        int errors = 0;
+        for (int i = 0; i < WARMUP + RUNS; i++) {
+            long start = System.nanoTime();
+            p.edit(offset, removed, now);
+            errors = p.diagnostics().size();
+            long t = System.nanoTime() - start;
+            p.edit(offset, now.length, was);
+            if (i >= WARMUP)
+                times[i - WARMUP] = t;
+        }
+        Arrays.sort(times);
+        System.out.printf("%-16s median %8.1f us  p99 %8.1f us  (%d error%s)%n",
+                name, times[RUNS / 2] / 1e3, times[RUNS * 99 / 100] / 1e3,
+                errors, errors == 1 ? "" : "s");
+    }
+
+    public static void main(String[] args) throws Exception {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        // generated code averages about 20 bytes a line
+        byte[] bytes = Inputs.program(lines * 20L);
+        SymbolTable symbols = new SymbolTable();
+
+        long best = Harness.best(0, 10, () -> new IncrementalParser(bytes,
+                symbols).tokens().size());
+
+        IncrementalParser p = new IncrementalParser(bytes, symbols);
+        System.out.printf("input: %d bytes, %d lines, %d tokens%n",
+                bytes.length, p.tokens().lineCount(), p.tokens().size());
+        System.out.printf("%-16s %15.1f us%n", "full", best / 1e3);
+        run(p, "rename", "i = i + 1;", 0, 1, "index");
+        run(p, "space", "i = i + 1;", 1, 0, " ");
+        run(p, "syntax error", "i = i + 1;", 4, 0, "+ ");
+        run(p, "new statement", "i = i + 1;", 10, 0, " s = s;");
+        run(p, "open comment", "i = i + 1;", 0, 0, "/*");
+        run(p, "new method", "public int Call", 0, 0,
+                "public int F() { return 0; }\n    ");
+        run(p, "new class", "class C", 0, 0, "class D { }\n");
+    }
+}
@@ -0,0 +1,229 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Inputs for the benchmarks: the MiniJava programs under test/ and
+// synthetic programs of any size.
+public class Inputs {
+    private static final String MAIN =
+            "class Main {\n"
+            + "    public static void main(String[] a) {\n"
+            + "        System.out.println(new C0().Init(10));\n"
+            + "    }\n"
+            + "}\n";
+
+    // one generated class; %1$d is its number, %2$d the class it calls
+    private static final String CLASS =
+            "// generated class %1$d: a small bag of integers\n"
+            + "class C%1$d {\n"
+            + "    int[] items;\n"
+            + "    int size;\n"
+            + "\n"
+            + "    public int Init(int n) {\n"
+            + "\tint i;\n"
+            + "\titems = new int[n];\n"
+            + "\tsize = n;\n"
+            + "\ti = 0;\n"
+            + "\twhile (i < n) {\n"
+            + "\t    items[i] = (i * 7 + 3) - (i * 2);\n"
+            + "\t    i = i + 1;\n"
+            + "\t}\n"
+            + "\treturn size;\n"
+            + "    }\n"
+            + "\n"
+            + "    /* sum all items below a bound,\n"
+            + "       skipping the first one */\n"
+            + "    public int Sum(int bound) {\n"
+            + "        int i;\n"
+            + "        int s;\n"
+            + "        boolean ok;\n"
+            + "        i = 1;\n"
+            + "        s = 0;\n"
+            + "        while (i < size) {\n"
+            + "            ok = items[i] < bound && !(bound < 0);\n"
+            + "            if (ok) s = s + items[i]; else s = s - 1;\n"
+            + "            i = i + 1;\n"
+            + "        }\n"
+            + "        return s;\n"
+            + "    }\n"
+            + "\n"
+            + "    public int Call(C%2$d other) {\n"
+            + "        return other.Sum(this.Init(10)) + new C%2$d().Init(3);\n"
+            + "    }\n"
+            + "}\n\n";
+
+    // a well-formed MiniJava program of at least the given size
+    public static byte[] program(long bytes) {
+        StringBuilder sb = new StringBuilder(MAIN);
+        for (int i = 0; sb.length() < bytes; i++)
+            sb.append(String.format(CLASS, i, i == 0 ? 0 : i - 1));
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // a block of documentation, as generated sources tend to carry
+    private static final String DOC =
+            "    /*\n"
+            + "     * This class was generated from the schema; do not edit it by\n"
+            + "     * hand. Every method below keeps the invariant that size is the\n"
+            + "     * number of valid items, and that items beyond it are zero.\n"
+            + "     *\n"
+            + "     * See the generator for the meaning of each field; the comments\n"
+            + "     * here are kept only to help reading the output of the compiler.\n"
+            + "     */\n"
+            + "                                                                \n"
+            + "    // ------------------------------------------------------------\n";
+
+    // like program(), with a block comment and a blank line before each
+    // class, and deeper indentation
+    public static byte[] documented(long bytes) {
+        StringBuilder sb = new StringBuilder(MAIN);
+        for (int i = 0; sb.length() < bytes; i++) {
+            sb.append(DOC);
+            sb.append(String.format(CLASS, i, i == 0 ? 0 : i - 1)
+                    .replace("\n    ", "\n            "));
+        }
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // an expression over the locals of EXPRESSIONS, of about the given
+    // number of operands, with every operator, calls and array accesses
+    private static void expression(StringBuilder sb, Random r, int operands) {
+        if (operands <= 1) {
+            switch (r.nextInt(8)) {
+            case 0:
+                sb.append(r.nextInt(1000));
+                break;
+            case 1:
+                sb.append("a[i]");
+                break;
+            case 2:
+                sb.append("a.length");
+                break;
+            case 3:
+                sb.append("this.F(i, j)");
+                break;
+            default:
+                sb.append((char) ('i' + r.nextInt(3)));
+            }
+            return;
+        }
+        int left = 1 + r.nextInt(operands - 1);
+        boolean paren = r.nextInt(4) == 0;
+        if (paren)
+            sb.append('(');
+        expression(sb, r, left);
+        char op = "+-*+-*<&".charAt(r.nextInt(8));
+        sb.append(' ').append(op);
+        if (op == '&')
+            sb.append('&');
+        sb.append(' ');
+        expression(sb, r, operands - left);
+        if (paren)
+            sb.append(')');
+    }
+
+    private static final String EXPRESSIONS =
+            "class E%1$d {\n"
+            + "    int[] a;\n"
+            + "\n"
+            + "    public int F(int i, int j) {\n"
+            + "        int k;\n"
+            + "%2$s"
+            + "        return k;\n"
+            + "    }\n"
+            + "}\n\n";
+
+    // a program of at least the given size that is mostly long arithmetic
+    // and boolean expressions, as generated code tends to have; it parses,
+    // though it does not type check
+    public static byte[] expressions(long bytes) {
+        Random r = new Random(11);
+        StringBuilder sb = new StringBuilder(MAIN);
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; sb.length() < bytes; i++) {
+            body.setLength(0);
+            for (int s = 0; s < 8; s++) {
+                body.append("        k = ");
+                expression(body, r, 4 + r.nextInt(28));
+                body.append(";\n");
+            }
+            sb.append(String.format(EXPRESSIONS, i, body));
+        }
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // one class of a hierarchy; %1$d is its number, %2$d its superclass's
+    private static final String SUBCLASS =
+            "class C%1$d extends C%2$d {\n"
+            + "    int f%1$d;\n"
+            + "\n"
+            + "    public int F(C0 o) {\n"
+            + "        return o.G() + f%1$d;\n"
+            + "    }\n"
+            + "\n"
+            + "    public int G() {\n"
+            + "        return %1$d;\n"
+            + "    }\n"
+            + "\n"
+            + "    public int H%1$d(C%2$d p) {\n"
+            + "        C%2$d q;\n"
+            + "        q = this;\n"
+            + "        return p.F(q) + this.F(new C%1$d());\n"
+            + "    }\n"
+            + "}\n\n";
+
+    // a program of the given number of classes, C0 and those that extend
+    // it, each the superclass of up to fanout others, numbered in
+    // breadth-first order; each adds a field and a method and overrides
+    // two, and it type checks
+    public static byte[] hierarchy(int classes, int fanout) {
+        StringBuilder sb = new StringBuilder(MAIN.replace("Init(10)", "G()"));
+        for (int i = 0; i < classes; i++) {
+            String c = String.format(SUBCLASS, i, i == 0 ? 0 : (i - 1)
+                    / fanout);
+            sb.append(i == 0 ? c.replace(" extends C0", "") : c);
+        }
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // a program whose one statement prints an expression nested the given
+    // number of times, alternately in parentheses and under a "!"
+    public static byte[] nested(int depth) {
+        StringBuilder sb = new StringBuilder(
+                "class Main {\n"
+                + "    public static void main(String[] a) {\n"
+                + "        System.out.println(");
+        for (int d = 0; d < depth; d++)
+            sb.append(d % 2 == 0 ? "(" : "!");
+        sb.append("x < 1");
+        for (int d = 0; d < depth; d += 2)
+            sb.append(')');
+        sb.append(");\n    }\n}\n");
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // the programs under test/, by file name
+    public static List<Path> testPrograms() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (java.util.stream.Stream<Path> s = Files.list(Paths.get("test"))) {
+            s.filter(p -> p.toString().endsWith(".java")).sorted()
+                    .forEach(files::add);
+        }
+        return files;
+    }
+
+    // write bytes to a temporary file that is deleted on exit
+    public static Path tempFile(byte[] bytes) throws IOException {
+        Path p = Files.createTempFile("tiger-bench", ".java");
+        p.toFile().deleteOnExit();
+        Files.write(p, bytes);
+        return p;
+    }
+}
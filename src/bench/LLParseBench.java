@@ -0,0 +1,85 @@
+package bench;
+
+import java.nio.charset.StandardCharsets;
+
+import ast.Ast;
+import control.CompilerContext;
+import control.Options;
+import lexer.TokenBuffer;
+import lexer.TokenCursor;
+import parser.LLParser;
+import parser.Parser;
+
+// The table-driven LLParser against the recursive-descent Parser, on
+// tokens lexed beforehand: a synthetic program, then statements nested
+// deeper than the Java stack lets Parser go, as blocks and as an else-if
+// chain.
+//
+//   java -cp bin bench.LLParseBench [megabytes] [depth]
+//
+// (32 MB and a depth of 200000 by default.) Both parsers must build the
+// same tree; a StackOverflowError is reported as such.
+public class LLParseBench {
+    private static final int WARMUP = 3;
+    private static final int RUNS = 5;
+
+    // parse() reports success on stdout
+    static Ast descent(TokenBuffer tokens) throws Exception {
+        return Harness.quietly(() -> new Parser(new TokenCursor(tokens))
+                .parse());
+    }
+
+    static Ast table(TokenBuffer tokens) throws Exception {
+        return Harness.quietly(() -> new LLParser(tokens, new CompilerContext(
+                Options.DEFAULT, tokens.symbols())).parse());
+    }
+
+    // the best time of op, or -1 if it overflows the stack
+    static long best(Harness.Op op) throws Exception {
+        try {
+            return Harness.best(WARMUP, RUNS, op);
+        } catch (StackOverflowError e) {
+            return -1;
+        }
+    }
+
+    static String time(long t) {
+        return t < 0 ? "stack overflow" : String.format("%8.1f ms", t / 1e6);
+    }
+
+    static void compare(String name, byte[] input) throws Exception {
+        TokenBuffer tokens = ParallelLexBench.sequential(input);
+        long one = best(() -> descent(tokens).size());
+        long two = best(() -> table(tokens).size());
+        if (one >= 0 && !ParallelParseBench.same(table(tokens),
+                descent(tokens)))
+            throw new AssertionError("trees differ");
+        System.out.printf("%-10s %9d tokens  descent %-14s  table %-14s%s%n",
+                name, tokens.size(), time(one), time(two), one < 0 ? ""
+                        : String.format("  speedup %.2f", (double) one / two));
+    }
+
+    // a main class whose statement is depth statements deep
+    static byte[] nested(String open, String inner, String close,
+            int depth) {
+        StringBuilder b = new StringBuilder(
+                "class Main { public static void main(String[] a) {\n");
+        for (int i = 0; i < depth; i++)
+            b.append(open);
+        b.append(inner);
+        for (int i = 0; i < depth; i++)
+            b.append(close);
+        return b.append("\n} }\n").toString().getBytes(
+                StandardCharsets.US_ASCII);
+    }
+
+    public static void main(String[] args) throws Exception {
+        long size = (args.length > 0 ? Long.parseLong(args[0]) : 32) << 20;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+
+        compare("program", Inputs.program(size));
+        compare("blocks", nested("{ ", "x = 1;", " }", depth));
+        compare("else-if", nested("if (x < 1) x = 1; else ", "x = 2;", "",
+                depth));
+    }
+}
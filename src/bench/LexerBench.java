@@ -0,0 +1,51 @@
+package bench;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import lexer.Lexer;
+import lexer.Source;
+
+// Lexer throughput for each kind of source.
+//
+//   java -cp bin bench.LexerBench [megabytes]
+//
+// "per-char" reads one byte per call through a BufferedInputStream, the
+// way the lexer used to; the others are the Source implementations.
+public class LexerBench {
+    private static final int WARMUP = 3;
+    private static final int RUNS = 5;
+
+    static long lex(Source source) throws IOException {
+        Lexer lexer = new Lexer("bench", source);
+        while (lexer.scan())
+            ;
+        source.close();
+        return lexer.tokens().size();
+    }
+
+    // lex returns the tokens of the input, of size bytes
+    static void run(String name, Harness.Op lex, long size) throws Exception {
+        double secs = Harness.best(WARMUP, RUNS, lex) / 1e9;
+        long tokens = lex.run();
+        System.out.printf("%-10s %12.0f tokens/s %8.1f MB/s%n", name,
+                tokens / secs, size / secs / (1 << 20));
+    }
+
+    public static void main(String[] args) throws Exception {
+        long size = (args.length > 0 ? Long.parseLong(args[0]) : 8) << 20;
+        byte[] bytes = Inputs.program(size);
+        Path file = Inputs.tempFile(bytes);
+        String name = file.toString();
+
+        System.out.printf("input: %d bytes%n", bytes.length);
+        run("per-char", () -> lex(Source.of(new BufferedInputStream(
+                new FileInputStream(name)), 1)), bytes.length);
+        run("stream", () -> lex(Source.of(new FileInputStream(name))),
+                bytes.length);
+        run("mapped", () -> lex(Source.map(name)), bytes.length);
+        run("bytes", () -> lex(Source.of(bytes)), bytes.length);
+    }
+}
@@ -0,0 +1,49 @@
+package bench;
+
+import java.util.concurrent.ForkJoinPool;
+
+import lexer.Lexer;
+import lexer.ParallelLexer;
+import lexer.Source;
+import lexer.TokenBuffer;
+import util.SymbolTable;
+
+// Speedup of ParallelLexer over the sequential lexer, by thread count.
+//
+//   java -cp bin bench.ParallelLexBench [megabytes] [max threads]
+public class ParallelLexBench {
+    private static final int WARMUP = 3;
+    private static final int RUNS = 5;
+
+    static TokenBuffer sequential(byte[] input) {
+        Lexer lexer = new Lexer("bench", Source.of(input), new SymbolTable());
+        while (lexer.scan())
+            ;
+        return lexer.tokens();
+    }
+
+    public static void main(String[] args) throws Exception {
+        long size = (args.length > 0 ? Long.parseLong(args[0]) : 32) << 20;
+        int cores = Runtime.getRuntime().availableProcessors();
+        int max = args.length > 1 ? Integer.parseInt(args[1])
+                : Math.max(cores, 4);
+        byte[] input = Inputs.program(size);
+
+        System.out.printf("input: %d bytes, %d cores%n", input.length, cores);
+        long seq = Harness.best(WARMUP, RUNS, () -> sequential(input).size());
+        System.out.printf("sequential %8.1f ms%n", seq / 1e6);
+
+        TokenBuffer expected = sequential(input);
+        for (int threads = 1; threads <= max; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            TokenBuffer got = ParallelLexer.lex(input, new SymbolTable(), pool);
+            if (!got.contentEquals(expected))
+                throw new AssertionError("token streams differ");
+            long t = Harness.best(WARMUP, RUNS, () -> ParallelLexer.lex(input,
+                    new SymbolTable(), pool).size());
+            System.out.printf("%2d threads %8.1f ms  speedup %.2f%n", threads,
+                    t / 1e6, (double) seq / t);
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package bench;
+
+import java.util.concurrent.ForkJoinPool;
+
+import ast.Ast;
+import lexer.TokenBuffer;
+import lexer.TokenCursor;
+import parser.ParallelParser;
+import parser.Parser;
+
+// Speedup of ParallelParser over the sequential parser, by thread count,
+// on tokens lexed beforehand.
+//
+//   java -cp bin bench.ParallelParseBench [megabytes] [max threads]
+public class ParallelParseBench {
+    private static final int WARMUP = 3;
+    private static final int RUNS = 5;
+
+    // parse() reports success on stdout
+    static Ast sequential(TokenBuffer tokens) throws Exception {
+        return Harness.quietly(() -> new Parser(new TokenCursor(tokens))
+                .parse());
+    }
+
+    static Ast parallel(TokenBuffer tokens, ForkJoinPool pool)
+            throws Exception {
+        return Harness.quietly(() -> new ParallelParser(tokens, pool)
+                .parse());
+    }
+
+    static boolean same(Ast a, Ast b) {
+        if (a.size() != b.size() || a.root() != b.root())
+            return false;
+        for (int n = 0; n < a.size(); n++)
+            if (a.kind(n) != b.kind(n) || a.token(n) != b.token(n)
+                    || a.firstChild(n) != b.firstChild(n)
+                    || a.nextSibling(n) != b.nextSibling(n))
+                return false;
+        return true;
+    }
+
+    public static void main(String[] args) throws Exception {
+        long size = (args.length > 0 ? Long.parseLong(args[0]) : 32) << 20;
+        int cores = Runtime.getRuntime().availableProcessors();
+        int max = args.length > 1 ? Integer.parseInt(args[1])
+                : Math.max(cores, 4);
+        byte[] input = Inputs.program(size);
+        TokenBuffer tokens = ParallelLexBench.sequential(input);
+
+        System.out.printf("input: %d bytes, %d tokens, %d cores%n",
+                input.length, tokens.size(), cores);
+        long seq = Harness.best(WARMUP, RUNS, () -> sequential(tokens).size());
+        System.out.printf("sequential %8.1f ms%n", seq / 1e6);
+
+        Ast expected = sequential(tokens);
+        for (int threads = 1; threads <= max; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            if (!same(parallel(tokens, pool), expected))
+                throw new AssertionError("trees differ");
+            long t = Harness.best(WARMUP, RUNS, () -> parallel(tokens, pool)
+                    .size());
+            System.out.printf("%2d threads %8.1f ms  speedup %.2f%n", threads,
+                    t / 1e6, (double) seq / t);
+            pool.shutdown();
+        }
+    }
+}
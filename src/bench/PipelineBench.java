@@ -0,0 +1,93 @@
+package bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import ast.Ast;
+import control.CompilerContext;
+import control.Options;
+import lexer.Source;
+import lexer.TokenCursor;
+import lexer.TokenPipe;
+import parser.Parser;
+
+// End to end time, from opening a file to its syntax tree, with the lexer
+// interleaved with the parser on one thread, against the lexer running
+// ahead on its own thread (-pipeline), by input size.
+//
+//   java -cp bin bench.PipelineBench [megabytes]...
+//
+// The inputs are synthetic programs (4, 16 and 64 MB by default) in a
+// temporary directory, read through Source.open as the compiler does.
+// The pipeline can only win with a core for each thread.
+public class PipelineBench {
+    private static final int WARMUP = 3;
+    private static final int RUNS = 5;
+
+    // parse() reports success on stdout
+    static Ast interleaved(String file) throws Exception {
+        Source source = Source.open(file);
+        try {
+            CompilerContext context = new CompilerContext(Options.DEFAULT);
+            return Harness.quietly(() -> new Parser(file, source, context)
+                    .parse());
+        } finally {
+            source.close();
+        }
+    }
+
+    static Ast pipelined(String file) throws Exception {
+        Source source = Source.open(file);
+        try {
+            CompilerContext context = new CompilerContext(Options.DEFAULT);
+            TokenPipe pipe = TokenPipe.lex(file, source, context);
+            return Harness.quietly(() -> new Parser(new TokenCursor(pipe),
+                    context).parse());
+        } finally {
+            source.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        long[] sizes = args.length == 0 ? new long[] { 4, 16, 64 }
+                : new long[args.length];
+        for (int i = 0; i < args.length; i++)
+            sizes[i] = Long.parseLong(args[i]);
+        System.out.printf("%d cores%n", Runtime.getRuntime()
+                .availableProcessors());
+
+        Path dir = Files.createTempDirectory("tiger-pipeline");
+        dir.toFile().deleteOnExit();
+
+        // compile both paths before timing either
+        Path warm = dir.resolve("Warm.java");
+        Files.write(warm, Inputs.program(1 << 20));
+        for (int i = 0; i < 10; i++) {
+            interleaved(warm.toString());
+            pipelined(warm.toString());
+        }
+        Files.delete(warm);
+
+        for (long mb : sizes) {
+            Path p = dir.resolve("P" + mb + ".java");
+            Files.write(p, Inputs.program(mb << 20));
+            p.toFile().deleteOnExit();
+            String file = p.toString();
+
+            Ast expected = interleaved(file);
+            Ast got = pipelined(file);
+            if (!ParallelParseBench.same(got, expected)
+                    || !got.tokens().contentEquals(expected.tokens()))
+                throw new AssertionError("trees differ");
+
+            long one = Harness.best(WARMUP, RUNS, () -> interleaved(file)
+                    .size());
+            long two = Harness.best(WARMUP, RUNS, () -> pipelined(file)
+                    .size());
+            System.out.printf("%4d MB  interleaved %8.1f ms  pipelined %8.1f ms"
+                    + "  speedup %.2f%n", mb, one / 1e6, two / 1e6,
+                    (double) one / two);
+            Files.delete(p);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package bench;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import control.CompilerContext;
+import control.Options;
+import lexer.Source;
+import parser.Parser;
+
+// Reporting every syntax error of a broken file in one compile, against
+// the round trips of a compiler that stops at the first: compile, fix the
+// error reported, compile again, until the file is clean.
+//
+//   java -cp bin bench.RecoveryBench [-o recovery.json] [-files n]
+//                                    [-errors n] [-fork] [size]
+//
+// The corpus is -files synthetic programs of the given size, each with
+// -errors syntax errors of a few common kinds, in different classes.
+// Benchmarks, scored in files/s, lexing and parsing from bytes:
+//   onepass     one parse of each file, recovering from every error
+//   roundtrips  for each file, a parse that stops at the first error for
+//               every error there is, each with one more of them fixed,
+//               and a last one of the clean file
+// With -fork, both are also timed once as CI runs them, a new JVM for each
+// compile.
+public class RecoveryBench {
+    private static final PrintStream OUT = System.out;
+    private static final PrintStream ERR = System.err;
+    private static final PrintStream NULL = new PrintStream(
+            OutputStream.nullOutputStream());
+
+    // the errors put in a program: a text of Inputs' generated class, and
+    // what it is replaced by
+    private static final String[][] MUTATIONS = {
+        { "\tsize = n;\n", "\tsize = n\n" },
+        { "while (i < n) {", "while (i < ) {" },
+        { "(i * 7 + 3) - (i * 2);", "(i * 7 + 3 - (i * 2);" },
+        { "    int size;\n", "    int size\n" },
+        { "public int Sum(int bound)", "public int Sum(int bound,)" },
+        { "        return s;\n", "        return s\n" },
+        { "s = s + items[i]; else", "s = s + items[i] else" },
+        { "boolean ok;", "boolean ok" },
+        { "return other.Sum(this.Init(10))", "return other.Sum(this.Init(10)" },
+        { "!(bound < 0);", "!(bound < 0;" },
+    };
+
+    // A program with errors, in every state of being fixed: versions[r]
+    // has all but the first r of them.
+    static byte[][] versions(long size, int errors, Random r) {
+        String text = new String(Inputs.program(size),
+                StandardCharsets.US_ASCII);
+        List<Integer> classes = new ArrayList<>();
+        for (int at = text.indexOf("\nclass C"); at >= 0;
+                at = text.indexOf("\nclass C", at + 1))
+            classes.add(at);
+        errors = Math.min(errors, classes.size());
+        int[] at = new int[errors];
+        String[][] m = new String[errors][];
+        for (int e = 0; e < errors; e++) {
+            m[e] = MUTATIONS[r.nextInt(MUTATIONS.length)];
+            at[e] = text.indexOf(m[e][0],
+                    classes.get(e * classes.size() / errors));
+        }
+        byte[][] versions = new byte[errors + 1][];
+        for (int v = 0; v <= errors; v++) {
+            // from the last error back, so that the others stay in place
+            StringBuilder sb = new StringBuilder(text);
+            for (int e = errors - 1; e >= v; e--)
+                sb.replace(at[e], at[e] + m[e][0].length(), m[e][1]);
+            versions[v] = sb.toString().getBytes(StandardCharsets.US_ASCII);
+        }
+        return versions;
+    }
+
+    // parse a file, up to maxErrors errors; returns how many were found
+    static int compile(byte[] file, int maxErrors) {
+        Options.Builder options = new Options.Builder();
+        options.maxErrors = maxErrors;
+        CompilerContext context = new CompilerContext(options.build());
+        System.setOut(NULL);
+        System.setErr(NULL);
+        try {
+            Parser parser = new Parser("bench", Source.of(file), context);
+            parser.parse();
+            return parser.diagnostics().size();
+        } finally {
+            System.setOut(OUT);
+            System.setErr(ERR);
+        }
+    }
+
+    // run the compiler on a file in a new JVM; returns its exit status
+    static int fork(byte[] file, int maxErrors) throws Exception {
+        Path p = Inputs.tempFile(file);
+        Process proc = new ProcessBuilder(
+                System.getProperty("java.home") + File.separator + "bin"
+                        + File.separator + "java",
+                "-cp", System.getProperty("java.class.path"), "Tiger",
+                "-maxerrors", Integer.toString(maxErrors), p.toString())
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        return proc.waitFor();
+    }
+
+    public static void main(String[] args) throws Exception {
+        String json = "recovery.json";
+        int files = 20;
+        int errors = 40;
+        boolean fork = false;
+        long size = 64 << 10;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-o") && i + 1 < args.length)
+                json = args[++i];
+            else if (args[i].equals("-files") && i + 1 < args.length)
+                files = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-errors") && i + 1 < args.length)
+                errors = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-fork"))
+                fork = true;
+            else
+                size = FrontEndBench.size(args[i]);
+        }
+
+        Random random = new Random(12);
+        List<byte[][]> corpus = new ArrayList<>();
+        long bytes = 0;
+        int put = 0;
+        int found = 0;
+        for (int f = 0; f < files; f++) {
+            byte[][] v = versions(size, errors, random);
+            corpus.add(v);
+            bytes += v[0].length;
+            put += v.length - 1;
+            found += compile(v[0], 0);
+        }
+        String input = files + "x" + size + "-" + errors + "errors";
+        System.out.println(files + " files, " + put + " errors put in, "
+                + found + " reported in one pass");
+
+        Harness harness = new Harness(3, 5, 1000);
+        System.out.println(Harness.header());
+        long total = bytes;
+        int n = files;
+        System.out.println(Harness.row(harness.measure("onepass", input,
+                total, "file", () -> {
+                    for (byte[][] v : corpus)
+                        compile(v[0], 0);
+                    return n;
+                })));
+        System.out.println(Harness.row(harness.measure("roundtrips", input,
+                total, "file", () -> {
+                    for (byte[][] v : corpus)
+                        for (byte[] b : v)
+                            compile(b, 1);
+                    return n;
+                })));
+        try (Writer w = new FileWriter(json)) {
+            harness.writeJson(w);
+        }
+        System.out.println("results written to " + json);
+
+        if (fork) {
+            long t0 = System.nanoTime();
+            for (byte[][] v : corpus)
+                fork(v[0], 0);
+            long t1 = System.nanoTime();
+            for (byte[][] v : corpus)
+                for (byte[] b : v)
+                    fork(b, 1);
+            long t2 = System.nanoTime();
+            System.out.printf("forked: one pass %.1f s, round trips %.1f s%n",
+                    (t1 - t0) / 1e9, (t2 - t1) / 1e9);
+        }
+    }
+}
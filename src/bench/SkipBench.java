@@ -0,0 +1,39 @@
+package bench;
+
+import control.CompilerContext;
+import control.Options;
+import lexer.Lexer;
+import lexer.Source;
+
+// Scalar versus word-at-a-time skipping of blanks and comments.
+//
+//   java -cp bin bench.SkipBench [megabytes]
+public class SkipBench {
+    private static final int WARMUP = 5;
+    private static final int RUNS = 10;
+
+    static long lex(byte[] input, Options options) {
+        Lexer lexer = new Lexer("bench", Source.of(input),
+                new CompilerContext(options));
+        while (lexer.scan())
+            ;
+        return lexer.tokens().size();
+    }
+
+    static void run(String name, byte[] input) throws Exception {
+        for (Options.Skip skip : Options.Skip.values()) {
+            Options.Builder options = new Options.Builder();
+            options.skip = skip;
+            Options o = options.build();
+            long t = Harness.best(WARMUP, RUNS, () -> lex(input, o));
+            System.out.printf("%-10s %-6s %8.1f MB/s%n", name, skip,
+                    input.length / (t / 1e9) / (1 << 20));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        long size = (args.length > 0 ? Long.parseLong(args[0]) : 8) << 20;
+        run("plain", Inputs.program(size));
+        run("documented", Inputs.documented(size));
+    }
+}
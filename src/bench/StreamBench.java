@@ -0,0 +1,140 @@
+package bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+import ast.Ast;
+import ast.NodeKind;
+import control.CompilerContext;
+import control.Options;
+import lexer.Source;
+import parser.ParseListener;
+import parser.Parser;
+
+// A tool's pass over a file, counting its statements, done on the syntax
+// tree of a full parse against the events of Parser.stream, which builds
+// none; and the events until the first method only, which stops the parse
+// there. By input size:
+//
+//   java -cp bin bench.StreamBench [megabytes]...
+//
+// The inputs are synthetic programs (16 and 64 MB by default) in a
+// temporary directory, read through Source.open. Held is the heap still in
+// use, after a collection, with the result of the pass kept: the tree and
+// its tokens for a full parse, nothing for the others.
+public class StreamBench {
+    private static final int WARMUP = 3;
+    private static final int RUNS = 5;
+    private static final MemoryMXBean MEMORY = ManagementFactory
+            .getMemoryMXBean();
+
+    // the statements in a tree
+    static int statements(Ast ast) {
+        int count = 0;
+        for (int n = 0; n < ast.size(); n++)
+            switch (ast.kind(n)) {
+            case BLOCK:
+            case IF:
+            case WHILE:
+            case PRINT:
+            case ASSIGN:
+            case ARRAY_ASSIGN:
+                count++;
+                break;
+            default:
+            }
+        return count;
+    }
+
+    static Object tree(String file) throws Exception {
+        Source source = Source.open(file);
+        try {
+            CompilerContext context = new CompilerContext(Options.DEFAULT);
+            Ast ast = new Parser(file, source, context).parseQuietly();
+            statements(ast);
+            return ast;
+        } finally {
+            source.close();
+        }
+    }
+
+    static Object stream(String file) throws Exception {
+        int[] count = new int[1];
+        Source source = Source.open(file);
+        try {
+            Parser.stream(file, source, new ParseListener() {
+                @Override
+                public boolean statement(NodeKind kind, int line) {
+                    count[0]++;
+                    return true;
+                }
+            });
+        } finally {
+            source.close();
+        }
+        return count[0];
+    }
+
+    static Object first(String file) throws Exception {
+        String[] name = new String[1];
+        Source source = Source.open(file);
+        try {
+            Parser.stream(file, source, new ParseListener() {
+                @Override
+                public boolean enterMethod(String method, int line) {
+                    name[0] = method;
+                    return false;
+                }
+            });
+        } finally {
+            source.close();
+        }
+        return name[0];
+    }
+
+    static long held() {
+        System.gc();
+        return MEMORY.getHeapMemoryUsage().getUsed();
+    }
+
+    // prints the best time of pass, and the heap its result holds on to
+    static void measure(String name, Callable<Object> pass) throws Exception {
+        long best = Harness.best(WARMUP, RUNS, () -> pass.call() == null ? 0
+                : 1);
+        long before = held();
+        Object kept = pass.call();
+        long after = held();
+        System.out.printf("  %-8s %10.1f ms  held %8.1f MB%n", name,
+                best / 1e6, Math.max(0, after - before) / 1048576.0);
+        if (kept == null)
+            throw new AssertionError("no result");
+    }
+
+    public static void main(String[] args) throws Exception {
+        long[] sizes = args.length == 0 ? new long[] { 16, 64 }
+                : new long[args.length];
+        for (int i = 0; i < args.length; i++)
+            sizes[i] = Long.parseLong(args[i]);
+
+        Path dir = Files.createTempDirectory("tiger-stream");
+        dir.toFile().deleteOnExit();
+        for (long mb : sizes) {
+            Path p = dir.resolve("P" + mb + ".java");
+            Files.write(p, Inputs.program(mb << 20));
+            p.toFile().deleteOnExit();
+            String file = p.toString();
+
+            int expected = statements((Ast) tree(file));
+            if ((Integer) stream(file) != expected)
+                throw new AssertionError("statements differ");
+            System.out.printf("%d MB, %d statements%n", mb, expected);
+            measure("tree", () -> tree(file));
+            measure("stream", () -> stream(file));
+            measure("first", () -> first(file));
+            Files.delete(p);
+        }
+    }
+}
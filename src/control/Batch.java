@@ -0,0 +1,346 @@
+package control;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.stream.Stream;
+
+import ast.Ast;
+import ast.AstDump;
+import elaborator.Elaborator;
+import elaborator.TypeError;
+import lexer.Lexer;
+import lexer.Source;
+import lexer.TokFile;
+import lexer.TokenBuffer;
+import lexer.TokenCursor;
+import parser.ClassIndex;
+import parser.Diagnostic;
+import parser.LLParser;
+import parser.Parser;
+
+// Compiles many files in one run, so that the JVM starts and warms up
+// once for all of them.
+//
+// Every file is read on a thread of its own (a virtual thread, on a JDK
+// that has them), then lexed and parsed on a pool of -jobs threads. At
+// most a few files per job are in flight at once, which bounds the memory
+// held by files read but not compiled yet. What each file prints is kept
+// until the files before it are done, so the output is in the order the
+// files were named, whatever order they finish in. With -cache, a file
+// whose bytes were compiled before, by this run or another, is not lexed
+// or parsed again (see Cache); with -check, what parses is type checked,
+// whether it was cached or not.
+//
+// The pools can be shared by runs at once, as the daemon does.
+public final class Batch
+{
+  // platform threads to read on, without virtual ones
+  private static final int READERS = 16;
+
+  // what compiling one file printed, and its number of errors
+  private static final class Result
+  {
+    final String out;
+    final String err;
+    final int errors;
+
+    Result(String out, String err, int errors)
+    {
+      this.out = out;
+      this.err = err;
+      this.errors = errors;
+    }
+  }
+
+  private final ExecutorService io;
+  private final ForkJoinPool cpu;
+  private final int jobs;
+
+  // jobs threads to compile on; 0 for one per core
+  public Batch(int jobs)
+  {
+    if (jobs == 0)
+      jobs = Runtime.getRuntime().availableProcessors();
+    this.jobs = jobs;
+    this.io = threads("reader", READERS);
+    this.cpu = new ForkJoinPool(jobs);
+  }
+
+  public void shutdown()
+  {
+    io.shutdown();
+    cpu.shutdown();
+  }
+
+  // The files named, relative to base, with each directory replaced by the
+  // .java files under it, in order of their paths. The paths are as
+  // named, not resolved against base.
+  public static List<Path> expand(Path base, List<String> names)
+      throws IOException
+  {
+    List<Path> files = new ArrayList<Path>();
+    for (String name : names) {
+      Path p = Paths.get(name);
+      Path dir = base.resolve(p);
+      if (!Files.isDirectory(dir)) {
+        files.add(p);
+        continue;
+      }
+      try (Stream<Path> s = Files.walk(dir)) {
+        s.filter(f -> f.toString().endsWith(".java")
+            && Files.isRegularFile(f)).sorted()
+            .forEach(f -> files.add(p.resolve(dir.relativize(f))));
+      }
+    }
+    return files;
+  }
+
+  // An executor with a virtual thread for each task, if the JDK has them,
+  // or else up to max platform threads of the given name (0: no limit).
+  static ExecutorService threads(String name, int max)
+  {
+    try {
+      return (ExecutorService) Executors.class
+          .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      ThreadFactory daemon = r -> {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+      };
+      return max == 0 ? Executors.newCachedThreadPool(daemon)
+          : Executors.newFixedThreadPool(max, daemon);
+    }
+  }
+
+  private static byte[] read(Path file, CompilerContext context)
+  {
+    try {
+      Metrics.Timer read = context.metrics.start("read");
+      byte[] bytes = Files.readAllBytes(file);
+      read.stop(bytes.length, "bytes");
+      return bytes;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // Lex and parse one file, named relative to base, in its compilation,
+  // unless cache has what that produced, and type check it if -check.
+  static Result compile(Path base, Path file, byte[] bytes,
+      CompilerContext context, Cache cache) throws IOException
+  {
+    Options options = context.options;
+    String name = file.toString();
+    String key = null;
+    if (cache != null) {
+      Metrics.Timer lookup = context.metrics.start("cache");
+      key = Cache.key(bytes, name.endsWith(".tok"), options);
+      Cache.Entry hit = cache.get(key, options.dumpAst || options.check);
+      lookup.stop(hit == null ? 0 : 1, "hits");
+      if (hit != null)
+        return cached(name, hit, context);
+    }
+
+    TokenBuffer tokens;
+    Metrics.Timer lex = context.metrics.start("lex");
+    if (name.endsWith(".tok"))
+      tokens = TokFile.read(new ByteArrayInputStream(bytes), context.symbols);
+    else {
+      Lexer lexer = new Lexer(name, Source.of(bytes), context);
+      while (lexer.scan())
+        ;
+      tokens = lexer.tokens();
+    }
+    lex.stop(tokens.size(), "tokens");
+    // with -cacheclasses, only the classes that changed since the file
+    // was last compiled, if it was indexed then (see Cache)
+    Path path = base.resolve(file);
+    ClassIndex classes = cache != null && options.cacheClasses
+        ? cache.classes(path) : null;
+    Metrics.Timer parse = context.metrics.start("parse");
+    Ast ast;
+    if (classes != null) {
+      classes = ClassIndex.parse(tokens, context, classes);
+      ast = classes.ast();
+    } else if (options.backend == Options.Backend.TABLE)
+      ast = new LLParser(tokens, context).parseQuietly();
+    else
+      ast = new Parser(new TokenCursor(tokens), context).parseQuietly();
+    parse.stop(ast.size(), "nodes");
+    if (cache != null) {
+      Metrics.Timer store = context.metrics.start("store");
+      try {
+        cache.put(key, tokens, ast, context.diagnostics());
+        if (options.cacheClasses)
+          cache.putClasses(path, classes == null ? ClassIndex.EMPTY
+              : classes);
+      } catch (IOException e) {
+        // the cache is only an optimization
+      }
+      store.stop(ast.size(), "nodes");
+    }
+    return result(name, tokens, ast, context.diagnostics(), context);
+  }
+
+  // the Result of a file the cache had, decoding only what it prints
+  private static Result cached(String name, Cache.Entry hit,
+      CompilerContext context) throws IOException
+  {
+    List<Diagnostic> diagnostics = hit.diagnostics();
+    Options options = context.options;
+    boolean tree = (options.dumpAst || options.check) && diagnostics.isEmpty();
+    if (diagnostics.isEmpty() && !tree)
+      return new Result("", "", 0);
+    TokenBuffer tokens = hit.tokens(context.symbols);
+    Ast ast = tree ? hit.ast(tokens, options.astOffHeap) : null;
+    return result(name, tokens, ast, diagnostics, context);
+  }
+
+  // the type errors of a tree without syntax errors, if -check
+  private static List<TypeError> check(Ast ast, CompilerContext context)
+  {
+    if (!context.options.check)
+      return List.of();
+    Metrics.Timer check = context.metrics.start("check");
+    List<TypeError> errors = new Elaborator(ast).check();
+    check.stop(ast.tokens().lineCount(), "lines");
+    return errors;
+  }
+
+  // what a file with these tokens, tree and syntax errors prints, having
+  // been type checked if it has none
+  private static Result result(String name, TokenBuffer tokens, Ast ast,
+      List<Diagnostic> diagnostics, CompilerContext context)
+  {
+    StringBuilder err = new StringBuilder();
+    for (Diagnostic d : diagnostics)
+      err.append(name).append(": ").append(d.format(tokens)).append('\n');
+    List<TypeError> typeErrors = diagnostics.isEmpty() ? check(ast, context)
+        : List.of();
+    for (TypeError e : typeErrors)
+      err.append(name).append(": ").append(e.format(tokens)).append('\n');
+    int errors = diagnostics.size() + typeErrors.size();
+    String out = "";
+    if (context.options.dumpAst && errors == 0) {
+      ByteArrayOutputStream buf = new ByteArrayOutputStream();
+      PrintStream ps = new PrintStream(buf);
+      AstDump.write(ast, ps);
+      ps.flush();
+      out = buf.toString();
+    }
+    return new Result(out, err.toString(), errors);
+  }
+
+  // the Result of a file that could not be read or compiled
+  private static Result failed(Path file, Throwable e)
+  {
+    while (e.getCause() != null)
+      e = e.getCause();
+    return new Result("", file + ": ERROR: " + e + "\n", 1);
+  }
+
+  // Compile the files and directories named, relative to base, print
+  // what they print and a summary on out and err, and return the number
+  // of errors. A file in sources is compiled from the bytes there instead
+  // of from the disk, and compiled even if not named. Each file is a
+  // compilation of its own; the -metrics report adds them all up.
+  public int run(Path base, List<String> names, Map<String, byte[]> sources,
+      Options options, PrintStream out, PrintStream err)
+  {
+    List<Path> files;
+    try {
+      files = expand(base, names);
+    } catch (IOException e) {
+      err.println("Error: " + e);
+      return 1;
+    }
+    for (String name : sources.keySet())
+      if (!files.contains(Paths.get(name)))
+        files.add(Paths.get(name));
+
+    Metrics total = new Metrics(options.metrics != null);
+    Cache cache = options.cacheDir == null ? null
+        : new Cache(base.resolve(options.cacheDir), options.cacheLimit);
+    Semaphore inFlight = new Semaphore(4 * jobs);
+    List<CompletableFuture<Result>> results =
+        new ArrayList<CompletableFuture<Result>>();
+    int errors = 0;
+    int printed = 0;
+    for (Path f : files) {
+      // print what is done, in order, before waiting for room
+      while (printed < results.size() && results.get(printed).isDone())
+        errors += print(results.get(printed++).join(), out, err);
+      inFlight.acquireUninterruptibly();
+      CompilerContext context = new CompilerContext(options, f.toString());
+      byte[] source = sources.get(f.toString());
+      CompletableFuture<byte[]> bytes = source != null
+          ? CompletableFuture.completedFuture(source)
+          : CompletableFuture.supplyAsync(
+              () -> read(base.resolve(f), context), io);
+      results.add(bytes.thenApplyAsync(b -> {
+        try {
+          return compile(base, f, b, context, cache);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }, cpu).exceptionally(e -> failed(f, e)).whenComplete((r, e) -> {
+        total.add(context.metrics);
+        inFlight.release();
+      }));
+    }
+    while (printed < results.size())
+      errors += print(results.get(printed++).join(), out, err);
+    int n = files.size();
+    out.println(n + (n == 1 ? " file, " : " files, ") + errors
+        + (errors == 1 ? " error" : " errors"));
+    out.flush();
+    try {
+      if (cache != null) {
+        cache.trim();
+        err.println(cache.stats());
+      }
+      total.report(options, base, err);
+    } catch (IOException e) {
+      err.println("Error: " + e);
+    }
+    return errors;
+  }
+
+  private static int print(Result r, PrintStream out, PrintStream err)
+  {
+    out.print(r.out);
+    err.print(r.err);
+    out.flush();
+    err.flush();
+    return r.errors;
+  }
+
+  // Compile the files and directories named on the command line, with
+  // its options, and return the number of errors.
+  public static int run(List<String> names, Options options)
+  {
+    Batch batch = new Batch(options.jobs);
+    try {
+      return batch.run(Paths.get(""), names, Map.of(), options, System.out,
+          System.err);
+    } finally {
+      batch.shutdown();
+    }
+  }
+}
@@ -0,0 +1,339 @@
+package control;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import ast.Ast;
+import ast.NodeKind;
+import lexer.TokFile;
+import lexer.Token;
+import lexer.TokenBuffer;
+import parser.ClassIndex;
+import parser.Diagnostic;
+import util.SymbolTable;
+
+// What compiling a file produced, kept on disk, so that compiling the
+// same bytes again with the same options does no work.
+//
+// An entry is keyed by the SHA-256 of the compiler's VERSION, the options
+// that change what a compile produces, and the bytes of the source, and
+// lives at <dir>/<first two hex digits>/<the rest>. It holds the file's
+// syntax errors, its tokens (as a .tok file) and its syntax tree, and is
+// only read as far as a compile needs: a file without errors whose tree
+// is not dumped needs no more than the header that says so.
+//
+// Any number of processes can share a directory. An entry is written to
+// a temporary file and renamed into place, so a reader sees all of it or
+// none; writers of the same key write the same bytes. An entry that cannot
+// be read is a miss. Hits touch the entry's modification time, and once a
+// run has stored something, the least recently used entries are deleted
+// until the directory is within its limit.
+//
+// With -cacheclasses, a file that changed is not parsed again as a whole
+// either: the cache keeps the ClassIndex of the last compile of each file,
+// by its path, under <dir>/classes, and only the classes that changed and
+// those that depend on them are parsed again. Keeping an index costs more
+// than the parse it saves on a file compiled once, so the first miss of a
+// file only leaves an empty index, and the file is indexed the next time
+// it misses, when it has changed. That is not the default: hashing the
+// tokens and copying the kept classes take about as long as the parser
+// takes to parse them again, so the index only pays when few classes
+// change in a file whose parse is slow.
+public final class Cache
+{
+  // Bump when the compiler produces something different from the same
+  // source, or the entry format changes.
+  public static final String VERSION = "tiger 1";
+
+  private static final int MAGIC = 0x54474301; // "TGC" 1
+
+  private final Path dir;
+  private final long limit; // bytes
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong stored = new AtomicLong();
+  private final AtomicLong evicted = new AtomicLong();
+  private final AtomicLong reused = new AtomicLong(); // classes
+  private final AtomicLong rebuilt = new AtomicLong();
+
+  public Cache(Path dir, long limit)
+  {
+    this.dir = dir;
+    this.limit = limit;
+  }
+
+  // a compile found in the cache
+  public static final class Entry
+  {
+    private final List<Diagnostic> diagnostics;
+    private final byte[] rest; // the tokens and the tree, or null
+    private final int tokensLength;
+
+    private Entry(InputStream from, boolean whole) throws IOException
+    {
+      DataInputStream in = new DataInputStream(from);
+      if (in.readInt() != MAGIC)
+        throw new IOException("not a cache entry");
+      int n = in.readInt();
+      diagnostics = new ArrayList<Diagnostic>(n);
+      for (int i = 0; i < n; i++) {
+        int token = in.readInt();
+        Token.Kind found = TokenBuffer.KINDS[in.readInt()];
+        int expected = in.readInt();
+        diagnostics.add(new Diagnostic(token, found, expected < 0 ? null
+            : TokenBuffer.KINDS[expected]));
+      }
+      if (!whole && n == 0) {
+        rest = null;
+        tokensLength = 0;
+        return;
+      }
+      tokensLength = in.readInt();
+      rest = in.readAllBytes();
+      if (tokensLength < 0 || tokensLength > rest.length)
+        throw new IOException("truncated cache entry");
+    }
+
+    // the syntax errors, in the order they were found
+    public List<Diagnostic> diagnostics()
+    {
+      return diagnostics;
+    }
+
+    // the tokens, with their names interned into symbols; only kept if
+    // there were errors or the tree was asked for
+    public TokenBuffer tokens(SymbolTable symbols) throws IOException
+    {
+      return TokFile.read(new ByteArrayInputStream(rest, 0, tokensLength),
+          symbols);
+    }
+
+    // the syntax tree, over the tokens; only kept if asked for
+    public Ast ast(TokenBuffer tokens, boolean offHeap) throws IOException
+    {
+      ByteBuffer in = ByteBuffer.wrap(rest, tokensLength, rest.length
+          - tokensLength);
+      NodeKind[] kinds = NodeKind.values();
+      try {
+        int size = in.getInt();
+        Ast tree = new Ast(tokens, size, offHeap);
+        tree.setRoot(in.getInt());
+        for (int n = 0; n < size; n++) {
+          tree.add(kinds[in.getInt()], in.getInt());
+          tree.setFirstChild(n, in.getInt());
+          tree.setNextSibling(n, in.getInt());
+        }
+        return tree;
+      } catch (BufferUnderflowException e) {
+        throw new IOException("truncated cache entry");
+      }
+    }
+  }
+
+  // the key of compiling source with options
+  public static String key(byte[] source, boolean tok, Options options)
+  {
+    MessageDigest md = sha256();
+    // what the source is, and the options that change the outcome
+    md.update((VERSION + "\n" + (tok ? "tok" : "java") + "\nmaxerrors "
+        + options.maxErrors + "\n").getBytes(StandardCharsets.UTF_8));
+    md.update(source);
+    return HexFormat.of().formatHex(md.digest());
+  }
+
+  private static MessageDigest sha256()
+  {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private Path path(String key)
+  {
+    return dir.resolve(key.substring(0, 2)).resolve(key.substring(2));
+  }
+
+  // where the class index of file is kept
+  private Path classesPath(Path file)
+  {
+    byte[] name = file.toAbsolutePath().normalize().toString()
+        .getBytes(StandardCharsets.UTF_8);
+    return dir.resolve("classes").resolve(HexFormat.of().formatHex(
+        sha256().digest(name)));
+  }
+
+  // write bytes to p, all at once for readers
+  private static void write(Path p, byte[] bytes) throws IOException
+  {
+    Files.createDirectories(p.getParent());
+    Path tmp = Files.createTempFile(p.getParent(), ".tmp", null);
+    try {
+      Files.write(tmp, bytes);
+      Files.move(tmp, p, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  // The entry for key, or null. Its tokens and tree are only read if it
+  // has errors, which are printed with their positions, or if whole.
+  public Entry get(String key, boolean whole)
+  {
+    Path p = path(key);
+    try {
+      Entry e;
+      try (InputStream in = new BufferedInputStream(Files.newInputStream(p))) {
+        e = new Entry(in, whole);
+      }
+      Files.setLastModifiedTime(p, FileTime.fromMillis(System
+          .currentTimeMillis()));
+      hits.incrementAndGet();
+      return e;
+    } catch (NoSuchFileException e) {
+      // not compiled before
+    } catch (IOException | RuntimeException e) {
+      // damaged, or deleted while read: compile again
+    }
+    misses.incrementAndGet();
+    return null;
+  }
+
+  // store what compiling the source of key produced
+  public void put(String key, TokenBuffer tokens, Ast ast,
+      List<Diagnostic> diagnostics) throws IOException
+  {
+    ByteArrayOutputStream tok = new ByteArrayOutputStream();
+    TokFile.write(tokens, tok);
+    // one buffer of the entry's size, not one grown as it is written
+    ByteBuffer out = ByteBuffer.allocate(12 + 12 * diagnostics.size()
+        + tok.size() + 8 + 16 * ast.size());
+    out.putInt(MAGIC);
+    out.putInt(diagnostics.size());
+    for (Diagnostic d : diagnostics) {
+      out.putInt(d.token);
+      out.putInt(d.found.ordinal());
+      out.putInt(d.expected == null ? -1 : d.expected.ordinal());
+    }
+    out.putInt(tok.size());
+    out.put(tok.toByteArray());
+    out.putInt(ast.size());
+    out.putInt(ast.root());
+    for (int n = 0; n < ast.size(); n++) {
+      out.putInt(ast.kind(n).ordinal());
+      out.putInt(ast.token(n));
+      out.putInt(ast.firstChild(n));
+      out.putInt(ast.nextSibling(n));
+    }
+
+    write(path(key), out.array());
+    stored.incrementAndGet();
+  }
+
+  // the class index of the last compile of file, or null
+  public ClassIndex classes(Path file)
+  {
+    try (InputStream in = new BufferedInputStream(Files.newInputStream(
+        classesPath(file)))) {
+      return ClassIndex.read(in);
+    } catch (IOException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  // keep the class index of a compile of file, and count what it reused
+  public void putClasses(Path file, ClassIndex index) throws IOException
+  {
+    reused.addAndGet(index.reused());
+    rebuilt.addAndGet(index.rebuilt());
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    index.write(buf);
+    write(classesPath(file), buf.toByteArray());
+  }
+
+  // Delete the least recently used entries until the cache is within its
+  // limit, if this run stored any.
+  public void trim() throws IOException
+  {
+    if (stored.get() == 0 || !Files.isDirectory(dir))
+      return;
+    final class Found
+    {
+      final Path path;
+      final long size;
+      final long used;
+
+      Found(Path path) throws IOException
+      {
+        this.path = path;
+        this.size = Files.size(path);
+        this.used = Files.getLastModifiedTime(path).toMillis();
+      }
+    }
+    List<Found> all = new ArrayList<Found>();
+    long total = 0;
+    try (Stream<Path> s = Files.walk(dir, 2)) {
+      for (Path p : (Iterable<Path>) s::iterator) {
+        if (!Files.isRegularFile(p))
+          continue;
+        try {
+          // left by a writer that died
+          if (p.getFileName().toString().startsWith(".tmp")) {
+            if (Files.getLastModifiedTime(p).toMillis() < System
+                .currentTimeMillis() - 3600 * 1000)
+              Files.deleteIfExists(p);
+            continue;
+          }
+          Found f = new Found(p);
+          all.add(f);
+          total += f.size;
+        } catch (IOException e) {
+          // evicted by another process
+        }
+      }
+    }
+    if (total <= limit)
+      return;
+    all.sort((a, b) -> Long.compare(a.used, b.used));
+    for (Found f : all) {
+      if (total <= limit)
+        break;
+      if (Files.deleteIfExists(f.path))
+        evicted.incrementAndGet();
+      total -= f.size;
+    }
+  }
+
+  // hits, misses and so on, for people
+  public String stats()
+  {
+    long h = hits.get();
+    long m = misses.get();
+    return String.format(Locale.ROOT, "cache: %d hits, %d misses (%.0f%% hit),"
+        + " %d stored, %d evicted; classes: %d reused, %d rebuilt", h, m,
+        h + m == 0 ? 0.0 : 100.0 * h / (h + m), stored.get(), evicted.get(),
+        reused.get(), rebuilt.get());
+  }
+}
@@ -0,0 +1,86 @@
+package control;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+// Sends a compile to a daemon (see Daemon), and prints what it answers.
+//
+//   java -cp bin control.Client <socket> [-stdin <name>] [options] <file>...
+//
+// The arguments are those of Tiger, relative to the directory the client
+// runs in. With -stdin, standard input is compiled too, as a file of the
+// given name. The client exits with the status Tiger would have.
+public final class Client
+{
+  private static void send(OutputStream out, String line) throws IOException
+  {
+    out.write(line.getBytes(StandardCharsets.UTF_8));
+    out.write('\n');
+  }
+
+  // send the request to the daemon at socket, print the answer, and
+  // return the exit status
+  public static int compile(String socket, String[] args, String stdin,
+      byte[] source) throws IOException
+  {
+    try (SocketChannel c = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+      c.connect(UnixDomainSocketAddress.of(socket));
+      OutputStream out = new BufferedOutputStream(Channels.newOutputStream(c));
+      send(out, "cwd " + Paths.get("").toAbsolutePath());
+      for (String a : args)
+        send(out, "arg " + a);
+      if (stdin != null) {
+        send(out, "source " + stdin + " " + source.length);
+        out.write(source);
+      }
+      send(out, "end");
+      out.flush();
+
+      BufferedReader in = new BufferedReader(new InputStreamReader(
+          Channels.newInputStream(c), StandardCharsets.UTF_8));
+      for (String l; (l = in.readLine()) != null;) {
+        if (l.startsWith("out "))
+          System.out.println(l.substring(4));
+        else if (l.startsWith("err "))
+          System.err.println(l.substring(4));
+        else if (l.startsWith("exit "))
+          return Integer.parseInt(l.substring(5));
+      }
+      System.err.println("Error: the daemon hung up");
+      return 2;
+    }
+  }
+
+  public static void main(String[] args)
+  {
+    if (args.length < 1) {
+      System.out.println("Usage: java control.Client <socket> "
+          + "[-stdin <name>] [options] <file>...");
+      System.exit(2);
+    }
+    int from = 1;
+    String stdin = null;
+    if (args.length > 2 && args[1].equals("-stdin")) {
+      stdin = args[2];
+      from = 3;
+    }
+    String[] rest = Arrays.copyOfRange(args, from, args.length);
+    try {
+      byte[] source = stdin == null ? null : System.in.readAllBytes();
+      System.exit(compile(args[0], rest, stdin, source));
+    } catch (IOException e) {
+      System.err.println("Error: " + e);
+      System.exit(2);
+    }
+  }
+}
@@ -1,9 +1,16 @@
 package control;
 
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.List;
 
 import util.Bug;
-import control.Control.ConSlp;
 
 public class CommandLine
 {
@@ -37,127 +44,361 @@ public class CommandLine
   }
 
   private LinkedList<Arg<Object>> args;
+  private List<String> files = new ArrayList<String>();
+  private List<String> given = new ArrayList<String>();
+  private Options.Builder options;
+  private boolean help = false;
 
-  @SuppressWarnings("unchecked")
   public CommandLine()
   {
+    this(new Options.Builder());
+  }
+
+  // a command line that changes the options already in the builder, as
+  // a daemon request changes those of the daemon
+  @SuppressWarnings("unchecked")
+  public CommandLine(Options.Builder options)
+  {
+    this.options = options;
     this.args = new util.Flist<Arg<Object>>().list(new Arg<Object>("help",
         null, "show this help information", Kind.Empty, (s) -> {
-          usage();
-          System.exit(1);
+          help = true;
           return;
         }), new Arg<Object>("lex", null, "dump the result of lexical analysis",
         Kind.Empty, (s) -> {
-          Control.ConLexer.dump = true;
+          options.dumpTokens = true;
           return;
         }), new Arg<Object>("slp", "{args|interp|compile}",
         "run the SLP interpreter", Kind.String, (ss) -> {
           String s = (String) ss;
 
           if (s.equals("args")) {
-            ConSlp.action = ConSlp.T.ARGS;
+            options.slp = Options.Slp.ARGS;
           } else if (s.equals("interp"))
-            ConSlp.action = ConSlp.T.INTERP;
+            options.slp = Options.Slp.INTERP;
           else if (s.equals("compile"))
-            ConSlp.action = ConSlp.T.COMPILE;
+            options.slp = Options.Slp.COMPILE;
           else if (s.equals("div"))
-            ConSlp.div = true;
+            options.slpDiv = true;
           else if (s.equals("keepasm"))
-            ConSlp.keepasm = true;
-          else {
-            System.out.println("bad argument: " + s);
-            output();
-            System.exit(1);
-          }
+            options.keepAsm = true;
+          else
+            throw new IllegalArgumentException("bad argument: " + s);
           return;
         }), new Arg<Object>("testlexer", null,
         "whether or not to test the lexer", Kind.Empty, (s) -> {
-          Control.ConLexer.test = true;
+          options.testLexer = true;
+          return;
+        }), new Arg<Object>("lexskip", "{scalar|swar}",
+        "skip blanks and comments a byte or a word at a time", Kind.String,
+        (ss) -> {
+          String s = (String) ss;
+
+          if (s.equals("scalar"))
+            options.skip = Options.Skip.SCALAR;
+          else if (s.equals("swar"))
+            options.skip = Options.Skip.SWAR;
+          else
+            throw new IllegalArgumentException("bad argument: " + s);
+          return;
+        }), new Arg<Object>("tok", "<file>",
+        "write the token stream to a .tok file", Kind.String, (s) -> {
+          options.tokFile = (String) s;
+          return;
+        }), new Arg<Object>("dumpast", null,
+        "dump the syntax tree", Kind.Empty, (s) -> {
+          options.dumpAst = true;
+          return;
+        }), new Arg<Object>("astoffheap", null,
+        "keep the syntax tree off the Java heap", Kind.Empty, (s) -> {
+          options.astOffHeap = true;
+          return;
+        }), new Arg<Object>("maxerrors", "<n>",
+        "stop parsing at n syntax errors (0: no limit)", Kind.Int, (n) -> {
+          options.maxErrors = (Integer) n;
+          return;
+        }), new Arg<Object>("parsethreads", "<n>",
+        "parse classes on n threads (0: one per core)", Kind.Int, (n) -> {
+          options.parseThreads = (Integer) n;
+          return;
+        }), new Arg<Object>("parser", "{descent|table}",
+        "parse by recursive descent, or from LL(1) tables", Kind.String,
+        (ss) -> {
+          String s = (String) ss;
+
+          if (s.equals("descent"))
+            options.backend = Options.Backend.DESCENT;
+          else if (s.equals("table"))
+            options.backend = Options.Backend.TABLE;
+          else
+            throw new IllegalArgumentException("bad argument: " + s);
+          return;
+        }), new Arg<Object>("check", null,
+        "type check a program that parses", Kind.Empty, (s) -> {
+          options.check = true;
+          return;
+        }), new Arg<Object>("jobs", "<n>",
+        "compile n files at a time (0: one per core)", Kind.Int, (n) -> {
+          options.jobs = (Integer) n;
+          return;
+        }), new Arg<Object>("metrics", "{table|json|openmetrics}",
+        "report the time, CPU and memory of each phase", Kind.String,
+        (ss) -> {
+          String s = (String) ss;
+
+          if (s.equals("table"))
+            options.metrics = Metrics.Format.TABLE;
+          else if (s.equals("json"))
+            options.metrics = Metrics.Format.JSON;
+          else if (s.equals("openmetrics"))
+            options.metrics = Metrics.Format.OPENMETRICS;
+          else
+            throw new IllegalArgumentException("bad argument: " + s);
+          return;
+        }), new Arg<Object>("metricsout", "<file>",
+        "write the -metrics report to a file, not stderr", Kind.String,
+        (s) -> {
+          options.metricsFile = (String) s;
+          return;
+        }), new Arg<Object>("jfr", "<file>",
+        "record the compile with Flight Recorder to a file", Kind.String,
+        (s) -> {
+          options.jfrFile = (String) s;
+          return;
+        }), new Arg<Object>("cache", "<dir>",
+        "reuse what compiling the same source produced before", Kind.String,
+        (s) -> {
+          options.cacheDir = (String) s;
+          return;
+        }), new Arg<Object>("cachelimit", "<n>",
+        "keep the -cache directory under n megabytes (default 256)",
+        Kind.Int, (n) -> {
+          options.cacheLimit = (long) (Integer) n << 20;
+          return;
+        }), new Arg<Object>("cacheclasses", null,
+        "on a -cache miss, reparse only the classes that changed",
+        Kind.Empty, (s) -> {
+          options.cacheClasses = true;
+          return;
+        }), new Arg<Object>("daemon", "<socket>",
+        "serve compiles on a Unix domain socket", Kind.String, (s) -> {
+          options.socket = (String) s;
+          return;
+        }), new Arg<Object>("warmup", "<n>",
+        "compile test/ n times before serving (default 5)", Kind.Int,
+        (n) -> {
+          options.warmup = (Integer) n;
+          return;
+        }), new Arg<Object>("lexthreads", "<n>",
+        "lex on n threads (0: one per core)", Kind.Int, (n) -> {
+          options.lexThreads = (Integer) n;
+          return;
+        }), new Arg<Object>("pipeline", null,
+        "lex on a thread of its own, ahead of the parser", Kind.Empty,
+        (s) -> {
+          options.pipeline = true;
           return;
         }));
   }
 
-  // scan the command line arguments, return the file name
-  // in it. The file name should be unique.
+  // the arguments, with each @file, relative to base, replaced by the
+  // arguments in it, separated by white space
+  private static List<String> expand(Path base, List<String> cargs)
+  {
+    List<String> all = new ArrayList<String>();
+    for (String a : cargs) {
+      if (!a.startsWith("@")) {
+        all.add(a);
+        continue;
+      }
+      try {
+        for (String s : Files.readString(base.resolve(a.substring(1)))
+            .split("\\s+"))
+          if (!s.isEmpty())
+            all.add(s);
+      } catch (IOException e) {
+        throw new IllegalArgumentException("Error: cannot read "
+            + a.substring(1));
+      }
+    }
+    return all;
+  }
+
+  // the options set on the command line
+  public Options options()
+  {
+    return options.build();
+  }
+
+  // the files and directories named on the command line, in order
+  public List<String> files()
+  {
+    return files;
+  }
+
+  // whether the files named, relative to base, are compiled as a batch:
+  // there is more than one, or a directory
+  public boolean batch(Path base)
+  {
+    return files.size() > 1
+        || (files.size() == 1 && Files.isDirectory(base.resolve(files
+            .get(0))));
+  }
+
+  // whether the option of that name (without its '-') was given
+  public boolean given(String name)
+  {
+    return given.contains(name);
+  }
+
+  // scan the command line arguments, return the first file name
+  // in it; files() has all of them.
   public String scan(String[] cargs)
   {
-    String filename = null;
+    if (!parse(Paths.get(""), Arrays.asList(cargs), System.out)) {
+      this.output();
+      System.exit(1);
+    }
+    if (help) {
+      usage();
+      System.exit(1);
+    }
+    return files.isEmpty() ? null : files.get(0);
+  }
 
-    for (int i = 0; i < cargs.length; i++) {
-      if (!cargs[i].startsWith("-")) {
-        if (filename == null) {
-          filename = cargs[i];
+  // Parse the arguments, with an @file relative to base, into the options
+  // and files(); false, having printed why on err, if they are not valid.
+  // Parsing stops at -help.
+  public boolean parse(Path base, List<String> cargs, PrintStream err)
+  {
+    try {
+      cargs = expand(base, cargs);
+      for (int i = 0; i < cargs.size() && !help; i++) {
+        if (!cargs.get(i).startsWith("-")) {
+          files.add(cargs.get(i));
           continue;
-        } else {
-          System.out.println("Error: can only compile one Java file a time");
-          System.exit(1);
         }
-      } else {
+        i = option(cargs, i);
       }
+    } catch (IllegalArgumentException e) {
+      err.println(e.getMessage());
+      return false;
+    }
+    String other = pipelined();
+    if (other != null) {
+      err.println("Error: -pipeline: cannot be used with " + other);
+      return false;
+    }
+    // a batch, and so the daemon, compiles each file the one way
+    String single = single();
+    if (single != null && (options.socket != null || batch(base))) {
+      err.println("Error: " + single + ": cannot be used with "
+          + (options.socket != null ? "-daemon"
+              : "more than one file or a directory"));
+      return false;
+    }
+    return true;
+  }
 
-      boolean found = false;
-      for (Arg<Object> arg : this.args) {
-        if (!arg.name.equals(cargs[i].substring(1)))
-          continue;
+  // With -pipeline, a source file is lexed on one thread and parsed by
+  // descent on another, a token at a time: the first option or input
+  // given that needs another way, or null. The cache reads a file whole,
+  // so there is nothing to lex ahead of.
+  private String pipelined()
+  {
+    if (!options.pipeline)
+      return null;
+    if (options.cacheDir != null)
+      return "-cache";
+    if (options.dumpTokens)
+      return "-lex";
+    if (options.tokFile != null)
+      return "-tok";
+    if (options.lexThreads != 1)
+      return "-lexthreads";
+    if (options.parseThreads != 1)
+      return "-parsethreads";
+    if (options.backend != Options.Backend.DESCENT)
+      return "-parser table";
+    for (String f : files)
+      if (f.endsWith(".tok"))
+        return "a .tok file";
+    return null;
+  }
 
-        found = true;
-        switch (arg.kind) {
-        case Empty:
-          arg.action.f(null);
-          break;
-        default:
-          if (i >= cargs.length - 1) {
-            System.out.println("Error: "+cargs[i] + ": requires an argument");
-            this.output();
-            System.exit(1);
-          }
-          i++;
-          break;
-        }
+  // the first option given that applies to a single file only, or null:
+  // what it dumps or writes, or how it lexes and parses it
+  private String single()
+  {
+    if (options.testLexer)
+      return "-testlexer";
+    if (options.dumpTokens)
+      return "-lex";
+    if (options.tokFile != null)
+      return "-tok";
+    if (options.lexThreads != 1)
+      return "-lexthreads";
+    if (options.parseThreads != 1)
+      return "-parsethreads";
+    if (options.pipeline)
+      return "-pipeline";
+    return null;
+  }
 
-        String theArg = cargs[i];
-        switch (arg.kind) {
-        case Bool:
-          if (theArg.equals("true"))
-            arg.action.f(new Boolean(true));
-          else if (theArg.equals("false"))
-            arg.action.f(new Boolean(false));
-          else {
-            System.out.println("Error: "+arg.name + ": requires a boolean");
-            this.output();
-            System.exit(1);
-          }
-          break;
-        case Int:
-          int num = 0;
-          try {
-            num = Integer.parseInt(theArg);
-          } catch (java.lang.NumberFormatException e) {
-            System.out.println("Error: "+arg.name + ": requires an integer");
-            this.output();
-            System.exit(1);
-          }
-          arg.action.f(num);
-          break;
-        case String:
-          arg.action.f(theArg);
-          break;
-        case StringList:
-          String[] strArray = theArg.split(",");
-          arg.action.f(strArray);
-          break;
-        default:
-          break;
-        }
+  // apply the option at i, and return the index of its last argument
+  private int option(List<String> cargs, int i)
+  {
+    for (Arg<Object> arg : this.args) {
+      if (!arg.name.equals(cargs.get(i).substring(1)))
+        continue;
+
+      given.add(arg.name);
+      switch (arg.kind) {
+      case Empty:
+        arg.action.f(null);
+        return i;
+      default:
+        if (i >= cargs.size() - 1)
+          throw new IllegalArgumentException("Error: " + cargs.get(i)
+              + ": requires an argument");
+        i++;
         break;
       }
-      if (!found) {
-        System.out.println("invalid option: " + cargs[i]);
-        this.output();
-        System.exit(1);
+
+      String theArg = cargs.get(i);
+      switch (arg.kind) {
+      case Bool:
+        if (theArg.equals("true"))
+          arg.action.f(new Boolean(true));
+        else if (theArg.equals("false"))
+          arg.action.f(new Boolean(false));
+        else
+          throw new IllegalArgumentException("Error: " + arg.name
+              + ": requires a boolean");
+        break;
+      case Int:
+        int num = 0;
+        try {
+          num = Integer.parseInt(theArg);
+        } catch (java.lang.NumberFormatException e) {
+          throw new IllegalArgumentException("Error: " + arg.name
+              + ": requires an integer");
+        }
+        arg.action.f(num);
+        break;
+      case String:
+        arg.action.f(theArg);
+        break;
+      case StringList:
+        String[] strArray = theArg.split(",");
+        arg.action.f(strArray);
+        break;
+      default:
+        break;
       }
+      return i;
     }
-    return filename;
+    throw new IllegalArgumentException("invalid option: " + cargs.get(i));
   }
 
   private void outputSpace(int n)
@@ -203,7 +444,9 @@ public class CommandLine
   {
     System.out
         .println("The Tiger compiler. Copyright (C) 2013-, SSE of USTC.\n"
-            + "Usage: java Tiger [options] <filename>\n");
+            + "Usage: java Tiger [options] <filename>\n"
+            + "       java Tiger [options] <file|directory|@argfile>...\n"
+            + "       java Tiger -daemon <socket> [options]\n");
     output();
     return;
   }
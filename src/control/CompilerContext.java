@@ -0,0 +1,70 @@
+package control;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import parser.Diagnostic;
+import util.Label;
+import util.SymbolTable;
+import util.Temp;
+
+// The state of one compilation: its options, the table its names are
+// interned in, the counters that number its labels and temporaries, the
+// errors found in it, and the time and memory its phases took.
+//
+// Nothing here is shared with other compilations, so any number of them
+// can run in one JVM at once, and none waits for another. A compilation
+// may use several threads (see ParallelLexer and ParallelParser), but the
+// counters and the diagnostics are only touched by one at a time.
+public final class CompilerContext
+{
+  public final Options options;
+  public final SymbolTable symbols;
+  public final Metrics metrics;
+  private final List<Diagnostic> diagnostics = new ArrayList<Diagnostic>();
+  private int labels = 0;
+  private int temps = 0;
+
+  public CompilerContext(Options options)
+  {
+    this(options, new SymbolTable(), "");
+  }
+
+  // the compilation of a file
+  public CompilerContext(Options options, String file)
+  {
+    this(options, new SymbolTable(), file);
+  }
+
+  // a compilation that interns its names in symbols, as tokens already
+  // lexed into it do
+  public CompilerContext(Options options, SymbolTable symbols)
+  {
+    this(options, symbols, "");
+  }
+
+  private CompilerContext(Options options, SymbolTable symbols, String file)
+  {
+    this.options = options;
+    this.symbols = symbols;
+    this.metrics = new Metrics(options.metrics != null, file);
+  }
+
+  // a label that no other in this compilation has
+  public Label newLabel()
+  {
+    return new Label(labels++);
+  }
+
+  // a temporary that no other in this compilation has
+  public Temp newTemp()
+  {
+    return new Temp(temps++);
+  }
+
+  // the errors found so far, in the order they were found
+  public List<Diagnostic> diagnostics()
+  {
+    return diagnostics;
+  }
+}
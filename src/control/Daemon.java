@@ -0,0 +1,263 @@
+package control;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+// A compiler that stays up, so that a build pays for starting and warming
+// up a JVM once, not once per compile.
+//
+//   java -cp bin Tiger -daemon <socket> [-jobs n] [-warmup n]
+//
+// The daemon listens on a Unix domain socket, and compiles what a client
+// (see Client) sends it, as a batch run does. Every connection is handled
+// on a thread of its own (a virtual thread, on a JDK that has them), and
+// the files of all of them are compiled on one shared pool of -jobs
+// threads. Before it listens, it compiles the programs under test/ -warmup
+// times, so that even the first request runs on compiled code.
+//
+// The protocol is lines of text. A request is
+//
+//   cwd <directory>             what the file names are relative to
+//   arg <argument>              one per argument, as on the command line
+//   source <name> <length>      a file to compile from the bytes that
+//   <length bytes>              follow, not from the disk
+//   end
+//
+// and the daemon answers with a line for each line the compile prints,
+// "out <line>" or "err <line>", sent as each file is done, then
+// "exit <status>". The options of a request are those of the daemon,
+// changed by its arguments as a command line changes the defaults (see
+// CommandLine), with @files, -metricsout and -cache relative to cwd. A
+// request can give the options a batch run has a use for, not those of
+// the daemon itself (-daemon, -jobs, -warmup, -jfr), nor -help, -slp, or
+// the options of a single file, such as -lex and -pipeline.
+public final class Daemon
+{
+  // the options of the command line a request cannot give, besides those
+  // of a single file (see CommandLine): those of the daemon itself, and
+  // those that do not compile
+  private static final List<String> UNSUPPORTED = List.of("help", "daemon",
+      "jobs", "warmup", "jfr", "slp");
+
+  private final Options options;
+  private final Batch batch;
+
+  public Daemon(Options options)
+  {
+    this.options = options;
+    this.batch = new Batch(options.jobs);
+  }
+
+  // a line of the request, without its '\n'; null at the end of input
+  private static String line(InputStream in) throws IOException
+  {
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    int c;
+    while ((c = in.read()) != '\n') {
+      if (c < 0)
+        return buf.size() == 0 ? null : buf.toString(StandardCharsets.UTF_8);
+      buf.write(c);
+    }
+    return buf.toString(StandardCharsets.UTF_8);
+  }
+
+  // Lines written to it go to the client, each prefixed with a tag, as
+  // whole lines: the out and err of one request share the socket.
+  private static final class Tagged extends OutputStream
+  {
+    private final String tag;
+    private final OutputStream to;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+    Tagged(String tag, OutputStream to)
+    {
+      this.tag = tag;
+      this.to = to;
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+      if (b != '\n') {
+        line.write(b);
+        return;
+      }
+      synchronized (to) {
+        to.write(tag.getBytes(StandardCharsets.UTF_8));
+        line.writeTo(to);
+        to.write('\n');
+      }
+      line.reset();
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+      synchronized (to) {
+        to.flush();
+      }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+      if (line.size() > 0)
+        write('\n');
+      flush();
+    }
+  }
+
+  // Run one request from in, answering on out.
+  void serve(InputStream in, OutputStream out) throws IOException
+  {
+    Path cwd = Paths.get("");
+    List<String> args = new ArrayList<String>();
+    Map<String, byte[]> sources = new HashMap<String, byte[]>();
+    for (String l; (l = line(in)) != null && !l.equals("end");) {
+      if (l.startsWith("cwd "))
+        cwd = Paths.get(l.substring(4));
+      else if (l.startsWith("arg "))
+        args.add(l.substring(4));
+      else if (l.startsWith("source ")) {
+        int sp = l.lastIndexOf(' ');
+        String name = Paths.get(l.substring(7, sp)).toString();
+        int length = Integer.parseInt(l.substring(sp + 1));
+        sources.put(name, in.readNBytes(length));
+      } else
+        throw new IOException("bad request: " + l);
+    }
+
+    PrintStream o = new PrintStream(new Tagged("out ", out), false,
+        StandardCharsets.UTF_8);
+    PrintStream e = new PrintStream(new Tagged("err ", out), false,
+        StandardCharsets.UTF_8);
+    int status = compile(cwd, args, sources, o, e);
+    o.close();
+    e.close();
+    synchronized (out) {
+      out.write(("exit " + status + "\n").getBytes(StandardCharsets.UTF_8));
+      out.flush();
+    }
+  }
+
+  // the exit status of Tiger, for the arguments of a request
+  int compile(Path cwd, List<String> args, Map<String, byte[]> sources,
+      PrintStream out, PrintStream err)
+  {
+    CommandLine cmd = new CommandLine(new Options.Builder(options));
+    if (!cmd.parse(cwd, args, err))
+      return 2;
+    for (String name : UNSUPPORTED)
+      if (cmd.given(name)) {
+        err.println("Error: -" + name + ": not supported by the daemon");
+        return 2;
+      }
+    if (cmd.files().isEmpty() && sources.isEmpty()) {
+      err.println("Error: no files to compile");
+      return 2;
+    }
+    int errors = batch.run(cwd, cmd.files(), sources, cmd.options(), out,
+        err);
+    return errors == 0 ? 0 : 1;
+  }
+
+  // the bundled test programs: test/ here, or next to the classes
+  private static Path tests()
+  {
+    Path here = Paths.get("test");
+    if (Files.isDirectory(here))
+      return here;
+    try {
+      Path classes = Paths.get(Daemon.class.getProtectionDomain()
+          .getCodeSource().getLocation().toURI());
+      return classes.resolveSibling("test");
+    } catch (Exception e) {
+      return here;
+    }
+  }
+
+  // compile the test programs rounds times, printing nothing
+  void warmUp(int rounds)
+  {
+    Path tests = tests();
+    if (rounds == 0 || !Files.isDirectory(tests))
+      return;
+    Options.Builder b = new Options.Builder(options);
+    b.dumpAst = true;
+    b.maxErrors = 0;
+    Options warm = b.build();
+    PrintStream none = new PrintStream(OutputStream.nullOutputStream());
+    for (int i = 0; i < rounds; i++)
+      batch.run(tests, List.of("."), Map.of(), warm, none, none);
+  }
+
+  // Serve requests on the socket until the JVM is stopped.
+  public void listen(Path socket) throws IOException
+  {
+    // bound under another name and moved into place, so that a client
+    // never finds the socket before it listens
+    Path bound = socket.resolveSibling(socket.getFileName() + ".bind");
+    Files.deleteIfExists(bound);
+    ServerSocketChannel server = ServerSocketChannel
+        .open(StandardProtocolFamily.UNIX);
+    server.bind(UnixDomainSocketAddress.of(bound));
+    Files.move(bound, socket, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      try {
+        Files.deleteIfExists(socket);
+      } catch (IOException e) {
+      }
+    }));
+    System.out.println("listening on " + socket);
+
+    ExecutorService connections = Batch.threads("daemon", 0);
+    while (true) {
+      SocketChannel client = server.accept();
+      connections.execute(() -> {
+        try (SocketChannel c = client) {
+          serve(new BufferedInputStream(Channels.newInputStream(c)),
+              new BufferedOutputStream(Channels.newOutputStream(c)));
+        } catch (IOException e) {
+          System.err.println("daemon: " + e);
+        }
+      });
+    }
+  }
+
+  // Tiger -daemon <socket>
+  public static void run(Options options)
+  {
+    Daemon daemon = new Daemon(options);
+    long start = System.nanoTime();
+    daemon.warmUp(options.warmup);
+    System.out.printf("warmed up in %d ms%n",
+        (System.nanoTime() - start) / 1000000);
+    try {
+      daemon.listen(Paths.get(options.socket));
+    } catch (IOException e) {
+      System.out.println("Error: " + e);
+      System.exit(1);
+    }
+  }
+}
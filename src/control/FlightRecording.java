@@ -0,0 +1,33 @@
+package control;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.text.ParseException;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+// A Flight Recorder recording of this JVM, for -jfr: the JDK's "profile"
+// settings, which sample the hot methods, and the compiler's own events
+// (phases, class and method parses, lexer volumes), written to a file
+// when the JVM exits, however it exits. Open it in JDK Mission Control.
+//
+// The events cost next to nothing when no recording is on: a disabled
+// event is never committed, and its object does not escape.
+public final class FlightRecording
+{
+  public static void start(String file)
+  {
+    try {
+      Recording r = new Recording(Configuration.getConfiguration("profile"));
+      r.setName("tiger");
+      r.setDestination(Paths.get(file));
+      // Flight Recorder's own shutdown hook writes it
+      r.setDumpOnExit(true);
+      r.start();
+    } catch (IOException | ParseException e) {
+      System.out.println("Error: cannot record to " + file + ": " + e);
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,286 @@
+package control;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.ToLongFunction;
+
+// Where compile time goes: for each phase (read, lex, parse, ...), the
+// wall time, the CPU time and the bytes allocated, and how much it
+// processed (bytes, tokens, nodes).
+//
+// A phase is timed on the thread that runs it, from start() to stop().
+// The CPU time and the allocation are that thread's, so the work a phase
+// hands to a pool (-lexthreads, -parsethreads) shows in its wall time only.
+// The metrics of several compilations, as of a batch run, add up with
+// add(). Reports are a table for people, JSON, or OpenMetrics text for a
+// scraper. While Flight Recorder records, every phase is also a
+// PhaseEvent, whether metrics are on or not.
+public final class Metrics
+{
+  // the formats a report can be written in
+  public enum Format{TABLE, JSON, OPENMETRICS};
+
+  private static final ThreadMXBean THREADS = ManagementFactory
+      .getThreadMXBean();
+  private static final com.sun.management.ThreadMXBean ALLOC =
+      THREADS instanceof com.sun.management.ThreadMXBean
+          ? (com.sun.management.ThreadMXBean) THREADS : null;
+
+  // the totals of one phase
+  public static final class Phase
+  {
+    public final String name;
+    public final String unit; // what items counts
+    public long wall; // ns
+    public long cpu; // ns
+    public long allocated; // bytes
+    public long items;
+    public int runs;
+
+    Phase(String name, String unit)
+    {
+      this.name = name;
+      this.unit = unit;
+    }
+  }
+
+  // a phase being timed
+  public final class Timer
+  {
+    private final String name; // null if not timed
+    private final PhaseEvent event;
+    private long wall;
+    private long cpu;
+    private long allocated;
+
+    private Timer(String name, PhaseEvent event)
+    {
+      this.name = name;
+      this.event = event;
+      if (name == null)
+        return;
+      event.begin();
+      if (!enabled)
+        return;
+      this.allocated = allocated();
+      this.cpu = cpu();
+      this.wall = System.nanoTime();
+    }
+
+    // the phase is done, having processed items of unit
+    public void stop(long items, String unit)
+    {
+      if (name == null)
+        return;
+      if (event.shouldCommit()) {
+        event.file = file;
+        event.phase = name;
+        event.items = items;
+        event.unit = unit;
+        event.commit();
+      }
+      if (!enabled)
+        return;
+      long wall = System.nanoTime();
+      long cpu = cpu();
+      long allocated = allocated();
+      synchronized (Metrics.this) {
+        Phase p = phase(name, unit);
+        p.wall += wall - this.wall;
+        p.cpu += cpu - this.cpu;
+        p.allocated += allocated - this.allocated;
+        p.items += items;
+        p.runs++;
+      }
+    }
+  }
+
+  private final boolean enabled;
+  private final String file; // compiled, for events
+  private final Timer off = new Timer(null, null);
+  private final List<Phase> phases = new ArrayList<Phase>();
+
+  public Metrics(boolean enabled)
+  {
+    this(enabled, "");
+  }
+
+  public Metrics(boolean enabled, String file)
+  {
+    this.enabled = enabled;
+    this.file = file;
+  }
+
+  public boolean enabled()
+  {
+    return enabled;
+  }
+
+  private static long cpu()
+  {
+    return THREADS.isCurrentThreadCpuTimeSupported()
+        ? THREADS.getCurrentThreadCpuTime() : 0;
+  }
+
+  private static long allocated()
+  {
+    return ALLOC == null ? 0
+        : ALLOC.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  // start timing a phase, if metrics or events are wanted
+  public Timer start(String name)
+  {
+    PhaseEvent event = new PhaseEvent();
+    return enabled || event.isEnabled() ? new Timer(name, event) : off;
+  }
+
+  // the phase of that name, in the order phases first ran
+  private Phase phase(String name, String unit)
+  {
+    for (Phase p : phases)
+      if (p.name.equals(name))
+        return p;
+    Phase p = new Phase(name, unit);
+    phases.add(p);
+    return p;
+  }
+
+  public synchronized List<Phase> phases()
+  {
+    return new ArrayList<Phase>(phases);
+  }
+
+  // add the phases of one compilation to these
+  public synchronized void add(Metrics other)
+  {
+    synchronized (other) {
+      for (Phase o : other.phases) {
+        Phase p = phase(o.name, o.unit);
+        p.wall += o.wall;
+        p.cpu += o.cpu;
+        p.allocated += o.allocated;
+        p.items += o.items;
+        p.runs += o.runs;
+      }
+    }
+  }
+
+  // Write the report the options ask for, if any: to their file,
+  // relative to base, or else to err.
+  public void report(Options options, Path base, PrintStream err)
+      throws IOException
+  {
+    if (options.metrics == null)
+      return;
+    if (options.metricsFile == null) {
+      write(new OutputStreamWriter(err, StandardCharsets.UTF_8),
+          options.metrics);
+      return;
+    }
+    try (Writer w = Files.newBufferedWriter(base
+        .resolve(options.metricsFile))) {
+      write(w, options.metrics);
+    }
+  }
+
+  public synchronized void write(Writer w, Format format) throws IOException
+  {
+    switch (format) {
+    case TABLE:
+      writeTable(w);
+      break;
+    case JSON:
+      writeJson(w);
+      break;
+    default:
+      writeOpenMetrics(w);
+    }
+    w.flush();
+  }
+
+  private static String rate(long items, long ns)
+  {
+    return ns == 0 ? "-"
+        : String.format(Locale.ROOT, "%.0f", items / (ns / 1e9));
+  }
+
+  private void writeTable(Writer w) throws IOException
+  {
+    w.write(String.format(Locale.ROOT, "%-8s %10s %10s %10s %12s %-7s %12s%n",
+        "phase", "wall ms", "cpu ms", "alloc MB", "items", "", "items/s"));
+    long wall = 0, cpu = 0, allocated = 0;
+    for (Phase p : phases) {
+      w.write(String.format(Locale.ROOT,
+          "%-8s %10.2f %10.2f %10.2f %12d %-7s %12s%n", p.name, p.wall / 1e6,
+          p.cpu / 1e6, p.allocated / (double) (1 << 20), p.items, p.unit,
+          rate(p.items, p.wall)));
+      wall += p.wall;
+      cpu += p.cpu;
+      allocated += p.allocated;
+    }
+    w.write(String.format(Locale.ROOT, "%-8s %10.2f %10.2f %10.2f%n", "total",
+        wall / 1e6, cpu / 1e6, allocated / (double) (1 << 20)));
+  }
+
+  private void writeJson(Writer w) throws IOException
+  {
+    w.write("{\n");
+    w.write("  \"phases\" : [\n");
+    for (int i = 0; i < phases.size(); i++) {
+      Phase p = phases.get(i);
+      w.write("    { \"phase\" : \"" + p.name + "\", \"runs\" : " + p.runs
+          + ", \"wallNanos\" : " + p.wall + ", \"cpuNanos\" : " + p.cpu
+          + ", \"allocatedBytes\" : " + p.allocated + ", \"items\" : "
+          + p.items + ", \"unit\" : \"" + p.unit + "\" }"
+          + (i < phases.size() - 1 ? ",\n" : "\n"));
+    }
+    w.write("  ]\n");
+    w.write("}\n");
+  }
+
+  // one counter family, with a sample for each phase
+  private void family(Writer w, String name, String unit, String help,
+      boolean seconds, ToLongFunction<Phase> value) throws IOException
+  {
+    w.write("# TYPE " + name + " counter\n");
+    if (unit != null)
+      w.write("# UNIT " + name + " " + unit + "\n");
+    w.write("# HELP " + name + " " + help + "\n");
+    for (Phase p : phases) {
+      long v = value.applyAsLong(p);
+      w.write(name + "_total{phase=\"" + p.name + "\"} "
+          + (seconds ? String.format(Locale.ROOT, "%.9f", v / 1e9)
+              : Long.toString(v)) + "\n");
+    }
+  }
+
+  private void writeOpenMetrics(Writer w) throws IOException
+  {
+    family(w, "tiger_phase_wall_seconds", "seconds",
+        "Wall time spent in the phase.", true, p -> p.wall);
+    family(w, "tiger_phase_cpu_seconds", "seconds",
+        "CPU time of the thread that ran the phase.", true, p -> p.cpu);
+    family(w, "tiger_phase_allocated_bytes", "bytes",
+        "Bytes allocated by the thread that ran the phase.", false,
+        p -> p.allocated);
+    family(w, "tiger_phase_runs", null, "Times the phase ran.", false,
+        p -> p.runs);
+    w.write("# TYPE tiger_phase_items counter\n");
+    w.write("# HELP tiger_phase_items What the phase processed.\n");
+    for (Phase p : phases)
+      w.write("tiger_phase_items_total{phase=\"" + p.name + "\",unit=\""
+          + p.unit + "\"} " + p.items + "\n");
+    w.write("# EOF\n");
+  }
+}
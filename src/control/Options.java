@@ -0,0 +1,158 @@
+package control;
+
+// The options of a compilation, as the command line sets them.
+//
+// An Options never changes once built, so compilations that run at once,
+// in a batch or in the daemon, can each have their own, or share one. A
+// Builder collects them; build() takes a snapshot.
+public final class Options
+{
+  // how the lexer skips blanks and comment bodies
+  public enum Skip{SCALAR, SWAR};
+
+  // how the parser is driven: by recursive descent, or by LL(1) tables
+  public enum Backend{DESCENT, TABLE};
+
+  // what the straight-line program interpreter does
+  public enum Slp{NONE, ARGS, INTERP, COMPILE, TEST, DIV};
+
+  public static final Options DEFAULT = new Builder().build();
+
+  // the lexer
+  public final boolean testLexer;
+  public final boolean dumpTokens;
+  public final int lexThreads; // 0 for one per core
+  public final String tokFile; // where to write the tokens, or null
+  public final Skip skip;
+  public final boolean pipeline; // lex on a thread of its own
+
+  // the parser
+  public final int maxErrors; // syntax errors to stop at; 0 for all
+  public final int parseThreads; // 0 for one per core
+  public final Backend backend;
+
+  // semantic analysis
+  public final boolean check; // type check what parses
+
+  // compiling many files in one run
+  public final int jobs; // files compiled at a time; 0 for one per core
+
+  // the compiler daemon
+  public final String socket; // where to listen, if a daemon
+  public final int warmup; // compiles of test/ before listening
+
+  // where compile time goes
+  public final Metrics.Format metrics; // the report to write, or null
+  public final String metricsFile; // where to write it; null for stderr
+
+  // the compile cache
+  public final String cacheDir; // or null for none
+  public final long cacheLimit; // bytes
+  public final boolean cacheClasses; // reparse only the classes changed
+
+  // a Flight Recorder file to record the compile to, or null
+  public final String jfrFile;
+
+  // the syntax tree
+  public final boolean dumpAst;
+  public final boolean astOffHeap; // nodes in direct memory
+
+  // the straight-line program interpreter
+  public final Slp slp;
+  public final boolean slpDiv;
+  public final boolean keepAsm;
+
+  public static final class Builder
+  {
+    public boolean testLexer = false;
+    public boolean dumpTokens = false;
+    public int lexThreads = 1;
+    public String tokFile = null;
+    public Skip skip = Skip.SWAR;
+    public boolean pipeline = false;
+    public int maxErrors = 100;
+    public int parseThreads = 1;
+    public Backend backend = Backend.DESCENT;
+    public boolean check = false;
+    public int jobs = 0;
+    public String socket = null;
+    public int warmup = 5;
+    public Metrics.Format metrics = null;
+    public String metricsFile = null;
+    public String jfrFile = null;
+    public String cacheDir = null;
+    public long cacheLimit = 256L << 20;
+    public boolean cacheClasses = false;
+    public boolean dumpAst = false;
+    public boolean astOffHeap = false;
+    public Slp slp = Slp.NONE;
+    public boolean slpDiv = false;
+    public boolean keepAsm = false;
+
+    public Builder()
+    {
+    }
+
+    // the options of from, to change some of
+    public Builder(Options from)
+    {
+      this.testLexer = from.testLexer;
+      this.dumpTokens = from.dumpTokens;
+      this.lexThreads = from.lexThreads;
+      this.tokFile = from.tokFile;
+      this.skip = from.skip;
+      this.pipeline = from.pipeline;
+      this.maxErrors = from.maxErrors;
+      this.parseThreads = from.parseThreads;
+      this.backend = from.backend;
+      this.check = from.check;
+      this.jobs = from.jobs;
+      this.socket = from.socket;
+      this.warmup = from.warmup;
+      this.metrics = from.metrics;
+      this.metricsFile = from.metricsFile;
+      this.jfrFile = from.jfrFile;
+      this.cacheDir = from.cacheDir;
+      this.cacheLimit = from.cacheLimit;
+      this.cacheClasses = from.cacheClasses;
+      this.dumpAst = from.dumpAst;
+      this.astOffHeap = from.astOffHeap;
+      this.slp = from.slp;
+      this.slpDiv = from.slpDiv;
+      this.keepAsm = from.keepAsm;
+    }
+
+    public Options build()
+    {
+      return new Options(this);
+    }
+  }
+
+  private Options(Builder b)
+  {
+    this.testLexer = b.testLexer;
+    this.dumpTokens = b.dumpTokens;
+    this.lexThreads = b.lexThreads;
+    this.tokFile = b.tokFile;
+    this.skip = b.skip;
+    this.pipeline = b.pipeline;
+    this.maxErrors = b.maxErrors;
+    this.parseThreads = b.parseThreads;
+    this.backend = b.backend;
+    this.check = b.check;
+    this.jobs = b.jobs;
+    this.socket = b.socket;
+    this.warmup = b.warmup;
+    this.metrics = b.metrics;
+    this.metricsFile = b.metricsFile;
+    this.jfrFile = b.jfrFile;
+    this.cacheDir = b.cacheDir;
+    this.cacheLimit = b.cacheLimit;
+    this.cacheClasses = b.cacheClasses;
+    this.dumpAst = b.dumpAst;
+    this.astOffHeap = b.astOffHeap;
+    this.slp = b.slp;
+    this.slpDiv = b.slpDiv;
+    this.keepAsm = b.keepAsm;
+  }
+}
@@ -0,0 +1,29 @@
+package control;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// A phase of the compilation of one file, for Java Flight Recorder (see
+// Metrics.start).
+@Name("tiger.Phase")
+@Label("Compiler Phase")
+@Category({ "Tiger", "Compiler" })
+@Description("A phase of compiling one file: read, lex, parse, ...")
+final class PhaseEvent extends Event
+{
+  @Label("File")
+  String file;
+
+  @Label("Phase")
+  String phase;
+
+  @Label("Items")
+  @Description("What the phase processed, counted in units")
+  long items;
+
+  @Label("Unit")
+  String unit;
+}
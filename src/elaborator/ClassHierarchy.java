@@ -0,0 +1,281 @@
+package elaborator;
+
+import java.util.Arrays;
+import java.util.List;
+
+import ast.Ast;
+import ast.NodeKind;
+import elaborator.ClassTable.ClassEntry;
+import lexer.TokenBuffer;
+import util.IntMap;
+import util.Symbol;
+
+/**
+ * The layout of every class of a program, with its members, computed once
+ * from its ClassTable, for the phases after it to read instead of walking
+ * up superclasses again.
+ *
+ * The fields of a class follow those of its superclass, which are a
+ * prefix of them, so a field has the same offset in a class and all its
+ * subclasses; a field that hides one of a superclass has an offset of its
+ * own. The vtable of a class starts as a copy of its superclass's: a
+ * method that overrides one takes its slot, which is an error if their
+ * types differ, and any other method the next slot, in the order they are
+ * declared. Each class also maps the names of all its fields and methods,
+ * inherited or not, by symbol id, so finding one is a single probe.
+ *
+ * The classes are numbered in pre-order of the trees that extends makes,
+ * so the classes that extend a class, directly or not, are numbered
+ * consecutively after it, and whether one class is a subclass of another
+ * is two integer comparisons (see Layout.isSubclassOf).
+ *
+ * All of it is built by the constructor and never changes after, so any
+ * number of phases and threads can share it.
+ */
+public final class ClassHierarchy {
+    public static final class Field {
+        public final Symbol name;
+        public final Type type; // or null if not known
+        public final int offset; // from 0, in fields
+        public final Layout owner; // the class that declares it
+
+        Field(Symbol name, Type type, int offset, Layout owner) {
+            this.name = name;
+            this.type = type;
+            this.offset = offset;
+            this.owner = owner;
+        }
+    }
+
+    public static final class Method {
+        public final Symbol name;
+        public final Type type; // a method type
+        public final int slot; // in the vtable
+        public final int decl; // its node
+        public final Layout owner; // the class that declares it
+
+        Method(Symbol name, Type type, int slot, int decl, Layout owner) {
+            this.name = name;
+            this.type = type;
+            this.slot = slot;
+            this.decl = decl;
+            this.owner = owner;
+        }
+    }
+
+    // a class, or the main class, which has no members
+    public static final class Layout {
+        public final Symbol name;
+        public final Type type;
+        public final int decl; // its node
+        public final Layout superclass; // or null
+        // the numbers of this class and of the last class under it
+        public final int pre;
+        public final int last;
+        private final Field[] fields; // by offset
+        private final IntMap<Field> fieldsByName;
+        private final Method[] vtable; // by slot
+        private final IntMap<Method> methodsByName;
+
+        private Layout(ClassHierarchy h, ClassEntry c, Layout superclass,
+                int pre, int last) {
+            this.name = c.name;
+            this.type = c.type;
+            this.decl = c.decl;
+            this.superclass = superclass;
+            this.pre = pre;
+            this.last = last;
+            Ast ast = h.ast;
+            TokenBuffer tokens = ast.tokens();
+            int ownFields = 0;
+            int ownMethods = 0;
+            for (int m = ast.firstChild(decl); m != Ast.NIL; m = ast
+                    .nextSibling(m))
+                if (ast.kind(m) == NodeKind.VAR_DECL)
+                    ownFields++;
+                else if (ast.kind(m) == NodeKind.METHOD_DECL)
+                    ownMethods++;
+            Field[] fields = superclass == null ? new Field[0]
+                    : superclass.fields;
+            Method[] vtable = superclass == null ? new Method[0]
+                    : superclass.vtable;
+            int fieldCount = fields.length;
+            int slots = vtable.length;
+            fields = Arrays.copyOf(fields, fieldCount + ownFields);
+            vtable = Arrays.copyOf(vtable, slots + ownMethods);
+            fieldsByName = superclass == null ? new IntMap<>(ownFields)
+                    : new IntMap<>(superclass.fieldsByName);
+            methodsByName = superclass == null ? new IntMap<>(ownMethods)
+                    : new IntMap<>(superclass.methodsByName);
+
+            for (int m = ast.firstChild(decl); m != Ast.NIL; m = ast
+                    .nextSibling(m)) {
+                int id = tokens.symbolId(ast.token(m));
+                if (ast.kind(m) == NodeKind.VAR_DECL) {
+                    Type type = h.table.type(ast.firstChild(m), true);
+                    Field hidden = fieldsByName.get(id);
+                    if (hidden != null && hidden.owner == this) {
+                        h.error(m, "duplicate field " + ast.symbol(m));
+                        continue;
+                    }
+                    Field f = new Field(ast.symbol(m), type, fieldCount, this);
+                    fields[fieldCount++] = f;
+                    fieldsByName.put(id, f);
+                } else if (ast.kind(m) == NodeKind.METHOD_DECL) {
+                    Type type = h.table.signature(m);
+                    Method overridden = methodsByName.get(id);
+                    if (overridden != null && overridden.owner == this) {
+                        h.error(m, "duplicate method " + ast.symbol(m));
+                        continue;
+                    }
+                    int slot = overridden == null ? slots++
+                            : overridden.slot;
+                    if (overridden != null && type != overridden.type
+                            && !type.unknown() && !overridden.type.unknown())
+                        h.error(m, "method " + ast.symbol(m) + " of type "
+                                + type + " overrides one of type "
+                                + overridden.type + " in "
+                                + overridden.owner.name);
+                    Method method = new Method(ast.symbol(m), type, slot, m,
+                            this);
+                    vtable[slot] = method;
+                    methodsByName.put(id, method);
+                }
+            }
+            this.fields = Arrays.copyOf(fields, fieldCount);
+            this.vtable = Arrays.copyOf(vtable, slots);
+        }
+
+        // whether this class is c, or extends it, directly or not
+        public boolean isSubclassOf(Layout c) {
+            return c.pre <= pre && pre <= c.last;
+        }
+
+        // the fields of an object of this class, its own and inherited
+        public int fieldCount() {
+            return fields.length;
+        }
+
+        public Field fieldAt(int offset) {
+            return fields[offset];
+        }
+
+        // the field named by the symbol id, or null
+        public Field field(int name) {
+            return fieldsByName.get(name);
+        }
+
+        public int vtableSize() {
+            return vtable.length;
+        }
+
+        public Method slot(int slot) {
+            return vtable[slot];
+        }
+
+        // the method named by the symbol id, or null
+        public Method method(int name) {
+            return methodsByName.get(name);
+        }
+    }
+
+    private final ClassTable table;
+    private final Ast ast;
+    private final List<TypeError> errors;
+    private final Layout[] layouts; // in pre-order
+    private final IntMap<Layout> byName = new IntMap<>();
+
+    // the layouts of the classes of table, which is built, with their
+    // members; the errors in those are added to errors
+    public ClassHierarchy(ClassTable table, Ast ast, List<TypeError> errors) {
+        this.table = table;
+        this.ast = ast;
+        this.errors = errors;
+        List<ClassEntry> declared = table.declared();
+        int n = declared.size();
+
+        // the classes that extend each one, in reverse order of declaration
+        int[] firstChild = new int[n];
+        int[] nextSibling = new int[n];
+        Arrays.fill(firstChild, -1);
+        for (ClassEntry c : declared) {
+            if (c.superclass == null)
+                continue;
+            nextSibling[c.index] = firstChild[c.superclass.index];
+            firstChild[c.superclass.index] = c.index;
+        }
+
+        // number them in pre-order, without recursion, as extends may
+        // nest as deep as there are classes; the stack pops the first
+        // declared first
+        int[] order = new int[n];
+        int[] stack = new int[n];
+        int sp = 0;
+        for (int i = n - 1; i >= 0; i--)
+            if (declared.get(i).superclass == null)
+                stack[sp++] = i;
+        int count = 0;
+        while (sp > 0) {
+            int i = stack[--sp];
+            order[count++] = i;
+            for (int c = firstChild[i]; c != -1; c = nextSibling[c])
+                stack[sp++] = c;
+        }
+
+        // the last number under each class, from its number and the size
+        // of its subtree, summed up from the leaves
+        int[] pre = new int[n];
+        int[] size = new int[n];
+        for (int k = 0; k < n; k++)
+            pre[order[k]] = k;
+        for (int k = n - 1; k >= 0; k--) {
+            ClassEntry c = declared.get(order[k]);
+            size[c.index]++;
+            if (c.superclass != null)
+                size[c.superclass.index] += size[c.index];
+        }
+
+        // superclasses first, as their layouts are prefixes
+        layouts = new Layout[n];
+        for (int k = 0; k < n; k++) {
+            ClassEntry c = declared.get(order[k]);
+            Layout superclass = c.superclass == null ? null
+                    : layouts[pre[c.superclass.index]];
+            Layout l = new Layout(this, c, superclass, k, k + size[c.index]
+                    - 1);
+            layouts[k] = l;
+            if (table.get(c.name.id) == c)
+                byName.put(c.name.id, l);
+        }
+    }
+
+    private void error(int node, String message) {
+        errors.add(new TypeError(ast.token(node), message));
+    }
+
+    // the class named by the symbol id, or null
+    public Layout layout(int name) {
+        return byName.get(name);
+    }
+
+    // the class of a class type
+    public Layout layout(Type t) {
+        return byName.get(t.name.id);
+    }
+
+    // the classes, in pre-order
+    public int size() {
+        return layouts.length;
+    }
+
+    public Layout get(int pre) {
+        return layouts[pre];
+    }
+
+    // whether a value of type from can be used as one of type to
+    public boolean assignable(Type from, Type to) {
+        return from == to || from.kind == Type.Kind.CLASS
+                && to.kind == Type.Kind.CLASS
+                && layout(from).isSubclassOf(layout(to));
+    }
+}
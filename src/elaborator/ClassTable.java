@@ -0,0 +1,163 @@
+package elaborator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ast.Ast;
+import ast.NodeKind;
+import lexer.TokenBuffer;
+import util.IntMap;
+import util.Symbol;
+
+/**
+ * The classes of a program and their superclasses, as declared, and the
+ * errors in that: classes declared twice or not at all, and cycles of
+ * extends, which are broken. Their members are declared as ClassHierarchy
+ * lays them out, superclasses first.
+ *
+ * The classes are in an IntMap keyed by the id of the name, so a lookup
+ * hashes an int the tokens already carry and compares no strings.
+ */
+public final class ClassTable {
+    // a class, or the main class
+    static final class ClassEntry {
+        final Symbol name;
+        final int decl; // its node
+        final int index; // in the order declared
+        final Type type;
+        ClassEntry superclass; // or null
+        int state; // while looking for cycles
+
+        ClassEntry(Symbol name, int decl, int index, Type type) {
+            this.name = name;
+            this.decl = decl;
+            this.index = index;
+            this.type = type;
+        }
+    }
+
+    private final Ast ast;
+    private final TokenBuffer tokens;
+    private final Types types;
+    private final List<TypeError> errors;
+    private final IntMap<ClassEntry> classes = new IntMap<>();
+    // in the order they are declared, including any declared twice
+    private final List<ClassEntry> declared = new ArrayList<>();
+
+    // the classes of ast, with their types made in types, and the errors
+    // in their declarations added to errors
+    public ClassTable(Ast ast, Types types, List<TypeError> errors) {
+        this.ast = ast;
+        this.tokens = ast.tokens();
+        this.types = types;
+        this.errors = errors;
+        // the names first, as any class can name any other
+        for (int d = ast.firstChild(ast.root()); d != Ast.NIL; d = ast
+                .nextSibling(d))
+            declareClass(d);
+        for (ClassEntry c : declared)
+            if (ast.kind(c.decl) == NodeKind.CLASS_DECL)
+                extend(c);
+        for (ClassEntry c : declared)
+            findCycle(c);
+    }
+
+    private void error(int node, String message) {
+        errors.add(new TypeError(ast.token(node), message));
+    }
+
+    private int id(int node) {
+        return tokens.symbolId(ast.token(node));
+    }
+
+    private void declareClass(int d) {
+        Symbol name = ast.symbol(d);
+        if (name == null)
+            return;
+        ClassEntry c = new ClassEntry(name, d, declared.size(),
+                types.classType(name));
+        declared.add(c);
+        if (classes.containsKey(name.id))
+            error(d, "duplicate class " + name);
+        else
+            classes.put(name.id, c);
+    }
+
+    private void extend(ClassEntry c) {
+        int e = ast.firstChild(c.decl);
+        if (e == Ast.NIL || ast.kind(e) != NodeKind.EXTENDS)
+            return;
+        c.superclass = classes.get(id(e));
+        if (c.superclass == null)
+            error(e, "undefined class " + ast.symbol(e));
+        else if (ast.kind(c.superclass.decl) == NodeKind.MAIN_CLASS) {
+            error(e, "cannot extend the main class " + ast.symbol(e));
+            c.superclass = null;
+        }
+    }
+
+    // Follow the superclasses of c, and break the first cycle found, if
+    // any, at the class that closes it. Each class is followed once.
+    private void findCycle(ClassEntry c) {
+        ClassEntry first = c;
+        for (; c != null && c.state == 0; c = c.superclass)
+            c.state = 1; // on this path
+        boolean cycle = c != null && c.state == 1;
+        for (ClassEntry p = first; p != null && p.state == 1; p = p
+                .superclass)
+            p.state = 2; // done
+        if (cycle) {
+            error(ast.firstChild(c.decl), "cyclic inheritance involving "
+                    + c.name);
+            c.superclass = null;
+        }
+    }
+
+    // The type that type node t names, or null if it names no class,
+    // which is an error if report.
+    Type type(int t, boolean report) {
+        switch (ast.kind(t)) {
+        case INT_TYPE:
+            return Type.INT;
+        case BOOLEAN_TYPE:
+            return Type.BOOLEAN;
+        case INT_ARRAY_TYPE:
+            return Type.INT_ARRAY;
+        default:
+            ClassEntry c = classes.get(id(t));
+            if (c == null && report)
+                error(t, "undefined class " + ast.symbol(t));
+            return c == null ? null : c.type;
+        }
+    }
+
+    // the type of method declaration m, whose undeclared classes are
+    // errors
+    Type signature(int m) {
+        int t = ast.firstChild(m);
+        Type result = type(t, true);
+        int n = 0;
+        for (int f = ast.nextSibling(t); f != Ast.NIL
+                && ast.kind(f) == NodeKind.FORMAL; f = ast.nextSibling(f))
+            n++;
+        Type[] params = new Type[n];
+        int i = 0;
+        for (int f = ast.nextSibling(t); i < n; f = ast.nextSibling(f))
+            params[i++] = type(ast.firstChild(f), true);
+        return types.methodType(result, params);
+    }
+
+    // the class named by the symbol id, or null
+    ClassEntry get(int name) {
+        return classes.get(name);
+    }
+
+    // the classes in the order they are declared
+    List<ClassEntry> declared() {
+        return declared;
+    }
+
+    public int size() {
+        return classes.size();
+    }
+}
@@ -0,0 +1,292 @@
+package elaborator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ast.Ast;
+import ast.NodeKind;
+import elaborator.ClassHierarchy.Field;
+import elaborator.ClassHierarchy.Layout;
+import elaborator.ClassHierarchy.Method;
+import lexer.TokenBuffer;
+import util.IntMap;
+
+/**
+ * The type checker: builds the ClassTable and the ClassHierarchy of a
+ * program without syntax errors, then checks the statements and
+ * expressions of every method against them, and keeps the errors it finds,
+ * in the order of the source.
+ *
+ * The locals and parameters of the method being checked are in one IntMap
+ * by symbol id, cleared for each method. Method bodies are walked without
+ * recursion, children before parents, the type of each expression kept on
+ * a stack of its own, so statements and expressions nested to any depth
+ * take no Java stack. An expression whose type is not known, because of
+ * an error in it, is null, and is not reported again where it is used.
+ */
+public final class Elaborator {
+    private final Ast ast;
+    private final TokenBuffer tokens;
+    private final Types types = new Types();
+    private final List<TypeError> errors = new ArrayList<>();
+    private ClassTable table;
+    private ClassHierarchy hierarchy;
+
+    // the method being checked
+    private final IntMap<Type> locals = new IntMap<>();
+    private Layout self; // or null, in the main class
+    private Type result;
+
+    // the walk: the nodes entered and not left, and for each, how many
+    // types were on the stack when it was entered
+    private int[] nodes = new int[64];
+    private int[] bases = new int[64];
+    private Type[] stack = new Type[64];
+    private int top = 0;
+
+    public Elaborator(Ast ast) {
+        this.ast = ast;
+        this.tokens = ast.tokens();
+    }
+
+    // check the program, and return its errors
+    public List<TypeError> check() {
+        table = new ClassTable(ast, types, errors);
+        hierarchy = new ClassHierarchy(table, ast, errors);
+        for (int i = 0; i < hierarchy.size(); i++) {
+            Layout c = hierarchy.get(i);
+            self = c;
+            int d = c.decl;
+            if (ast.kind(d) == NodeKind.MAIN_CLASS) {
+                self = null;
+                locals.clear();
+                walk(ast.nextSibling(ast.firstChild(d)));
+                continue;
+            }
+            for (int m = ast.firstChild(d); m != Ast.NIL; m = ast
+                    .nextSibling(m))
+                if (ast.kind(m) == NodeKind.METHOD_DECL)
+                    checkMethod(m);
+        }
+        // the declarations were checked before the bodies
+        errors.sort((a, b) -> Integer.compare(a.token, b.token));
+        return errors;
+    }
+
+    // the tables check() built
+    public ClassTable classes() {
+        return table;
+    }
+
+    public ClassHierarchy hierarchy() {
+        return hierarchy;
+    }
+
+    public Types types() {
+        return types;
+    }
+
+    private void error(int node, String message) {
+        errors.add(new TypeError(ast.token(node), message));
+    }
+
+    private int id(int node) {
+        return tokens.symbolId(ast.token(node));
+    }
+
+    private void checkMethod(int m) {
+        locals.clear();
+        int c = ast.firstChild(m);
+        // the signature's types were reported as the table was built
+        result = table.type(c, false);
+        for (c = ast.nextSibling(c); c != Ast.NIL; c = ast.nextSibling(c)) {
+            NodeKind k = ast.kind(c);
+            if (k == NodeKind.FORMAL || k == NodeKind.VAR_DECL) {
+                Type t = table.type(ast.firstChild(c), k == NodeKind.VAR_DECL);
+                if (locals.containsKey(id(c)))
+                    error(c, "duplicate variable " + ast.symbol(c));
+                else
+                    locals.put(id(c), t);
+            } else
+                walk(c);
+        }
+    }
+
+    // Check the statement or expression at n and all under it, children
+    // first, each leaving its type, or null, on the stack.
+    private void walk(int n) {
+        int entered = 0;
+        int sp = top;
+        for (;;) {
+            // enter n and its first children
+            for (; n != Ast.NIL; n = ast.firstChild(n)) {
+                if (entered == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, entered * 2);
+                    bases = Arrays.copyOf(bases, entered * 2);
+                }
+                nodes[entered] = n;
+                bases[entered++] = top;
+            }
+            // leave the nodes with no more children, and go on to the
+            // next sibling of the last one
+            for (;;) {
+                int done = nodes[--entered];
+                Type t = leave(done, bases[entered]);
+                top = bases[entered];
+                push(t);
+                if (entered == 0) {
+                    top = sp;
+                    return;
+                }
+                n = ast.nextSibling(done);
+                if (n != Ast.NIL)
+                    break;
+            }
+        }
+    }
+
+    private void push(Type t) {
+        if (top == stack.length)
+            stack = Arrays.copyOf(stack, top * 2);
+        stack[top++] = t;
+    }
+
+    // report that the expression e is of type t, not want, unless either
+    // is not known
+    private void expect(int e, Type t, Type want) {
+        if (t != null && want != null && !hierarchy.assignable(t, want))
+            error(e, "expected " + want + ", found " + t);
+    }
+
+    // The type of node n, whose children's types are on the stack from
+    // base up, having checked them; null for a statement.
+    private Type leave(int n, int base) {
+        switch (ast.kind(n)) {
+        case BLOCK:
+            return null;
+        case IF:
+        case WHILE:
+            expect(ast.firstChild(n), stack[base], Type.BOOLEAN);
+            return null;
+        case PRINT:
+            expect(ast.firstChild(n), stack[base], Type.INT);
+            return null;
+        case ASSIGN:
+            expect(ast.firstChild(n), stack[base], variable(n));
+            return null;
+        case ARRAY_ASSIGN: {
+            Type v = variable(n);
+            if (v != null && v != Type.INT_ARRAY)
+                error(n, "expected int[], found " + v);
+            expect(ast.firstChild(n), stack[base], Type.INT);
+            expect(ast.child(n, 1), stack[base + 1], Type.INT);
+            return null;
+        }
+        case RETURN:
+            expect(ast.firstChild(n), stack[base], result);
+            return null;
+
+        case AND:
+            expect(ast.firstChild(n), stack[base], Type.BOOLEAN);
+            expect(ast.child(n, 1), stack[base + 1], Type.BOOLEAN);
+            return Type.BOOLEAN;
+        case LT:
+            expect(ast.firstChild(n), stack[base], Type.INT);
+            expect(ast.child(n, 1), stack[base + 1], Type.INT);
+            return Type.BOOLEAN;
+        case ADD:
+        case SUB:
+        case TIMES:
+            expect(ast.firstChild(n), stack[base], Type.INT);
+            expect(ast.child(n, 1), stack[base + 1], Type.INT);
+            return Type.INT;
+        case NOT:
+            expect(ast.firstChild(n), stack[base], Type.BOOLEAN);
+            return Type.BOOLEAN;
+        case INDEX:
+            expect(ast.firstChild(n), stack[base], Type.INT_ARRAY);
+            expect(ast.child(n, 1), stack[base + 1], Type.INT);
+            return Type.INT;
+        case LENGTH:
+            expect(ast.firstChild(n), stack[base], Type.INT_ARRAY);
+            return Type.INT;
+        case CALL:
+            return call(n, base);
+        case NUM:
+            return Type.INT;
+        case TRUE:
+        case FALSE:
+            return Type.BOOLEAN;
+        case THIS:
+            if (self == null)
+                error(n, "this cannot be used in main");
+            return self == null ? null : self.type;
+        case ID:
+            return variable(n);
+        case NEW_INT_ARRAY:
+            expect(ast.firstChild(n), stack[base], Type.INT);
+            return Type.INT_ARRAY;
+        case NEW_OBJECT: {
+            Layout c = hierarchy.layout(id(n));
+            if (c == null)
+                error(n, "undefined class " + ast.symbol(n));
+            return c == null ? null : c.type;
+        }
+        default:
+            return null;
+        }
+    }
+
+    // the type of the variable named at n: a local, a parameter, or a
+    // field of the class or a superclass
+    private Type variable(int n) {
+        int name = id(n);
+        Type t = locals.get(name);
+        if (t != null || locals.containsKey(name))
+            return t;
+        Field f = self == null ? null : self.field(name);
+        if (f != null)
+            return f.type;
+        error(n, "undefined variable " + ast.symbol(n));
+        return null;
+    }
+
+    private Type call(int n, int base) {
+        int receiver = ast.firstChild(n);
+        Type r = stack[base];
+        if (r == null)
+            return null;
+        if (r.kind != Type.Kind.CLASS) {
+            error(receiver, "expected a class, found " + r);
+            return null;
+        }
+        Method m = hierarchy.layout(r).method(id(n));
+        if (m == null) {
+            error(n, "undefined method " + ast.symbol(n) + " in class " + r);
+            return null;
+        }
+        Type t = m.type;
+        int args = top - base - 1;
+        if (args != t.paramCount()) {
+            error(n, "method " + ast.symbol(n) + " takes " + t.paramCount()
+                    + (t.paramCount() == 1 ? " argument" : " arguments")
+                    + ", found " + args);
+            return t.result;
+        }
+        int a = ast.nextSibling(receiver);
+        for (int i = 0; i < args; i++, a = ast.nextSibling(a))
+            expect(a, stack[base + 1 + i], t.param(i));
+        return t.result;
+    }
+
+    // print the errors, if any, as Parser.report does
+    public static void report(List<TypeError> errors, TokenBuffer tokens) {
+        if (errors.isEmpty())
+            return;
+        for (TypeError e : errors)
+            System.err.println(e.format(tokens));
+        int n = errors.size();
+        System.err.println(n + (n == 1 ? " type error" : " type errors"));
+    }
+}
@@ -0,0 +1,90 @@
+package elaborator;
+
+import util.Symbol;
+
+/**
+ * A MiniJava type: int, boolean, int[], a class, or the type of a method,
+ * its result and its parameters.
+ *
+ * Types are hash-consed: there is one INT, BOOLEAN and INT_ARRAY, and
+ * Types makes one instance of each class and method type in a compilation,
+ * so two types are the same exactly when they are the same object, and
+ * are compared with ==. A part that is not known, because its class was
+ * not declared, is null.
+ */
+public final class Type {
+    public enum Kind {
+        INT, BOOLEAN, INT_ARRAY, CLASS, METHOD
+    }
+
+    public static final Type INT = new Type(Kind.INT, null, null, null, 1);
+    public static final Type BOOLEAN = new Type(Kind.BOOLEAN, null, null,
+            null, 2);
+    public static final Type INT_ARRAY = new Type(Kind.INT_ARRAY, null, null,
+            null, 3);
+
+    public final Kind kind;
+    public final Symbol name; // of a class, or null
+    public final Type result; // of a method, or null
+    private final Type[] params; // of a method, or null
+    final int hash;
+
+    Type(Kind kind, Symbol name, Type result, Type[] params, int hash) {
+        this.kind = kind;
+        this.name = name;
+        this.result = result;
+        this.params = params;
+        this.hash = hash;
+    }
+
+    // the parameters of a method type
+    public int paramCount() {
+        return params.length;
+    }
+
+    public Type param(int i) {
+        return params[i];
+    }
+
+    // whether this is a method type of result and params, by reference
+    boolean isMethod(Type result, Type[] params) {
+        if (kind != Kind.METHOD || this.result != result
+                || this.params.length != params.length)
+            return false;
+        for (int i = 0; i < params.length; i++)
+            if (this.params[i] != params[i])
+                return false;
+        return true;
+    }
+
+    // whether a part of a method type is not known
+    boolean unknown() {
+        if (kind != Kind.METHOD)
+            return false;
+        if (result == null)
+            return true;
+        for (Type p : params)
+            if (p == null)
+                return true;
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+        case INT:
+            return "int";
+        case BOOLEAN:
+            return "boolean";
+        case INT_ARRAY:
+            return "int[]";
+        case CLASS:
+            return name.name;
+        default:
+            StringBuilder sb = new StringBuilder("(");
+            for (int i = 0; i < params.length; i++)
+                sb.append(i == 0 ? "" : ", ").append(params[i]);
+            return sb.append(") -> ").append(result).toString();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package elaborator;
+
+import lexer.TokenBuffer;
+
+/**
+ * A semantic error, kept instead of printed: the token it was found at
+ * and what is wrong there.
+ */
+public final class TypeError {
+    public final int token; // index in the token buffer
+    public final String message;
+
+    public TypeError(int token, String message) {
+        this.token = token;
+        this.message = message;
+    }
+
+    // the message the checker prints for it
+    public String format(TokenBuffer tokens) {
+        return "ERROR: " + message + " at line " + tokens.line(token)
+                + ", column " + tokens.column(token);
+    }
+}
@@ -0,0 +1,76 @@
+package elaborator;
+
+import util.IntMap;
+import util.Symbol;
+
+/**
+ * Makes the class and method types of a compilation, each once (see Type).
+ *
+ * Class types are kept by the id of their name. Method types are kept in
+ * an open-addressed table of their own, hashed and compared by the types
+ * they are made of, which are themselves unique, so no part of a type is
+ * ever compared but by reference.
+ */
+public final class Types {
+    private final IntMap<Type> classes = new IntMap<>();
+    private Type[] methods = new Type[64];
+    private int methodCount = 0;
+
+    // the type of the class name
+    public Type classType(Symbol name) {
+        Type t = classes.get(name.id);
+        if (t == null) {
+            t = new Type(Type.Kind.CLASS, name, null, null, mix(name.id + 4));
+            classes.put(name.id, t);
+        }
+        return t;
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int hash(Type t) {
+        return t == null ? 0 : t.hash;
+    }
+
+    // the type of a method that takes params and returns result; params is
+    // kept if the type is new, and must not change after
+    public Type methodType(Type result, Type[] params) {
+        int h = hash(result);
+        for (Type p : params)
+            h = 31 * h + hash(p);
+        h = mix(h);
+        int mask = methods.length - 1;
+        int i = h & mask;
+        for (; methods[i] != null; i = (i + 1) & mask)
+            if (methods[i].hash == h && methods[i].isMethod(result, params))
+                return methods[i];
+        Type t = new Type(Type.Kind.METHOD, null, result, params, h);
+        methods[i] = t;
+        // keep the load factor at or below one half
+        if (++methodCount * 2 > methods.length)
+            rehash();
+        return t;
+    }
+
+    private void rehash() {
+        Type[] old = methods;
+        methods = new Type[old.length * 2];
+        int mask = methods.length - 1;
+        for (Type t : old) {
+            if (t == null)
+                continue;
+            int i = t.hash & mask;
+            while (methods[i] != null)
+                i = (i + 1) & mask;
+            methods[i] = t;
+        }
+    }
+
+    // the method types made so far
+    public int methodTypes() {
+        return methodCount;
+    }
+}
@@ -0,0 +1,148 @@
+package lexer;
+
+import lexer.Token.Kind;
+
+/**
+ * The tables that drive the lexer's scanning loop.
+ *
+ * Every input byte is first mapped to a character class (CLASS for ASCII,
+ * classOf() for the rest), and NEXT[state * CLASSES + class] then says what
+ * to do: a value below EMIT is the state to move to after consuming the
+ * character; otherwise the token is complete, its kind is in the low bits,
+ * and INCLUDE says whether the current character is part of it.
+ *
+ * Blanks and comment bodies are skipped outside the automaton; it only
+ * recognizes the start of a comment, as the pseudo-kinds LINE_COMMENT and
+ * BLOCK_COMMENT.
+ */
+final class Dfa {
+    // character classes
+    static final int C_OTHER = 0;
+    static final int C_SPACE = 1;
+    static final int C_NL = 2;
+    static final int C_CR = 3;
+    static final int C_LETTER = 4;
+    static final int C_DIGIT = 5;
+    static final int C_UNDERSCORE = 6;
+    static final int C_SLASH = 7;
+    static final int C_STAR = 8;
+    static final int C_AMP = 9;
+    static final int C_EOF = 10;
+    // each punctuation character has a class of its own, from C_PUNCT on
+    static final int C_PUNCT = 11;
+    private static final String PUNCT = "+-<()[]{};,.=!";
+    private static final Kind[] PUNCT_KIND = { Kind.TOKEN_ADD, Kind.TOKEN_SUB,
+            Kind.TOKEN_LT, Kind.TOKEN_LPAREN, Kind.TOKEN_RPAREN,
+            Kind.TOKEN_LBRACK, Kind.TOKEN_RBRACK, Kind.TOKEN_LBRACE,
+            Kind.TOKEN_RBRACE, Kind.TOKEN_SEMI, Kind.TOKEN_COMMA,
+            Kind.TOKEN_DOT, Kind.TOKEN_ASSIGN, Kind.TOKEN_NOT, };
+    static final int CLASSES = C_PUNCT + PUNCT.length();
+
+    // states
+    static final int S_START = 0;
+    static final int S_IDENT = 1;
+    static final int S_NUM = 2;
+    static final int S_AMP = 3;
+    static final int S_SLASH = 4;
+    private static final int STATES = 5;
+
+    // actions
+    static final int EMIT = 0x100;
+    static final int INCLUDE = 0x200;
+    static final int KIND_MASK = 0xff;
+    // pseudo-kinds, numbered after the real ones
+    static final int LINE_COMMENT = Kind.values().length;
+    static final int BLOCK_COMMENT = LINE_COMMENT + 1;
+
+    static final byte[] CLASS = new byte[128];
+    static final int[] NEXT = new int[STATES * CLASSES];
+
+    private static void set(int state, int cls, int action) {
+        NEXT[state * CLASSES + cls] = action;
+    }
+
+    private static int emit(Kind kind) {
+        return EMIT | kind.ordinal();
+    }
+
+    private static int emitWith(int kind) {
+        return EMIT | INCLUDE | kind;
+    }
+
+    static {
+        for (int c = 0; c < 128; c++) {
+            int cls = C_OTHER;
+            if (c == '\n')
+                cls = C_NL;
+            else if (c == '\r')
+                cls = C_CR;
+            else if (Character.isWhitespace(c))
+                cls = C_SPACE;
+            else if (Character.isLetter(c))
+                cls = C_LETTER;
+            else if (Character.isDigit(c))
+                cls = C_DIGIT;
+            else if (c == '_')
+                cls = C_UNDERSCORE;
+            else if (c == '/')
+                cls = C_SLASH;
+            else if (c == '*')
+                cls = C_STAR;
+            else if (c == '&')
+                cls = C_AMP;
+            else if (PUNCT.indexOf(c) >= 0)
+                cls = C_PUNCT + PUNCT.indexOf(c);
+            CLASS[c] = (byte) cls;
+        }
+
+        int unknown = Kind.TOKEN_UNKNOWN.ordinal();
+        // anything not listed is an unknown character on its own
+        for (int cls = 0; cls < CLASSES; cls++)
+            set(S_START, cls, emitWith(unknown));
+        set(S_START, C_EOF, emit(Kind.TOKEN_EOF));
+        set(S_START, C_LETTER, S_IDENT);
+        set(S_START, C_DIGIT, S_NUM);
+        set(S_START, C_AMP, S_AMP);
+        set(S_START, C_SLASH, S_SLASH);
+        set(S_START, C_STAR, emitWith(Kind.TOKEN_TIMES.ordinal()));
+        for (int i = 0; i < PUNCT.length(); i++)
+            set(S_START, C_PUNCT + i, emitWith(PUNCT_KIND[i].ordinal()));
+
+        // identifier or reserved word ([a-zA-Z][a-zA-Z0-9_]*)
+        for (int cls = 0; cls < CLASSES; cls++)
+            set(S_IDENT, cls, emit(Kind.TOKEN_ID));
+        set(S_IDENT, C_LETTER, S_IDENT);
+        set(S_IDENT, C_DIGIT, S_IDENT);
+        set(S_IDENT, C_UNDERSCORE, S_IDENT);
+
+        // integer literal ([0-9]+)
+        for (int cls = 0; cls < CLASSES; cls++)
+            set(S_NUM, cls, emit(Kind.TOKEN_NUM));
+        set(S_NUM, C_DIGIT, S_NUM);
+
+        // "&&", or a lone '&'
+        for (int cls = 0; cls < CLASSES; cls++)
+            set(S_AMP, cls, emit(Kind.TOKEN_UNKNOWN));
+        set(S_AMP, C_AMP, emitWith(Kind.TOKEN_AND.ordinal()));
+
+        // a comment, or a lone '/' (not a MiniJava operator)
+        for (int cls = 0; cls < CLASSES; cls++)
+            set(S_SLASH, cls, emit(Kind.TOKEN_UNKNOWN));
+        set(S_SLASH, C_SLASH, emitWith(LINE_COMMENT));
+        set(S_SLASH, C_STAR, emitWith(BLOCK_COMMENT));
+    }
+
+    // class of a byte outside ASCII, or of end of input (-1); bytes are
+    // Latin-1 characters, as they always were
+    static int classOf(int c) {
+        if (c < 0)
+            return C_EOF;
+        if (Character.isLetter(c))
+            return C_LETTER;
+        if (Character.isDigit(c))
+            return C_DIGIT;
+        if (Character.isWhitespace(c))
+            return C_SPACE;
+        return C_OTHER;
+    }
+}
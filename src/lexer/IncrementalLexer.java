@@ -0,0 +1,120 @@
+package lexer;
+
+import java.util.Arrays;
+
+import util.SymbolTable;
+
+/**
+ * The text of a file and its tokens, kept up to date across edits without
+ * lexing the whole text again.
+ *
+ * An edit can only change tokens from the last one that ends at or after
+ * it, so relexing starts at the end of the token before that, where the
+ * lexer is between tokens and outside any comment. It stops as soon as it
+ * produces a token at the place an old token starts, moved by the edit,
+ * past the edited text: from there on the input is the same as before,
+ * and so are the tokens. The new tokens are spliced in and the rest keep
+ * their kinds and symbols, shifted by the size of the edit.
+ */
+public final class IncrementalLexer {
+    // what an edit changed: tokens [from, oldTo) became [from, newTo)
+    public static final class Damage {
+        public final int from;
+        public final int oldTo;
+        public final int newTo;
+
+        Damage(int from, int oldTo, int newTo) {
+            this.from = from;
+            this.oldTo = oldTo;
+            this.newTo = newTo;
+        }
+
+        // how far the tokens after the damage moved
+        public int shift() {
+            return newTo - oldTo;
+        }
+    }
+
+    private byte[] text;
+    private int length;
+    private final TokenBuffer tokens;
+
+    public IncrementalLexer(byte[] text, SymbolTable symbols) {
+        this.text = Arrays.copyOf(text, text.length + text.length / 8 + 16);
+        this.length = text.length;
+        Lexer lexer = new Lexer("<edit>", Source.of(this.text, 0, length),
+                symbols);
+        while (lexer.scan())
+            ;
+        this.tokens = lexer.tokens();
+    }
+
+    public TokenBuffer tokens() {
+        return tokens;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public byte[] text() {
+        return Arrays.copyOf(text, length);
+    }
+
+    // Replace removed bytes at offset with inserted, and bring the tokens
+    // up to date.
+    public Damage edit(int offset, int removed, byte[] inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > length)
+            throw new IndexOutOfBoundsException("edit of [" + offset + ", "
+                    + (offset + removed) + ") in " + length + " bytes");
+        int delta = inserted.length - removed;
+        if (length + delta > text.length)
+            text = Arrays.copyOf(text, (length + delta) * 3 / 2 + 16);
+        System.arraycopy(text, offset + removed, text,
+                offset + inserted.length, length - offset - removed);
+        System.arraycopy(inserted, 0, text, offset, inserted.length);
+        length += delta;
+
+        // the first token that ends at or after the edit; the one ending
+        // exactly there could grow
+        int lo = 0;
+        int hi = tokens.size() - 1; // TOKEN_EOF ends at the end of input
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (tokens.start(mid) + tokens.length(mid) >= offset)
+                hi = mid;
+            else
+                lo = mid + 1;
+        }
+        int from = lo;
+        int textFrom = from == 0 ? 0
+                : tokens.start(from - 1) + tokens.length(from - 1);
+
+        Lexer lexer = new Lexer(Source.of(text, textFrom, length),
+                tokens.symbols());
+        TokenBuffer fresh = lexer.tokens();
+        int editEnd = offset + inserted.length;
+        int old = from;
+        for (;;) {
+            lexer.scan();
+            int i = fresh.size() - 1;
+            int start = fresh.start(i);
+            if (start < editEnd)
+                continue;
+            // the old token at the same place in the unchanged input; there
+            // is one at the latest at TOKEN_EOF
+            int was = start - delta;
+            while (tokens.start(old) < was)
+                old++;
+            if (tokens.start(old) == was && was >= offset + removed) {
+                tokens.splice(from, old, fresh, i, textFrom, was, delta);
+                return new Damage(from, old, from + i);
+            }
+        }
+    }
+
+    public Damage edit(int offset, int removed, String inserted) {
+        return edit(offset, removed, inserted.getBytes(
+                java.nio.charset.StandardCharsets.UTF_8));
+    }
+}
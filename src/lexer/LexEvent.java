@@ -0,0 +1,37 @@
+package lexer;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// What a Lexer skipped and scanned, for Java Flight Recorder: from its
+// creation to the end of its input.
+@Name("tiger.Lex")
+@Label("Lex")
+@Category({ "Tiger", "Lexer" })
+@Description("The comments skipped and the identifiers scanned in a file")
+final class LexEvent extends Event {
+    @Label("File")
+    String file;
+
+    @Label("Tokens")
+    int tokens;
+
+    @Label("Comments")
+    int comments;
+
+    @Label("Comment Bytes")
+    @DataAmount
+    long commentBytes;
+
+    @Label("Identifiers")
+    @Description("Identifiers, not counting reserved words")
+    int identifiers;
+
+    @Label("Identifier Bytes")
+    @DataAmount
+    long identifierBytes;
+}
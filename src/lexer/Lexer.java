@@ -1,284 +1,440 @@
 package lexer;
 
-import static control.Control.ConLexer.dump;
-
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
 
 import lexer.Token.Kind;
+import control.CompilerContext;
+import control.Options;
+import util.Bug;
+import util.SymbolTable;
 
 public class Lexer {
     private String fileName; // the input file name to be compiled
-    private InputStream fStream; // input stream for the above file
-    private int lineNum;
-    private int colNum;
+    private Source source; // the bytes of the above file
+    private byte[] buf; // the source's current window
+    private int pos; // index of the next unread byte in buf
+    private int limit; // end of the valid bytes in buf
+    private int base; // input offset of buf[0]
     private int nextChar;
-    private Token next;
-    // hash tables for fast lookup
-    private final static Map<String, Kind> reservedWords;
-    private final static Map<Character, Kind> punctuation;
-
-    // initialize hash tables statically
+    private int mark = -1; // start of the lexeme being scanned, if any
+    private SymbolTable symbols; // where identifiers are interned
+    private TokenBuffer tokens; // every token scanned so far
+    private int consumed; // index of the token next() returns
+    private int commentDepth; // number of "/*" open at the current point
+    // skip blanks and comments with word-at-a-time searches
+    private final boolean wide;
+    private int comments; // skipped so far
+    private long commentBytes;
+    private int drained; // tokens handed on or forgotten
+    private int identifiers; // among them
+    private long identifierBytes;
+    private final LexEvent event = new LexEvent(); // for Flight Recorder
+
+    // reserved words, placed by a perfect hash of their length, first and
+    // last characters (see keywordSlot), so recognizing one costs a table
+    // load and a byte compare
+    private final static byte[][] keywordText = new byte[64][];
+    private final static Kind[] keywordKind = new Kind[64];
+
+    // initialize tables statically
     static {
-        reservedWords = new HashMap<>();
-        reservedWords.put("boolean", Kind.TOKEN_BOOLEAN);
-        reservedWords.put("class", Kind.TOKEN_CLASS);
-        reservedWords.put("else", Kind.TOKEN_ELSE);
-        reservedWords.put("extends", Kind.TOKEN_EXTENDS);
-        reservedWords.put("false", Kind.TOKEN_FALSE);
-        reservedWords.put("if", Kind.TOKEN_IF);
-        reservedWords.put("int", Kind.TOKEN_INT);
-        reservedWords.put("length", Kind.TOKEN_LENGTH);
-        reservedWords.put("main", Kind.TOKEN_MAIN);
-        reservedWords.put("new", Kind.TOKEN_NEW);
-        reservedWords.put("out", Kind.TOKEN_OUT);
-        reservedWords.put("public", Kind.TOKEN_PUBLIC);
-        reservedWords.put("println", Kind.TOKEN_PRINTLN);
-        reservedWords.put("return", Kind.TOKEN_RETURN);
-        reservedWords.put("static", Kind.TOKEN_STATIC);
-        reservedWords.put("String", Kind.TOKEN_STRING);
-        reservedWords.put("System", Kind.TOKEN_SYSTEM);
-        reservedWords.put("this", Kind.TOKEN_THIS);
-        reservedWords.put("true", Kind.TOKEN_TRUE);
-        reservedWords.put("void", Kind.TOKEN_VOID);
-        reservedWords.put("while", Kind.TOKEN_WHILE);
-
-        punctuation = new HashMap<>();
-        punctuation.put('(', Kind.TOKEN_LPAREN);
-        punctuation.put(')', Kind.TOKEN_RPAREN);
-        punctuation.put('[', Kind.TOKEN_LBRACK);
-        punctuation.put(']', Kind.TOKEN_RBRACK);
-        punctuation.put('{', Kind.TOKEN_LBRACE);
-        punctuation.put('}', Kind.TOKEN_RBRACE);
-        punctuation.put(';', Kind.TOKEN_SEMI);
-        punctuation.put(',', Kind.TOKEN_COMMA);
-        punctuation.put('.', Kind.TOKEN_DOT);
-        punctuation.put('=', Kind.TOKEN_ASSIGN);
-        punctuation.put('!', Kind.TOKEN_NOT);
+        keyword("boolean", Kind.TOKEN_BOOLEAN);
+        keyword("class", Kind.TOKEN_CLASS);
+        keyword("else", Kind.TOKEN_ELSE);
+        keyword("extends", Kind.TOKEN_EXTENDS);
+        keyword("false", Kind.TOKEN_FALSE);
+        keyword("if", Kind.TOKEN_IF);
+        keyword("int", Kind.TOKEN_INT);
+        keyword("length", Kind.TOKEN_LENGTH);
+        keyword("main", Kind.TOKEN_MAIN);
+        keyword("new", Kind.TOKEN_NEW);
+        keyword("out", Kind.TOKEN_OUT);
+        keyword("public", Kind.TOKEN_PUBLIC);
+        keyword("println", Kind.TOKEN_PRINTLN);
+        keyword("return", Kind.TOKEN_RETURN);
+        keyword("static", Kind.TOKEN_STATIC);
+        keyword("String", Kind.TOKEN_STRING);
+        keyword("System", Kind.TOKEN_SYSTEM);
+        keyword("this", Kind.TOKEN_THIS);
+        keyword("true", Kind.TOKEN_TRUE);
+        keyword("void", Kind.TOKEN_VOID);
+        keyword("while", Kind.TOKEN_WHILE);
+    }
+
+    private static int keywordSlot(int len, int first, int last) {
+        return (len + first * 2 + last * 13) & 63;
+    }
+
+    private static void keyword(String word, Kind kind) {
+        int slot = keywordSlot(word.length(), word.charAt(0),
+                word.charAt(word.length() - 1));
+        // the hash must stay perfect when keywords are added
+        if (keywordText[slot] != null)
+            new Bug();
+        keywordText[slot] = word.getBytes(StandardCharsets.US_ASCII);
+        keywordKind[slot] = kind;
+    }
+
+    // the reserved word buf[start..start+len) spells, if any
+    private Kind keyword(int start, int len, int last) {
+        if (len < 2 || len > 7)
+            return null;
+        int slot = keywordSlot(len, buf[start] & 0xff, last);
+        byte[] word = keywordText[slot];
+        if (word == null || word.length != len)
+            return null;
+        for (int i = 0; i < len; i++)
+            if (word[i] != buf[start + i])
+                return null;
+        return keywordKind[slot];
     }
 
     public Lexer(String fName, InputStream fStream) {
+        this(fName, Source.of(fStream));
+    }
+
+    public Lexer(String fName, Source source) {
+        this(fName, source, new SymbolTable());
+    }
+
+    // a lexer with the default options, interning names in symbols
+    public Lexer(String fName, Source source, SymbolTable symbols) {
+        this(fName, source, symbols, Options.DEFAULT);
+    }
+
+    // a lexer for a compilation, with its options and symbol table
+    public Lexer(String fName, Source source, CompilerContext context) {
+        this(fName, source, context.symbols, context.options);
+    }
+
+    private Lexer(String fName, Source source, SymbolTable symbols,
+            Options options) {
+        // MiniJava averages a token per four or five bytes
+        this(fName, source, new TokenBuffer(symbols, source.length() < 0 ? 1024
+                : (int) Math.min(source.length() / 4 + 16,
+                        Integer.MAX_VALUE - 8)), options);
+    }
+
+    private Lexer(String fName, Source source, TokenBuffer tokens,
+            Options options) {
         this.fileName = fName;
-        this.fStream = fStream;
-        lineNum = 1;
-        colNum = 0;
+        this.source = source;
+        this.symbols = tokens.symbols();
+        this.tokens = tokens;
+        this.wide = options.skip == Options.Skip.SWAR;
+        event.begin();
+        this.buf = source.buf;
+        this.limit = source.limit;
+        this.base = source.base;
+        this.pos = source.start;
         nextChar = getChar();
     }
 
+    // a lexer whose buffer starts with room for capacity tokens, as one
+    // that drains it as it goes needs
+    Lexer(String fName, Source source, CompilerContext context,
+            int capacity) {
+        this(fName, source, new TokenBuffer(context.symbols, capacity),
+                context.options);
+    }
+
+    // Lex a chunk of a larger input that starts at the beginning of a line,
+    // inside the given number of open comments.
+    Lexer(Source chunk, SymbolTable symbols, Options options,
+            int commentDepth) {
+        this("<chunk>", chunk, symbols, options);
+        this.commentDepth = commentDepth;
+    }
+
+    // Relex the input that follows an edit, from a point between tokens,
+    // into a buffer sized for the few tokens that will be needed.
+    Lexer(Source rest, SymbolTable symbols) {
+        this("<edit>", rest, new TokenBuffer(symbols, 64), Options.DEFAULT);
+    }
+
     private int getChar() {
+        if (pos < limit)
+            return buf[pos++] & 0xff;
+        return refill();
+    }
+
+    // the window is exhausted: ask the source for the next one, keeping
+    // the lexeme being scanned (if any) in the window
+    private int refill() {
+        int keep = mark >= 0 ? mark : pos;
         try {
-            int c = fStream.read();
-            colNum++;
-            return c;
+            int n = source.refill(keep);
+            // the window may have slid: rebase our indexes into it
+            int shift = source.base - base;
+            buf = source.buf;
+            limit = source.limit;
+            base = source.base;
+            pos -= shift;
+            if (mark >= 0)
+                mark -= shift;
+            if (n <= 0)
+                return -1;
+            return buf[pos++] & 0xff;
         } catch (IOException e) {
             System.err.println("IOException occured in Lexer::getChar()");
             return -1;
         }
     }
 
+    // index in buf of nextChar, or of the end of input
+    private int here() {
+        return nextChar == -1 ? pos : pos - 1;
+    }
+
     // detect and skip possible '\n', '\r' and '\rn' line breaks
     private boolean skipNewline() {
         if (nextChar == '\n') {
-            lineNum++;
             nextChar = getChar();
-            colNum = 1;
+            tokens.addLine(base + here());
             return true;
         }
         if (nextChar == '\r') {
-            lineNum++;
             nextChar = getChar();
-            colNum = 1;
             // skip over next char if '\n'
-            if (nextChar == '\n') {
+            if (nextChar == '\n')
                 nextChar = getChar();
-                colNum = 1;
-            }
+            tokens.addLine(base + here());
             return true;
         }
         return false;
     }
 
-    // return the next token without "consuming" it
-    public Token peek() {
-        // advance token only if its been reset by nextTokenInternal()
-        if (next == null)
-            next = nextTokenInternal();
+    public TokenBuffer tokens() {
+        return tokens;
+    }
 
-        return next;
+    // number of comments still open where the lexer stopped
+    int commentDepth() {
+        return commentDepth;
     }
 
-    // When called, return the next token (refer to the code "Token.java")
-    // from the input stream.
-    // Return TOKEN_EOF when reaching the end of the input stream.
-    private Token nextTokenInternal() {
-        // check if peek() was called
-        if (next != null) {
-            Token token = next;
-            next = null; // allow peek to call for next token
-            return token;
-        }
+    // index of the next token, without "consuming" it
+    public int peek() {
+        return peek(0);
+    }
 
-        if (-1 == nextChar)
-            return new Token(Kind.TOKEN_EOF, lineNum, colNum);
+    // index of the token k positions after the next one
+    public int peek(int k) {
+        while (consumed + k >= tokens.size() && scan())
+            ;
+        return Math.min(consumed + k, tokens.size() - 1);
+    }
 
-        // skip all kinds of "blanks"
-        while (Character.isWhitespace(nextChar)) {
-            // check if whitespace char is a newline
-            if (!skipNewline()) {
-                nextChar = getChar();
-            }
-            // offset colNum for tab chars
-            if (nextChar == '\t')
-                colNum += 3;
+    // index of the next token
+    public int next() {
+        int i = peek(0);
+        if (consumed < tokens.size())
+            consumed++;
+        return i;
+    }
+
+    // Scan one more token into the buffer; false once TOKEN_EOF is there.
+    public boolean scan() {
+        int n = tokens.size();
+        if (n > 0 && tokens.kindOrdinal(n - 1) == Kind.TOKEN_EOF.ordinal())
+            return false;
+        try {
+            scanToken();
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
         }
-        if (-1 == nextChar)
-            return new Token(Kind.TOKEN_EOF, lineNum, colNum);
+        return true;
+    }
 
-        // identifier or reserved word ([a-zA-Z][a-zA-Z0-9_]*)
-        if (Character.isLetter(nextChar)) {
-            // create new idVal starting with first char of identifier
-            String idVal = Character.toString((char) nextChar);
-            nextChar = getChar();
+    // add a token without a lexeme; start is an input offset
+    private void emit(Kind kind, int start, int length) {
+        tokens.add(kind, start, length, TokenBuffer.NO_SYMBOL);
+    }
 
-            // include remaining seq. of chars that are letters, digits, or _
-            while (Character.isLetterOrDigit(nextChar) || nextChar == '_') {
-                idVal += (char) nextChar;
+    // skip all kinds of "blanks"
+    private void skipBlanks() {
+        for (;;) {
+            int c = nextChar;
+            int cls = (c & ~0x7f) == 0 ? Dfa.CLASS[c] : Dfa.classOf(c);
+            if (cls == Dfa.C_SPACE) {
+                // jump over the rest of a run of spaces and tabs
+                if (wide && pos < limit && (buf[pos] == ' ' || buf[pos] == '\t'))
+                    pos = Swar.skipSpaces(buf, pos, limit);
                 nextChar = getChar();
-            }
-
-            // check if identifier is a reserved word
-            Kind type = reservedWords.get(idVal);
-            if (type != null)
-                return new Token(type, lineNum, colNum - idVal.length());
-            else // token is an identifier
-                return new Token(Kind.TOKEN_ID, lineNum, colNum - idVal.length(), idVal);
+            } else if (!skipNewline())
+                return;
         }
+    }
 
-        // integer literal ([0-9]+)
-        if (Character.isDigit(nextChar)) {
-            // create string representation of number
-            String numString = Character.toString((char) nextChar);
-            nextChar = getChar();
+    // Scan the next token from the input stream into the buffer
+    // (refer to the code "Token.java"), running the automaton in Dfa.
+    // Emit TOKEN_EOF when reaching the end of the input stream.
+    private void scanToken() {
+        // resume a comment this chunk of input started in
+        if (commentDepth > 0)
+            skipComment();
+
+        for (;;) {
+            skipBlanks();
+
+            // the lexeme is scanned in place as a slice of the window,
+            // hashing it on the way
+            mark = here();
+            int c = nextChar;
+            int state = Dfa.S_START;
+            int hash = 0;
+            int last = 0;
+            int action;
+            for (;;) {
+                int cls = (c & ~0x7f) == 0 ? Dfa.CLASS[c] : Dfa.classOf(c);
+                action = Dfa.NEXT[state * Dfa.CLASSES + cls];
+                if (action >= Dfa.EMIT) {
+                    if ((action & Dfa.INCLUDE) != 0)
+                        c = getChar();
+                    break;
+                }
+                hash = 31 * hash + c;
+                last = c;
+                state = action;
+                c = getChar();
+            }
+            nextChar = c;
+            int start = mark;
+            int len = here() - start;
+            mark = -1;
+
+            int kind = action & Dfa.KIND_MASK;
+            if (kind == Dfa.LINE_COMMENT) {
+                // single-line comment (skip to the next line)
+                long from = base + start;
+                while (nextChar != -1 && !skipNewline()) {
+                    if (wide)
+                        pos = Swar.findNewline(buf, pos, limit);
+                    nextChar = getChar();
+                }
+                comments++;
+                commentBytes += base + here() - from;
+                continue;
+            }
+            if (kind == Dfa.BLOCK_COMMENT) {
+                // multi-line comment (skip input until matching '*/' is found)
+                long from = base + start;
+                commentDepth = 1;
+                skipComment();
+                comments++;
+                commentBytes += base + here() - from;
+                continue;
+            }
 
-            // concatenate remaining seq. of digits
-            while (Character.isDigit(nextChar)) {
-                numString += (char) nextChar;
-                nextChar = getChar();
+            if (kind == Kind.TOKEN_ID.ordinal()) {
+                // check if identifier is a reserved word
+                Kind type = keyword(start, len, last);
+                if (type != null)
+                    emit(type, base + start, len);
+                else
+                    tokens.add(Kind.TOKEN_ID, base + start, len,
+                            symbols.intern(buf, start, len, hash).id);
+            } else if (kind == Kind.TOKEN_NUM.ordinal())
+                tokens.add(Kind.TOKEN_NUM, base + start, len,
+                        symbols.intern(buf, start, len, hash).id);
+            else {
+                emit(TokenBuffer.KINDS[kind], base + start, len);
+                if (kind == Kind.TOKEN_EOF.ordinal())
+                    finished();
             }
-            return new Token(Kind.TOKEN_NUM, lineNum, colNum - numString.length(), numString);
+            return;
         }
+    }
 
-        if (nextChar == '/') {
-            colNum++;
-            nextChar = getChar();
+    // count the identifiers among the first n tokens of the buffer, for
+    // the event
+    private void countIdentifiers(int n) {
+        int id = Kind.TOKEN_ID.ordinal();
+        for (int i = 0; i < n; i++)
+            if (tokens.kindOrdinal(i) == id) {
+                identifiers++;
+                identifierBytes += tokens.length(i);
+            }
+    }
 
-            // single-line comment (skip to the next line)
-            if (nextChar == '/') {
-                do {
-                    colNum++;
-                    nextChar = getChar();
-                } while (!skipNewline() && nextChar != -1);
+    // Send the tokens scanned so far down pipe and empty the buffer, so
+    // that it only ever holds a batch.
+    void drainTo(TokenPipe pipe) {
+        if (event.isEnabled())
+            countIdentifiers(tokens.size());
+        drained += tokens.size();
+        pipe.send(tokens);
+        tokens.clear();
+    }
 
-                // grab next token
-                return nextTokenInternal();
-            }
+    // Forget the first count tokens in the buffer, which its reader is
+    // done with, so that it only ever holds those it still looks at.
+    void discard(int count) {
+        if (event.isEnabled())
+            countIdentifiers(count);
+        drained += count;
+        consumed = Math.max(0, consumed - count);
+        tokens.discard(count);
+    }
+
+    // at the end of the input: record what was lexed, if Flight Recorder
+    // wants it
+    private void finished() {
+        if (!event.shouldCommit())
+            return;
+        countIdentifiers(tokens.size());
+        event.file = fileName;
+        event.tokens = drained + tokens.size();
+        event.comments = comments;
+        event.commentBytes = commentBytes;
+        event.identifiers = identifiers;
+        event.identifierBytes = identifierBytes;
+        event.commit();
+    }
 
-            // multi-line comment (skip input until matching '*/' is found)
+    // skip the rest of a (possibly nested) comment, starting inside
+    // commentDepth open "/*"; at end of input, commentDepth is left as the
+    // number still open
+    private void skipComment() {
+        while (commentDepth > 0) {
             if (nextChar == '*') {
-                colNum++;
+                // check if it closes a comment
                 nextChar = getChar();
 
-                // keep track of nesting level
-                int nestingLevel = 1;
-                while (nestingLevel > 0) {
-                    if (nextChar == '*') {
-                        // check if it closes a comment
-                        colNum++;
-                        nextChar = getChar();
-
-                        if (nextChar == '/') {
-                            nestingLevel--;
-                            colNum++;
-                            nextChar = getChar();
-                        }
-
-                    } else if (nextChar == '/') {
-                        // check if it starts a nested comment
-                        colNum++;
-                        nextChar = getChar();
-
-                        if (nextChar == '*') {
-                            nestingLevel++;
-                            colNum++;
-                            nextChar = getChar();
-                        }
-
-                    } else {
-                        // check if EOF is reached before comment is terminated
-                        if (nextChar == -1)
-                            break;
-
-                        // process newline chars
-                        if (!skipNewline()) {
-                            colNum++;
-                            nextChar = getChar();
-                        }
-
-                    }
+                if (nextChar == '/') {
+                    commentDepth--;
+                    nextChar = getChar();
                 }
-                // grab next token
-                return nextTokenInternal();
-            }
-        }
 
-        // check for binOps
-        switch (nextChar) {
-            case '+':
-                nextChar = getChar();
-                return new Token(Kind.TOKEN_ADD, lineNum, colNum - 1);
-            case '-':
-                nextChar = getChar();
-                return new Token(Kind.TOKEN_SUB, lineNum, colNum - 1);
-            case '*':
-                nextChar = getChar();
-                return new Token(Kind.TOKEN_TIMES, lineNum, colNum - 1);
-            case '<':
+            } else if (nextChar == '/') {
+                // check if it starts a nested comment
                 nextChar = getChar();
-                return new Token(Kind.TOKEN_LT, lineNum, colNum - 1);
-            case '&':
-                nextChar = getChar();
-                // check if next char is '&' to match '&&' binop
-                if (nextChar == '&') {
-                    nextChar = getChar();
-                    return new Token(Kind.TOKEN_AND, lineNum, colNum - 2);
-                } else
-                    return new Token(Kind.TOKEN_UNKNOWN, lineNum, colNum - 1);
-        }
 
-        // check for punctuation
-        Kind type = punctuation.get((char) nextChar);
-        nextChar = getChar();
+                if (nextChar == '*') {
+                    commentDepth++;
+                    nextChar = getChar();
+                }
 
-        // found punctuation token
-        if (type != null)
-            return new Token(type, lineNum, colNum - 1);
+            } else {
+                // check if EOF is reached before comment is terminated
+                if (nextChar == -1)
+                    break;
 
-        // token type is unknown
-        return new Token(Kind.TOKEN_UNKNOWN, lineNum, colNum - 1);
+                // process newline chars; other characters do not matter
+                if (!skipNewline()) {
+                    if (wide)
+                        pos = Swar.findCommentStop(buf, pos, limit);
+                    nextChar = getChar();
+                }
+            }
+        }
     }
 
+    // the next token, as an object of its own
     public Token nextToken() {
-        Token t = null;
-        try {
-            t = this.nextTokenInternal();
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(1);
-        }
-        if (dump)
-            System.out.println(t.toString());
-        return t;
+        return tokens.token(next());
     }
 }
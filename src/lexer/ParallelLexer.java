@@ -0,0 +1,120 @@
+package lexer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import control.CompilerContext;
+import control.Options;
+import util.SymbolTable;
+
+/**
+ * Lexes one in-memory input on several threads.
+ *
+ * The input is cut into chunks at line boundaries, and every chunk is
+ * lexed on the pool as if it started outside any comment. No token spans a
+ * line, so the only state that can cross a boundary is the number of open
+ * (possibly nested) block comments. Once the chunks are done, they are
+ * checked in order: a chunk whose predecessor ended inside a comment is
+ * lexed again from that comment depth. The chunks are then concatenated,
+ * and since offsets and line starts are absolute, the result is identical
+ * to lexing the whole input sequentially.
+ *
+ * Each chunk interns into a table of its own; the merge re-interns those
+ * names into the shared table chunk by chunk, so symbols are numbered in
+ * order of first appearance, as a sequential lex would number them.
+ */
+public final class ParallelLexer {
+    // chunks smaller than this are not worth a task
+    static final int MIN_CHUNK = 256 * 1024;
+
+    private static final class Chunk {
+        final int from, to;
+        Lexer lexer;
+
+        Chunk(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        void lex(byte[] input, Options options, int commentDepth) {
+            lexer = new Lexer(Source.of(input, from, to), new SymbolTable(),
+                    options, commentDepth);
+            while (lexer.scan())
+                ;
+        }
+    }
+
+    public static TokenBuffer lex(byte[] input, SymbolTable symbols,
+            ForkJoinPool pool) {
+        return lex(input, symbols, Options.DEFAULT, pool, chunkSize(input,
+                pool));
+    }
+
+    public static TokenBuffer lex(byte[] input, SymbolTable symbols,
+            ForkJoinPool pool, int chunkSize) {
+        return lex(input, symbols, Options.DEFAULT, pool, chunkSize);
+    }
+
+    // lex for a compilation, with its options, into its symbol table
+    public static TokenBuffer lex(byte[] input, CompilerContext context,
+            ForkJoinPool pool) {
+        return lex(input, context.symbols, context.options, pool,
+                chunkSize(input, pool));
+    }
+
+    private static int chunkSize(byte[] input, ForkJoinPool pool) {
+        return Math.max(MIN_CHUNK,
+                input.length / (4 * pool.getParallelism()) + 1);
+    }
+
+    private static TokenBuffer lex(byte[] input, SymbolTable symbols,
+            Options options, ForkJoinPool pool, int chunkSize) {
+        List<Chunk> chunks = split(input, chunkSize);
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (Chunk c : chunks)
+            tasks.add(pool.submit(() -> c.lex(input, options, 0)));
+        for (ForkJoinTask<?> t : tasks)
+            t.join();
+
+        // fix up chunks that really start inside a comment
+        for (int i = 1; i < chunks.size(); i++) {
+            int depth = chunks.get(i - 1).lexer.commentDepth();
+            if (depth > 0)
+                chunks.get(i).lex(input, options, depth);
+        }
+
+        int count = 0;
+        for (Chunk c : chunks)
+            count += c.lexer.tokens().size();
+        TokenBuffer tokens = new TokenBuffer(symbols, count);
+        for (int i = 0; i < chunks.size(); i++) {
+            TokenBuffer part = chunks.get(i).lexer.tokens();
+            SymbolTable local = part.symbols();
+            int[] map = new int[local.size()];
+            for (int id = 0; id < map.length; id++)
+                map[id] = symbols.intern(local.get(id).name).id;
+            // only the last chunk's TOKEN_EOF is the real one
+            boolean last = i == chunks.size() - 1;
+            tokens.append(part, last ? part.size() : part.size() - 1, map);
+        }
+        return tokens;
+    }
+
+    // cut input into chunks of about chunkSize bytes, each ending just
+    // after a '\n' (or at the end of input)
+    private static List<Chunk> split(byte[] input, int chunkSize) {
+        List<Chunk> chunks = new ArrayList<>();
+        int from = 0;
+        while (from < input.length || chunks.isEmpty()) {
+            int to = (int) Math.min((long) from + chunkSize, input.length);
+            while (to < input.length && input[to - 1] != '\n')
+                to++;
+            chunks.add(new Chunk(from, to));
+            from = to;
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,189 @@
+package lexer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The bytes of a source file, as seen by the lexer.
+ *
+ * A source exposes a window buf[0..limit) that the lexer indexes directly,
+ * so reading a character is an array access instead of a virtual call.
+ * When the lexer runs off the end of the window it calls refill(), which
+ * slides the window forward and fills it in bulk.
+ */
+public abstract class Source {
+    // default window size for stream and mapped sources
+    static final int WINDOW = 64 * 1024;
+
+    protected byte[] buf; // the current window
+    protected int limit; // number of valid bytes in buf
+    protected int base; // offset of buf[0] in the whole input
+    protected int start; // index in buf where reading begins
+
+    /**
+     * Slide the window forward. Bytes from index keep up to limit are
+     * still in use by the lexer and must stay in the (possibly reallocated)
+     * window; base is advanced by however far the window moved.
+     *
+     * @return number of new bytes, or -1 at end of input
+     */
+    protected abstract int refill(int keep) throws IOException;
+
+    // total length of the input, or -1 if it is not known up front
+    public long length() {
+        return -1;
+    }
+
+    public void close() throws IOException {
+    }
+
+    // move buf[keep..limit) to the front of the window, growing the
+    // window if the retained bytes already fill it
+    final void compact(int keep) {
+        int kept = limit - keep;
+        byte[] dst = buf;
+        if (kept == buf.length)
+            dst = new byte[buf.length * 2];
+        System.arraycopy(buf, keep, dst, 0, kept);
+        buf = dst;
+        limit = kept;
+        base += keep;
+    }
+
+    // in-memory source; the whole input is the window
+    static final class Bytes extends Source {
+        Bytes(byte[] bytes, int from, int to) {
+            this.buf = bytes;
+            this.start = from;
+            this.limit = to;
+        }
+
+        @Override
+        protected int refill(int keep) {
+            return -1;
+        }
+
+        @Override
+        public long length() {
+            return limit - start;
+        }
+    }
+
+    // bulk-filled window over an input stream
+    static final class Stream extends Source {
+        private InputStream in;
+
+        Stream(InputStream in, int window) {
+            this.in = in;
+            this.buf = new byte[window];
+        }
+
+        @Override
+        protected int refill(int keep) throws IOException {
+            compact(keep);
+            int n = in.read(buf, limit, buf.length - limit);
+            if (n > 0)
+                limit += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    // window copied out of a memory-mapped file; the copy is a memcpy from
+    // the page cache, with no read() system call per window
+    static final class Mapped extends Source {
+        // files larger than this are mapped one region at a time
+        private static final long REGION = 1L << 30;
+
+        private FileChannel channel;
+        private MappedByteBuffer map;
+        private long mapStart; // file offset of the current mapping
+        private long size;
+
+        Mapped(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            this.buf = new byte[WINDOW];
+            this.map = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    Math.min(size, REGION));
+        }
+
+        @Override
+        protected int refill(int keep) throws IOException {
+            compact(keep);
+            if (!map.hasRemaining()) {
+                mapStart += map.capacity();
+                if (mapStart >= size)
+                    return -1;
+                map = channel.map(FileChannel.MapMode.READ_ONLY, mapStart,
+                        Math.min(size - mapStart, REGION));
+            }
+            int n = Math.min(buf.length - limit, map.remaining());
+            map.get(buf, limit, n);
+            limit += n;
+            return n;
+        }
+
+        @Override
+        public long length() {
+            return size;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    // files at least this large are memory-mapped by open(String)
+    static final long MAP_THRESHOLD = 1L << 20;
+
+    public static Source of(byte[] bytes) {
+        return new Bytes(bytes, 0, bytes.length);
+    }
+
+    // bytes[from..to) of a larger input; offsets stay relative to bytes[0]
+    public static Source of(byte[] bytes, int from, int to) {
+        return new Bytes(bytes, from, to);
+    }
+
+    public static Source of(CharSequence text) {
+        return of(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Source of(InputStream in) {
+        return new Stream(in, WINDOW);
+    }
+
+    public static Source of(InputStream in, int window) {
+        return new Stream(in, window);
+    }
+
+    public static Source map(String fileName) throws IOException {
+        return new Mapped(new RandomAccessFile(fileName, "r").getChannel());
+    }
+
+    // open a file on disk: small files are read into memory in one go,
+    // large ones are memory-mapped
+    public static Source open(String fileName) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(fileName, "r");
+        long size = file.length();
+        if (size >= MAP_THRESHOLD)
+            return new Mapped(file.getChannel());
+        try {
+            byte[] bytes = new byte[(int) size];
+            file.readFully(bytes);
+            return of(bytes);
+        } finally {
+            file.close();
+        }
+    }
+}
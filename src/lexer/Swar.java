@@ -0,0 +1,100 @@
+package lexer;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Byte searches for the lexer's skipping loops, eight bytes at a time.
+ *
+ * Each search reads the window as little-endian longs ("SIMD within a
+ * register"), two per iteration, and compares all their bytes at once;
+ * the bytes left over at the end of the window are handled one by one.
+ * Every method returns the index of the first byte in buf[from..to) that
+ * stops the search, or to if there is none.
+ */
+final class Swar {
+    private static final VarHandle LONGS = MethodHandles
+            .byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW7 = 0x7f7f7f7f7f7f7f7fL;
+    private static final long HIGH = 0x8080808080808080L;
+
+    private static final long SPACES = ' ' * ONES;
+    private static final long TABS = '\t' * ONES;
+    private static final long NLS = '\n' * ONES;
+    private static final long CRS = '\r' * ONES;
+    private static final long STARS = '*' * ONES;
+    private static final long SLASHES = '/' * ONES;
+
+    // the high bit of each byte of w that equals the byte repeated in b
+    private static long eq(long w, long b) {
+        long x = w ^ b;
+        // exact: no borrow can cross from one byte into the next
+        return ~(((x & LOW7) + LOW7) | x | LOW7);
+    }
+
+    private static long word(byte[] buf, int i) {
+        return (long) LONGS.get(buf, i);
+    }
+
+    // index of the byte whose high bit is the lowest set in mask
+    private static int first(int i, long mask) {
+        return i + (Long.numberOfTrailingZeros(mask) >>> 3);
+    }
+
+    // first byte that is neither ' ' nor '\t'
+    static int skipSpaces(byte[] buf, int from, int to) {
+        int i = from;
+        for (; i + 16 <= to; i += 16) {
+            long a = word(buf, i);
+            long b = word(buf, i + 8);
+            long ma = ~(eq(a, SPACES) | eq(a, TABS)) & HIGH;
+            long mb = ~(eq(b, SPACES) | eq(b, TABS)) & HIGH;
+            if ((ma | mb) != 0)
+                return ma != 0 ? first(i, ma) : first(i + 8, mb);
+        }
+        for (; i < to; i++)
+            if (buf[i] != ' ' && buf[i] != '\t')
+                return i;
+        return to;
+    }
+
+    // first '\n' or '\r'
+    static int findNewline(byte[] buf, int from, int to) {
+        int i = from;
+        for (; i + 16 <= to; i += 16) {
+            long a = word(buf, i);
+            long b = word(buf, i + 8);
+            long ma = eq(a, NLS) | eq(a, CRS);
+            long mb = eq(b, NLS) | eq(b, CRS);
+            if ((ma | mb) != 0)
+                return ma != 0 ? first(i, ma) : first(i + 8, mb);
+        }
+        for (; i < to; i++)
+            if (buf[i] == '\n' || buf[i] == '\r')
+                return i;
+        return to;
+    }
+
+    // first byte a block comment cares about: '*' or '/' (which may close
+    // or open a comment), or '\n' or '\r' (which start a line)
+    static int findCommentStop(byte[] buf, int from, int to) {
+        int i = from;
+        for (; i + 16 <= to; i += 16) {
+            long a = word(buf, i);
+            long b = word(buf, i + 8);
+            long ma = eq(a, STARS) | eq(a, SLASHES) | eq(a, NLS) | eq(a, CRS);
+            long mb = eq(b, STARS) | eq(b, SLASHES) | eq(b, NLS) | eq(b, CRS);
+            if ((ma | mb) != 0)
+                return ma != 0 ? first(i, ma) : first(i + 8, mb);
+        }
+        for (; i < to; i++) {
+            byte c = buf[i];
+            if (c == '*' || c == '/' || c == '\n' || c == '\r')
+                return i;
+        }
+        return to;
+    }
+}
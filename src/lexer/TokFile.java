@@ -0,0 +1,201 @@
+package lexer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import util.SymbolTable;
+
+/**
+ * The binary ".tok" format: a TokenBuffer on disk, so that a token stream
+ * can be cached, compared, or handed to the parser without lexing again.
+ *
+ * All numbers are unsigned LEB128 varints.
+ *
+ *   "TOK" version             4 bytes
+ *   kind count                must match Token.Kind
+ *   per kind: length + 1      0 if tokens of the kind vary in length
+ *   symbol count, then for each: length, ISO-8859-1 bytes
+ *   line count, then the distance from each line start to the next
+ *   token count, then for each token:
+ *     kind ordinal
+ *     distance from the end of the previous token to its start
+ *     length                  only if the kind varies in length
+ *     symbol                  only if the kind carries one (ID, NUM)
+ *
+ * Symbols are numbered locally, in order of first use, and are interned
+ * into the reader's table on the way in.
+ */
+public final class TokFile {
+    private static final byte[] MAGIC = { 'T', 'O', 'K', 1 };
+
+    private static final class Out {
+        byte[] buf = new byte[64 * 1024];
+        int len;
+
+        void varint(int v) {
+            if (len + 5 > buf.length)
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            while ((v & ~0x7f) != 0) {
+                buf[len++] = (byte) ((v & 0x7f) | 0x80);
+                v >>>= 7;
+            }
+            buf[len++] = (byte) v;
+        }
+
+        void bytes(byte[] b) {
+            if (len + b.length > buf.length)
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2,
+                        len + b.length));
+            System.arraycopy(b, 0, buf, len, b.length);
+            len += b.length;
+        }
+    }
+
+    private static final class In {
+        final byte[] buf;
+        int pos;
+
+        In(byte[] buf) {
+            this.buf = buf;
+        }
+
+        int varint() throws IOException {
+            int v = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                if (pos >= buf.length)
+                    throw new IOException("truncated .tok file");
+                int b = buf[pos++];
+                v |= (b & 0x7f) << shift;
+                if (b >= 0)
+                    return v;
+            }
+            throw new IOException("bad varint in .tok file");
+        }
+    }
+
+    public static void write(TokenBuffer tokens, OutputStream os)
+            throws IOException {
+        int kinds = TokenBuffer.KINDS.length;
+        int n = tokens.size();
+
+        // which kinds have a fixed length, and which carry symbols
+        int[] fixed = new int[kinds];
+        Arrays.fill(fixed, -1);
+        boolean[] varies = new boolean[kinds];
+        for (int i = 0; i < n; i++) {
+            int k = tokens.kindOrdinal(i);
+            if (fixed[k] == -1)
+                fixed[k] = tokens.length(i);
+            else if (fixed[k] != tokens.length(i))
+                varies[k] = true;
+        }
+
+        // number the symbols in order of first use
+        int[] local = new int[Math.max(16, tokens.symbols().size())];
+        Arrays.fill(local, -1);
+        Out syms = new Out();
+        int nsyms = 0;
+        Out body = new Out();
+        body.varint(n);
+        int prevEnd = 0;
+        for (int i = 0; i < n; i++) {
+            int k = tokens.kindOrdinal(i);
+            body.varint(k);
+            body.varint(tokens.start(i) - prevEnd);
+            if (varies[k])
+                body.varint(tokens.length(i));
+            prevEnd = tokens.start(i) + tokens.length(i);
+            if (k == Token.Kind.TOKEN_ID.ordinal()
+                    || k == Token.Kind.TOKEN_NUM.ordinal()) {
+                int id = tokens.symbolId(i);
+                if (id >= local.length) {
+                    int old = local.length;
+                    local = Arrays.copyOf(local, Math.max(id + 1, old * 2));
+                    Arrays.fill(local, old, local.length, -1);
+                }
+                if (local[id] == -1) {
+                    local[id] = nsyms++;
+                    byte[] name = tokens.symbols().get(id).name
+                            .getBytes(StandardCharsets.ISO_8859_1);
+                    syms.varint(name.length);
+                    syms.bytes(name);
+                }
+                body.varint(local[id]);
+            }
+        }
+
+        Out head = new Out();
+        head.bytes(MAGIC);
+        head.varint(kinds);
+        for (int k = 0; k < kinds; k++)
+            head.varint(varies[k] || fixed[k] == -1 ? 0 : fixed[k] + 1);
+        head.varint(nsyms);
+        os.write(head.buf, 0, head.len);
+        os.write(syms.buf, 0, syms.len);
+
+        Out lines = new Out();
+        lines.varint(tokens.lineCount());
+        for (int l = 2; l <= tokens.lineCount(); l++)
+            lines.varint(tokens.lineStart(l) - tokens.lineStart(l - 1));
+        os.write(lines.buf, 0, lines.len);
+        os.write(body.buf, 0, body.len);
+        os.flush();
+    }
+
+    public static TokenBuffer read(InputStream is, SymbolTable symbols)
+            throws IOException {
+        In in = new In(is.readAllBytes());
+        for (byte b : MAGIC)
+            if (in.pos >= in.buf.length || in.buf[in.pos++] != b)
+                throw new IOException("not a .tok file");
+        int kinds = in.varint();
+        if (kinds != TokenBuffer.KINDS.length)
+            throw new IOException(".tok file has " + kinds
+                    + " token kinds, expected " + TokenBuffer.KINDS.length);
+        int[] fixed = new int[kinds];
+        for (int k = 0; k < kinds; k++)
+            fixed[k] = in.varint() - 1;
+
+        int[] ids = new int[in.varint()];
+        for (int s = 0; s < ids.length; s++) {
+            int len = in.varint();
+            if (len > in.buf.length - in.pos)
+                throw new IOException("truncated .tok file");
+            ids[s] = symbols.intern(in.buf, in.pos, len,
+                    SymbolTable.hash(in.buf, in.pos, len)).id;
+            in.pos += len;
+        }
+
+        int nlines = in.varint();
+        int[] lineStarts = new int[Math.max(nlines, 1)];
+        for (int l = 1; l < nlines; l++)
+            lineStarts[l] = lineStarts[l - 1] + in.varint();
+
+        int n = in.varint();
+        TokenBuffer tokens = new TokenBuffer(symbols, Math.max(n, 16));
+        for (int l = 1; l < nlines; l++)
+            tokens.addLine(lineStarts[l]);
+        int prevEnd = 0;
+        for (int i = 0; i < n; i++) {
+            int k = in.varint();
+            if (k >= kinds)
+                throw new IOException("bad token kind in .tok file");
+            int start = prevEnd + in.varint();
+            int len = fixed[k] >= 0 ? fixed[k] : in.varint();
+            int sym = TokenBuffer.NO_SYMBOL;
+            if (k == Token.Kind.TOKEN_ID.ordinal()
+                    || k == Token.Kind.TOKEN_NUM.ordinal()) {
+                int s = in.varint();
+                if (s >= ids.length)
+                    throw new IOException("bad symbol in .tok file");
+                sym = ids[s];
+            }
+            tokens.add(TokenBuffer.KINDS[k], start, len, sym);
+            prevEnd = start + len;
+        }
+        return tokens;
+    }
+}
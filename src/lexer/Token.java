@@ -1,5 +1,7 @@
 package lexer;
 
+import util.Symbol;
+
 public class Token {
     // Lab 1, exercise 1: read the MiniJava specification
     // carefully, and answer these two questions:
@@ -57,7 +59,7 @@ public class Token {
     }
 
     public Kind kind; // kind of the token
-    private String lexeme; // extra lexeme for this token, if any
+    private Symbol lexeme; // extra lexeme for this token, if any
     private Integer lineNum; // on which line of the source file this token appears
     private Integer colNum;
 
@@ -69,7 +71,7 @@ public class Token {
         this.colNum = colNum;
     }
 
-    Token(Kind kind, Integer lineNum, Integer colNum, String lexeme) {
+    Token(Kind kind, Integer lineNum, Integer colNum, Symbol lexeme) {
         this(kind, lineNum, colNum);
         this.lexeme = lexeme;
     }
@@ -88,6 +90,10 @@ public class Token {
     }
 
     public String getLexeme() {
+        return lexeme == null ? null : lexeme.name;
+    }
+
+    public Symbol getSymbol() {
         return lexeme;
     }
 
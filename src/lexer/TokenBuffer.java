@@ -0,0 +1,272 @@
+package lexer;
+
+import java.util.Arrays;
+
+import lexer.Token.Kind;
+import util.Symbol;
+import util.SymbolTable;
+
+/**
+ * The tokens of one source file, packed into parallel int arrays.
+ *
+ * Token i has kind kinds[i] (a Kind ordinal), occupies the bytes
+ * [start(i), start(i) + length(i)) of the input, and, for identifiers and
+ * integer literals, carries the id of its interned Symbol. Line and column
+ * are not stored per token; they are derived on demand from the offsets at
+ * which lines start.
+ *
+ * A buffer read as a window onto the input (see discard()) holds only the
+ * tokens and lines from some point on, and still numbers lines from the
+ * start of the input.
+ */
+public final class TokenBuffer {
+    public static final Kind[] KINDS = Kind.values();
+    public static final int NO_SYMBOL = -1;
+
+    private int[] kinds;
+    private int[] starts;
+    private int[] lengths;
+    private int[] syms;
+    private int size;
+
+    private int[] lineStarts; // input offset of the first byte of each line
+    private int lines;
+    private int linesDropped; // before lineStarts[0], by discard()
+
+    private final SymbolTable symbols;
+
+    public TokenBuffer(SymbolTable symbols) {
+        this(symbols, 1024);
+    }
+
+    public TokenBuffer(SymbolTable symbols, int capacity) {
+        this.symbols = symbols;
+        this.kinds = new int[capacity];
+        this.starts = new int[capacity];
+        this.lengths = new int[capacity];
+        this.syms = new int[capacity];
+        this.lineStarts = new int[Math.max(16, capacity / 8)];
+        this.lines = 1; // line 1 starts at offset 0
+    }
+
+    public int add(Kind kind, int start, int length, int sym) {
+        if (size == kinds.length) {
+            int n = size * 2;
+            kinds = Arrays.copyOf(kinds, n);
+            starts = Arrays.copyOf(starts, n);
+            lengths = Arrays.copyOf(lengths, n);
+            syms = Arrays.copyOf(syms, n);
+        }
+        kinds[size] = kind.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        syms[size] = sym;
+        return size++;
+    }
+
+    // record that a new line starts at the given input offset
+    public void addLine(int start) {
+        if (lines == lineStarts.length)
+            lineStarts = Arrays.copyOf(lineStarts, lines * 2);
+        lineStarts[lines++] = start;
+    }
+
+    // forget all tokens and lines, keeping the room they took
+    void clear() {
+        size = 0;
+        lines = 1;
+        linesDropped = 0;
+    }
+
+    // Forget the first count tokens, and the lines before the one the
+    // first token left starts on; the tokens left move to the front.
+    void discard(int count) {
+        int n = size - count;
+        System.arraycopy(kinds, count, kinds, 0, n);
+        System.arraycopy(starts, count, starts, 0, n);
+        System.arraycopy(lengths, count, lengths, 0, n);
+        System.arraycopy(syms, count, syms, 0, n);
+        size = n;
+        int first = n > 0 ? lineIndex(starts[0]) : lines - 1;
+        System.arraycopy(lineStarts, first, lineStarts, 0, lines - first);
+        lines -= first;
+        linesDropped += first;
+    }
+
+    // Append the first count tokens of other, which lexed the input that
+    // follows ours, and the lines it started. Symbol ids are translated
+    // through symbolMap (other's id -> ours), or kept if it is null.
+    public void append(TokenBuffer other, int count, int[] symbolMap) {
+        int n = size + count;
+        if (n > kinds.length) {
+            kinds = Arrays.copyOf(kinds, n);
+            starts = Arrays.copyOf(starts, n);
+            lengths = Arrays.copyOf(lengths, n);
+            syms = Arrays.copyOf(syms, n);
+        }
+        System.arraycopy(other.kinds, 0, kinds, size, count);
+        System.arraycopy(other.starts, 0, starts, size, count);
+        System.arraycopy(other.lengths, 0, lengths, size, count);
+        for (int i = 0; i < count; i++) {
+            int id = other.syms[i];
+            syms[size + i] = (id == NO_SYMBOL || symbolMap == null) ? id
+                    : symbolMap[id];
+        }
+        size = n;
+
+        // other's line 1 is the line we ended on
+        for (int l = 1; l < other.lines; l++)
+            addLine(other.lineStarts[l]);
+    }
+
+    // Replace tokens [from, to) with the first count tokens of other, which
+    // relexed the input from offset textFrom on after an edit that moved
+    // what follows by delta bytes; tokens after to start delta later. Our
+    // lines that start after oldTextTo (where the tokens from to on start)
+    // move too, and other's lines in between replace ours. Both buffers
+    // must intern into the same symbol table.
+    public void splice(int from, int to, TokenBuffer other, int count,
+            int textFrom, int oldTextTo, int delta) {
+        int n = size - (to - from) + count;
+        if (n > kinds.length) {
+            int c = Math.max(n, kinds.length * 2);
+            kinds = Arrays.copyOf(kinds, c);
+            starts = Arrays.copyOf(starts, c);
+            lengths = Arrays.copyOf(lengths, c);
+            syms = Arrays.copyOf(syms, c);
+        }
+        int tail = size - to;
+        System.arraycopy(kinds, to, kinds, from + count, tail);
+        System.arraycopy(starts, to, starts, from + count, tail);
+        System.arraycopy(lengths, to, lengths, from + count, tail);
+        System.arraycopy(syms, to, syms, from + count, tail);
+        System.arraycopy(other.kinds, 0, kinds, from, count);
+        System.arraycopy(other.starts, 0, starts, from, count);
+        System.arraycopy(other.lengths, 0, lengths, from, count);
+        System.arraycopy(other.syms, 0, syms, from, count);
+        for (int i = from + count; i < n; i++)
+            starts[i] += delta;
+        size = n;
+
+        // lines: ours up to textFrom, other's up to the resynchronization
+        // point, then ours again
+        int keep = lineIndex(textFrom) + 1;
+        int resume = lineIndex(oldTextTo) + 1;
+        int added = 0;
+        for (int l = 1; l < other.lines; l++)
+            if (other.lineStarts[l] > textFrom
+                    && other.lineStarts[l] <= oldTextTo + delta)
+                added++;
+        int m = keep + added + (lines - resume);
+        if (m > lineStarts.length)
+            lineStarts = Arrays.copyOf(lineStarts, Math.max(m,
+                    lineStarts.length * 2));
+        System.arraycopy(lineStarts, resume, lineStarts, keep + added,
+                lines - resume);
+        for (int l = keep + added; l < m; l++)
+            lineStarts[l] += delta;
+        int at = keep;
+        for (int l = 1; l < other.lines; l++)
+            if (other.lineStarts[l] > textFrom
+                    && other.lineStarts[l] <= oldTextTo + delta)
+                lineStarts[at++] = other.lineStarts[l];
+        lines = m;
+    }
+
+    // same tokens, lexemes and lines as other
+    public boolean contentEquals(TokenBuffer other) {
+        if (size != other.size || lines != other.lines)
+            return false;
+        for (int i = 0; i < size; i++)
+            if (kinds[i] != other.kinds[i] || starts[i] != other.starts[i]
+                    || lengths[i] != other.lengths[i]
+                    || symbol(i) != other.symbol(i)
+                    && !symbol(i).name.equals(other.symbol(i).name))
+                return false;
+        for (int l = 0; l < lines; l++)
+            if (lineStarts[l] != other.lineStarts[l])
+                return false;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int lineCount() {
+        return linesDropped + lines;
+    }
+
+    // input offset at which the given line (from 1) starts
+    public int lineStart(int line) {
+        return lineStarts[line - 1 - linesDropped];
+    }
+
+    public SymbolTable symbols() {
+        return symbols;
+    }
+
+    public int kindOrdinal(int i) {
+        return kinds[i];
+    }
+
+    public Kind kind(int i) {
+        return KINDS[kinds[i]];
+    }
+
+    public int start(int i) {
+        return starts[i];
+    }
+
+    public int length(int i) {
+        return lengths[i];
+    }
+
+    public int symbolId(int i) {
+        return syms[i];
+    }
+
+    public Symbol symbol(int i) {
+        return syms[i] == NO_SYMBOL ? null : symbols.get(syms[i]);
+    }
+
+    // the line (from 1) of the given input offset
+    public int lineOf(int offset) {
+        return linesDropped + lineIndex(offset) + 1;
+    }
+
+    // the index in lineStarts of the line of the given input offset
+    private int lineIndex(int offset) {
+        int lo = 0;
+        int hi = lines - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (lineStarts[mid] <= offset)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        return lo;
+    }
+
+    public int line(int i) {
+        return lineOf(starts[i]);
+    }
+
+    // the column (from 1) of token i
+    public int column(int i) {
+        return starts[i] - lineStarts[lineIndex(starts[i])] + 1;
+    }
+
+    // token i as a standalone object
+    public Token token(int i) {
+        Symbol s = symbol(i);
+        if (s == null)
+            return new Token(kind(i), line(i), column(i));
+        return new Token(kind(i), line(i), column(i), s);
+    }
+
+    public String toString(int i) {
+        return token(i).toString();
+    }
+}
@@ -0,0 +1,141 @@
+package lexer;
+
+import control.CompilerContext;
+import lexer.Token.Kind;
+import util.Symbol;
+
+/**
+ * A position in a TokenBuffer, as seen by the parser.
+ *
+ * The cursor either reads a buffer that is already complete, or pulls
+ * tokens from a lexer as lookahead requires, or takes the batches a lexer
+ * on another thread sends down a TokenPipe as lookahead reaches them.
+ * Moving it and looking ahead are plain index arithmetic; nothing is
+ * allocated per token.
+ *
+ * A cursor over a lexer can also keep only a window of its tokens: those
+ * more than a given number behind the cursor are discarded a batch at a
+ * time, so that reading a file of any size takes the same memory. Token
+ * indexes still count from the start of the file, but only those in the
+ * window can be looked up, through the cursor.
+ */
+public final class TokenCursor {
+    // tokens discarded at once, at least, by a cursor with a window
+    private static final int BATCH = 1024;
+
+    private final TokenBuffer tokens;
+    private final Lexer lexer; // fills tokens on demand, or null
+    private final TokenPipe pipe; // or sends them, or null
+    private final int keep; // tokens kept behind the cursor; -1 for all
+    private int base; // tokens discarded before the first in tokens
+    private int pos; // in tokens
+
+    public TokenCursor(Lexer lexer) {
+        this(lexer, -1);
+    }
+
+    private TokenCursor(Lexer lexer, int keep) {
+        this.lexer = lexer;
+        this.pipe = null;
+        this.keep = keep;
+        this.tokens = lexer.tokens();
+        fill(0);
+    }
+
+    // the tokens sent down pipe, kept as they arrive
+    public TokenCursor(TokenPipe pipe) {
+        this.lexer = null;
+        this.pipe = pipe;
+        this.keep = -1;
+        this.tokens = pipe.newBuffer();
+        fill(0);
+    }
+
+    public TokenCursor(TokenBuffer tokens) {
+        this(tokens, 0);
+    }
+
+    public TokenCursor(TokenBuffer tokens, int pos) {
+        this.lexer = null;
+        this.pipe = null;
+        this.keep = -1;
+        this.tokens = tokens;
+        this.pos = pos;
+    }
+
+    // The tokens of source, lexed as the cursor reaches them, keeping only
+    // the last keep tokens behind it and those looked ahead at.
+    public static TokenCursor window(String fileName, Source source,
+            CompilerContext context, int keep) {
+        return new TokenCursor(new Lexer(fileName, source, context,
+                keep + BATCH + 16), keep);
+    }
+
+    // make token i (in tokens) available, if the input has that many;
+    // returns the index of the token to use for i (the last one,
+    // TOKEN_EOF, past it)
+    private int fill(int i) {
+        if (pipe != null)
+            while (i >= tokens.size() && pipe.take(tokens))
+                ;
+        else if (lexer != null && i >= tokens.size()) {
+            if (keep >= 0 && pos >= keep + BATCH) {
+                int drop = pos - keep;
+                lexer.discard(drop);
+                base += drop;
+                pos -= drop;
+                i -= drop;
+            }
+            while (i >= tokens.size() && lexer.scan())
+                ;
+        }
+        return i < tokens.size() ? i : tokens.size() - 1;
+    }
+
+    // the tokens read; with a window, from token discarded() on
+    public TokenBuffer tokens() {
+        return tokens;
+    }
+
+    // the number of tokens discarded from the front of tokens()
+    public int discarded() {
+        return base;
+    }
+
+    // index of the current token
+    public int index() {
+        return base + pos;
+    }
+
+    public Kind kind() {
+        return tokens.kind(pos);
+    }
+
+    // kind of the token k positions ahead of the current one
+    public Kind kind(int k) {
+        return tokens.kind(fill(pos + k));
+    }
+
+    public void advance() {
+        pos = fill(pos + 1);
+    }
+
+    public void seek(int i) {
+        pos = fill(i - base);
+    }
+
+    // the symbol of token i, which must be in the window, or null
+    public Symbol symbol(int i) {
+        return tokens.symbol(i - base);
+    }
+
+    // the line of token i, which must be in the window
+    public int line(int i) {
+        return tokens.line(i - base);
+    }
+
+    // the column of token i, which must be in the window
+    public int column(int i) {
+        return tokens.column(i - base);
+    }
+}
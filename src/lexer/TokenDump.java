@@ -0,0 +1,123 @@
+package lexer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import util.Symbol;
+
+/**
+ * Writes tokens in the format of Token.toString(), one per line, without
+ * creating a Token or a String per token.
+ *
+ * Lines are formatted straight into a reusable byte buffer that is written
+ * out in large blocks. Lines are found by walking the line index along with
+ * the tokens instead of searching it for each one.
+ */
+public final class TokenDump {
+    private static final byte[][] KIND_NAMES;
+    private static final byte[] NONE = bytes("<NONE>");
+    private static final byte[] AT_LINE = bytes(" : at line ");
+    private static final byte[] AT_COLUMN = bytes(";at column ");
+    private static final byte[] NEWLINE = bytes(System.lineSeparator());
+
+    static {
+        KIND_NAMES = new byte[TokenBuffer.KINDS.length][];
+        for (Token.Kind k : TokenBuffer.KINDS)
+            KIND_NAMES[k.ordinal()] = bytes(k.toString() + ": ");
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private final OutputStream out;
+    private byte[] buf = new byte[64 * 1024];
+    private int len;
+    private byte[][] names = new byte[256][]; // symbol id -> its bytes
+
+    public TokenDump(OutputStream out) {
+        this.out = out;
+    }
+
+    // dump tokens [from, to) of tokens
+    public void write(TokenBuffer tokens, int from, int to) throws IOException {
+        if (from >= to)
+            return;
+        int line = tokens.line(from);
+        int next = line < tokens.lineCount() ? tokens.lineStart(line + 1)
+                : Integer.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            int start = tokens.start(i);
+            while (start >= next) {
+                line++;
+                next = line < tokens.lineCount() ? tokens.lineStart(line + 1)
+                        : Integer.MAX_VALUE;
+            }
+            put(KIND_NAMES[tokens.kindOrdinal(i)]);
+            int sym = tokens.symbolId(i);
+            put(sym == TokenBuffer.NO_SYMBOL ? NONE
+                    : name(tokens, sym));
+            put(AT_LINE);
+            putInt(line);
+            put(AT_COLUMN);
+            putInt(start - tokens.lineStart(line) + 1);
+            put(NEWLINE);
+        }
+    }
+
+    private byte[] name(TokenBuffer tokens, int id) {
+        if (id >= names.length) {
+            byte[][] n = new byte[Math.max(id + 1, names.length * 2)][];
+            System.arraycopy(names, 0, n, 0, names.length);
+            names = n;
+        }
+        if (names[id] == null) {
+            Symbol s = tokens.symbols().get(id);
+            names[id] = bytes(s.name);
+        }
+        return names[id];
+    }
+
+    private void put(byte[] b) throws IOException {
+        if (b.length > buf.length - len)
+            drain();
+        if (b.length > buf.length) {
+            out.write(b);
+            return;
+        }
+        System.arraycopy(b, 0, buf, len, b.length);
+        len += b.length;
+    }
+
+    private void putInt(int n) throws IOException {
+        if (len > buf.length - 16)
+            drain();
+        int end = len + stringSize(n);
+        int i = end;
+        do {
+            buf[--i] = (byte) ('0' + n % 10);
+            n /= 10;
+        } while (n != 0);
+        len = end;
+    }
+
+    private static int stringSize(int n) {
+        int size = 1;
+        while (n >= 10) {
+            n /= 10;
+            size++;
+        }
+        return size;
+    }
+
+    private void drain() throws IOException {
+        out.write(buf, 0, len);
+        len = 0;
+    }
+
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+}
@@ -0,0 +1,169 @@
+package lexer;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.locks.LockSupport;
+
+import control.CompilerContext;
+import control.Metrics;
+import util.SymbolTable;
+
+/**
+ * Tokens on their way from a lexer on one thread to a parser on another.
+ *
+ * The pipe is a bounded ring of records, four ints each: a token's kind,
+ * start, length and symbol id, or, for a new line, LINE and the offset it
+ * starts at. There is one producer and one consumer. The producer writes
+ * records ahead of tail and publishes a batch of them by moving tail; the
+ * consumer reads up to tail and frees what it read by moving head. Each
+ * index is written by one side only, so neither side takes a lock. A side
+ * that finds the ring full (the parser has fallen behind) or empty spins
+ * for a while, then yields, then parks briefly, and looks again.
+ */
+public final class TokenPipe {
+    static final int LINE = -1; // the kind of a new line record
+    private static final int RECORD = 4; // ints per record
+    private static final int BATCH = 512; // tokens the lexer publishes at once
+    private static final int SPINS = 64;
+
+    private final int[] ring;
+    private final int capacity; // records; a power of two
+    private final int mask;
+    private final SymbolTable symbols; // the lexer interns names in
+    private final int expected; // tokens, as a guess
+
+    private volatile long head; // records the consumer has taken
+    private volatile long tail; // records the producer has published
+    private volatile boolean closed; // no record will follow tail
+    private volatile Throwable failure; // why the producer stopped, if early
+    private volatile boolean cancelled; // the consumer wants no more
+
+    // the producer's
+    private long put; // records written, published or not
+    private long free; // put may reach this before head must be read again
+    private long sent; // tokens
+
+    private TokenPipe(int capacity, SymbolTable symbols, int expected) {
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.ring = new int[capacity * RECORD];
+        this.symbols = symbols;
+        this.expected = expected;
+    }
+
+    // Lex source on a thread of its own, into a new pipe. The lex phase is
+    // timed on that thread, so its wall time overlaps the parser's.
+    public static TokenPipe lex(String fileName, Source source,
+            CompilerContext context) {
+        // MiniJava averages a token per four or five bytes
+        TokenPipe pipe = new TokenPipe(1 << 14, context.symbols,
+                source.length() < 0 ? 1024
+                        : (int) Math.min(source.length() / 4 + 16,
+                                Integer.MAX_VALUE - 8));
+        Lexer lexer = new Lexer(fileName, source, context, BATCH + 16);
+        Thread t = new Thread(() -> pipe.produce(lexer, context.metrics),
+                "lexer");
+        t.setDaemon(true);
+        t.start();
+        return pipe;
+    }
+
+    // the lexer thread: scan all of the input, a batch at a time
+    private void produce(Lexer lexer, Metrics metrics) {
+        Metrics.Timer lex = metrics.start("lex");
+        try {
+            TokenBuffer tokens = lexer.tokens();
+            int eof = Token.Kind.TOKEN_EOF.ordinal();
+            // TOKEN_EOF goes in the last batch, which tells scan() to stop
+            while (lexer.scan())
+                if (tokens.size() >= BATCH
+                        && tokens.kindOrdinal(tokens.size() - 1) != eof)
+                    lexer.drainTo(this);
+            // before the parser can see TOKEN_EOF, and finish
+            lex.stop(sent + tokens.size(), "tokens");
+            lexer.drainTo(this);
+        } catch (CancellationException e) {
+            // nobody is reading
+        } catch (Throwable e) {
+            failure = e;
+        } finally {
+            closed = true;
+        }
+    }
+
+    // wait a little longer, the spins-th time
+    private static void pause(int spins) {
+        if (spins < SPINS)
+            Thread.onSpinWait();
+        else if (spins < 2 * SPINS)
+            Thread.yield();
+        else
+            LockSupport.parkNanos(20_000);
+    }
+
+    // a record, once the ring has room for it
+    private void put(int kind, int start, int length, int sym) {
+        if (put == free) {
+            tail = put; // the consumer may be waiting on what we have
+            for (int spins = 0; (free = head + capacity) == put; spins++) {
+                if (cancelled)
+                    throw new CancellationException();
+                pause(spins);
+            }
+        }
+        int at = (int) (put & mask) * RECORD;
+        ring[at] = kind;
+        ring[at + 1] = start;
+        ring[at + 2] = length;
+        ring[at + 3] = sym;
+        put++;
+    }
+
+    // Send the lines tokens started and then its tokens, and publish them.
+    void send(TokenBuffer tokens) {
+        for (int l = 2; l <= tokens.lineCount(); l++)
+            put(LINE, tokens.lineStart(l), 0, 0);
+        for (int i = 0, n = tokens.size(); i < n; i++)
+            put(tokens.kindOrdinal(i), tokens.start(i), tokens.length(i),
+                    tokens.symbolId(i));
+        sent += tokens.size();
+        tail = put;
+    }
+
+    // a buffer for the consumer to take tokens into
+    TokenBuffer newBuffer() {
+        return new TokenBuffer(symbols, expected);
+    }
+
+    // Append the records published so far to tokens, waiting for some if
+    // there are none; false once there will be no more.
+    public boolean take(TokenBuffer tokens) {
+        long from = head;
+        long to;
+        for (int spins = 0; (to = tail) == from; spins++) {
+            if (closed && (to = tail) == from) {
+                if (failure != null)
+                    throw new IllegalStateException("the lexer failed",
+                            failure);
+                return false;
+            }
+            pause(spins);
+        }
+        for (long r = from; r < to; r++) {
+            int at = (int) (r & mask) * RECORD;
+            int kind = ring[at];
+            if (kind == LINE)
+                tokens.addLine(ring[at + 1]);
+            else
+                tokens.add(TokenBuffer.KINDS[kind], ring[at + 1],
+                        ring[at + 2], ring[at + 3]);
+        }
+        head = to;
+        return true;
+    }
+
+    // Stop the lexer, if it is still running; what it would send is not
+    // wanted.
+    public void cancel() {
+        cancelled = true;
+    }
+}
@@ -0,0 +1,26 @@
+package parser;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// The parse of a class declaration, for Java Flight Recorder. There is
+// one for every class, so it goes without a stack trace.
+@Name("tiger.ClassDecl")
+@Label("Parse Class")
+@Category({ "Tiger", "Parser" })
+@Description("The parse of one class declaration, methods included")
+@StackTrace(false)
+final class ClassDeclEvent extends Event {
+    @Label("Class")
+    String name;
+
+    @Label("Line")
+    int line;
+
+    @Label("Tokens")
+    int tokens;
+}
@@ -0,0 +1,420 @@
+package parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ast.Ast;
+import ast.Dependencies;
+import ast.NodeKind;
+import control.CompilerContext;
+import lexer.Token.Kind;
+import lexer.TokenBuffer;
+import lexer.TokenCursor;
+import util.Symbol;
+
+/**
+ * The classes of a program as it was last compiled, so that the next
+ * compile of it only rebuilds the classes that changed and the classes
+ * that depend on them.
+ *
+ * The program is cut into units at its "class" keywords, as ParallelParser
+ * cuts it: the first unit holds the main class, and each other one a class
+ * declaration (and whatever errors follow it). For each unit the index
+ * keeps a hash of its tokens (their kinds and names, not where they are),
+ * the name of the class it declares, the classes it depends on (see
+ * Dependencies), and its syntax tree and errors, with their tokens
+ * counted from the start of the unit.
+ *
+ * A unit whose hash is not in the previous index, or whose class is gone,
+ * changed; every unit that depends on a changed class, directly or not,
+ * is rebuilt with it. The rest are taken from the index, wherever they
+ * moved to in the file, and the tree is put together as the sequential
+ * parse builds it, node for node.
+ *
+ * On disk, an index is a table of the class names, then the units, with
+ * their dependencies as indexes into the table; all numbers are varints,
+ * as in .tok files.
+ */
+public final class ClassIndex {
+    private static final int MAGIC = 0x54474901; // "TGI" 1
+
+    private static final class Unit {
+        long hash;
+        String name; // the class declared, or null
+        String[] dependencies;
+        int[] nodes; // kind, token, first child, next sibling; in the unit
+        int[] roots; // of the declarations, in nodes
+        int[] errors; // token, found, expected (-1 for none)
+
+        // add the nodes to ast, for the unit's tokens from the one at from
+        void copy(Ast ast, int from) {
+            ast.copy(nodes, ast.extend(nodes.length / 4), from);
+        }
+    }
+
+    // the index of a file compiled once, whose classes are not kept yet
+    public static final ClassIndex EMPTY = new ClassIndex();
+
+    private final List<Unit> units = new ArrayList<>();
+    private Ast ast;
+    private List<Diagnostic> diagnostics;
+    private int reused;
+
+    private ClassIndex() {
+    }
+
+    // the tree of the program
+    public Ast ast() {
+        return ast;
+    }
+
+    // the syntax errors of the program, as a sequential parse finds them
+    public List<Diagnostic> diagnostics() {
+        return diagnostics;
+    }
+
+    // units taken from the previous index
+    public int reused() {
+        return reused;
+    }
+
+    // units parsed again
+    public int rebuilt() {
+        return units.size() - reused;
+    }
+
+    // the hash of the tokens [from, to) and the kind of the one at to,
+    // which a parse of them looks at; names count by their characters
+    private static long hash(TokenBuffer tokens, int from, int to) {
+        long h = 0xcbf29ce484222325L; // FNV-1a
+        for (int i = from; i <= to; i++) {
+            h = (h ^ tokens.kindOrdinal(i)) * 0x100000001b3L;
+            Symbol s = tokens.symbol(i);
+            if (s == null || i == to)
+                continue;
+            String name = s.name;
+            for (int c = 0; c < name.length(); c++)
+                h = (h ^ name.charAt(c)) * 0x100000001b3L;
+            // the end of the name
+            h = (h ^ 0xffff) * 0x100000001b3L;
+        }
+        return from == 0 ? ~h : h;
+    }
+
+    // Parse the tokens of a program, reusing what before (if not null)
+    // has of its classes, add its errors to the context's diagnostics,
+    // and return the index of it.
+    public static ClassIndex parse(TokenBuffer tokens,
+            CompilerContext context, ClassIndex before) {
+        // the units, cut at the "class" keywords
+        List<Integer> starts = new ArrayList<>();
+        int end = tokens.size() - 1; // TOKEN_EOF
+        int cls = Kind.TOKEN_CLASS.ordinal();
+        starts.add(0);
+        for (int i = 1; i < end; i++)
+            if (tokens.kindOrdinal(i) == cls)
+                starts.add(i);
+        starts.add(end);
+        int count = starts.size() - 1;
+
+        // what the previous compile had, by hash and by class
+        Map<Long, Unit> old = new HashMap<>();
+        Set<String> oldNames = new HashSet<>();
+        if (before != null)
+            for (Unit u : before.units) {
+                old.putIfAbsent(u.hash, u);
+                if (u.name != null)
+                    oldNames.add(u.name);
+            }
+
+        ClassIndex index = new ClassIndex();
+        Unit[] found = new Unit[count];
+        Set<String> changed = new HashSet<>();
+        Set<String> names = new HashSet<>();
+        for (int u = 0; u < count; u++) {
+            int from = starts.get(u);
+            long h = hash(tokens, from, starts.get(u + 1));
+            found[u] = old.get(h);
+            if (found[u] == null) {
+                Unit n = new Unit();
+                n.hash = h;
+                Symbol s = tokens.symbol(from + 1);
+                n.name = s == null ? null : s.name;
+                found[u] = n;
+                if (n.name != null)
+                    changed.add(n.name);
+            } else if (found[u].name != null)
+                names.add(found[u].name);
+        }
+        // classes removed changed too
+        for (String n : oldNames)
+            if (!names.contains(n))
+                changed.add(n);
+
+        // and so did every class that depends on one that changed
+        boolean[] rebuild = new boolean[count];
+        Map<String, List<Integer>> dependents = new HashMap<>();
+        for (int u = 0; u < count; u++) {
+            if (found[u].dependencies == null) {
+                rebuild[u] = true;
+                continue;
+            }
+            for (String d : found[u].dependencies)
+                dependents.computeIfAbsent(d, k -> new ArrayList<>()).add(u);
+        }
+        ArrayDeque<String> work = new ArrayDeque<>(changed);
+        while (!work.isEmpty())
+            for (int u : dependents.getOrDefault(work.poll(), List.of()))
+                if (!rebuild[u]) {
+                    rebuild[u] = true;
+                    if (found[u].name != null && changed.add(found[u].name))
+                        work.add(found[u].name);
+                }
+
+        // the trees of the units, parsed or taken from before, in order
+        // after the root
+        Ast ast = new Ast(tokens, context.options.astOffHeap);
+        int program = ast.add(NodeKind.PROGRAM, 0);
+        ast.setRoot(program);
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        int last = Ast.NIL;
+        int[] at = new int[count];
+        for (int u = 0; u < count; u++) {
+            int from = starts.get(u);
+            at[u] = ast.size();
+            Unit unit;
+            if (rebuild[u])
+                unit = parse(tokens, from, starts.get(u + 1), found[u], ast);
+            else {
+                unit = found[u];
+                unit.copy(ast, from);
+                index.reused++;
+            }
+            for (int r : unit.roots) {
+                int n = r + at[u];
+                if (last == Ast.NIL)
+                    ast.setFirstChild(program, n);
+                else
+                    ast.setNextSibling(last, n);
+                last = n;
+            }
+            for (int e = 0; e < unit.errors.length; e += 3)
+                diagnostics.add(new Diagnostic(unit.errors[e] + from,
+                        TokenBuffer.KINDS[unit.errors[e + 1]],
+                        unit.errors[e + 2] < 0 ? null
+                                : TokenBuffer.KINDS[unit.errors[e + 2]]));
+            index.units.add(unit);
+        }
+
+        // what the rebuilt classes depend on now
+        Dependencies dependencies = null;
+        for (int u = 0; u < count; u++)
+            if (rebuild[u]) {
+                if (dependencies == null)
+                    dependencies = new Dependencies(ast);
+                Set<String> d = new HashSet<>();
+                for (int r : index.units.get(u).roots)
+                    d.addAll(dependencies.of(r + at[u]));
+                index.units.get(u).dependencies = d.toArray(new String[0]);
+                Arrays.sort(index.units.get(u).dependencies);
+            }
+
+        // the sequential parse stops at the limit
+        int max = context.options.maxErrors;
+        if (max > 0 && diagnostics.size() > max)
+            diagnostics = new ArrayList<>(diagnostics.subList(0, max));
+        context.diagnostics().addAll(diagnostics);
+        index.ast = ast;
+        index.diagnostics = diagnostics;
+        return index;
+    }
+
+    // Parse the unit of tokens [from, to) into a new Unit like u, adding
+    // its nodes to ast.
+    private static Unit parse(TokenBuffer tokens, int from, int to, Unit u,
+            Ast ast) {
+        Unit unit = new Unit();
+        unit.hash = u.hash;
+        unit.name = u.name;
+        int at = ast.size();
+        List<Diagnostic> found = new ArrayList<>();
+        Parser parser = new Parser(new TokenCursor(tokens, from), ast, found,
+                true, 0);
+        List<Integer> roots = new ArrayList<>();
+        roots.add(parser.parseTopLevel(from == 0));
+        while (parser.index() < to)
+            roots.add(parser.parseTopLevel(false));
+        unit.roots = roots.stream().filter(r -> r != Ast.NIL)
+                .mapToInt(r -> r - at).toArray();
+
+        int size = ast.size() - at;
+        unit.nodes = new int[4 * size];
+        for (int n = 0; n < size; n++) {
+            int first = ast.firstChild(at + n);
+            int next = ast.nextSibling(at + n);
+            unit.nodes[4 * n] = ast.kind(at + n).ordinal();
+            unit.nodes[4 * n + 1] = ast.token(at + n) - from;
+            unit.nodes[4 * n + 2] = first == Ast.NIL ? Ast.NIL : first - at;
+            unit.nodes[4 * n + 3] = next == Ast.NIL ? Ast.NIL : next - at;
+        }
+        unit.errors = new int[3 * found.size()];
+        for (int e = 0; e < found.size(); e++) {
+            Diagnostic d = found.get(e);
+            unit.errors[3 * e] = d.token - from;
+            unit.errors[3 * e + 1] = d.found.ordinal();
+            unit.errors[3 * e + 2] = d.expected == null ? -1
+                    : d.expected.ordinal();
+        }
+        return unit;
+    }
+
+    // unsigned LEB128, as in .tok files, of v + 1, so that NIL is 0
+    private static final class Out {
+        byte[] buf = new byte[64 * 1024];
+        int len;
+
+        void varint(int v) {
+            if (len + 5 > buf.length)
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            v++;
+            while ((v & ~0x7f) != 0) {
+                buf[len++] = (byte) ((v & 0x7f) | 0x80);
+                v >>>= 7;
+            }
+            buf[len++] = (byte) v;
+        }
+
+        void varints(int[] vs) {
+            varint(vs.length);
+            for (int v : vs)
+                varint(v);
+        }
+
+        void string(String s) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            varint(b.length);
+            if (len + b.length > buf.length)
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2,
+                        len + b.length));
+            System.arraycopy(b, 0, buf, len, b.length);
+            len += b.length;
+        }
+
+        void hash(long h) {
+            varint((int) (h >>> 32));
+            varint((int) h);
+        }
+    }
+
+    private static final class In {
+        final byte[] buf;
+        int pos;
+
+        In(byte[] buf) {
+            this.buf = buf;
+        }
+
+        int varint() throws IOException {
+            int v = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                if (pos >= buf.length)
+                    throw new IOException("truncated class index");
+                int b = buf[pos++];
+                v |= (b & 0x7f) << shift;
+                if (b >= 0)
+                    return v - 1;
+            }
+            throw new IOException("bad varint in class index");
+        }
+
+        int count() throws IOException {
+            int n = varint();
+            if (n < 0 || n > buf.length - pos)
+                throw new IOException("bad count in class index");
+            return n;
+        }
+
+        int[] varints() throws IOException {
+            int[] vs = new int[count()];
+            for (int i = 0; i < vs.length; i++)
+                vs[i] = varint();
+            return vs;
+        }
+
+        String string() throws IOException {
+            int n = count();
+            pos += n;
+            return new String(buf, pos - n, n, StandardCharsets.UTF_8);
+        }
+
+        long hash() throws IOException {
+            return (long) varint() << 32 | varint() & 0xffffffffL;
+        }
+    }
+
+    public void write(OutputStream os) throws IOException {
+        Map<String, Integer> table = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        for (Unit u : units) {
+            if (u.name != null
+                    && table.putIfAbsent(u.name, names.size()) == null)
+                names.add(u.name);
+            for (String d : u.dependencies)
+                if (table.putIfAbsent(d, names.size()) == null)
+                    names.add(d);
+        }
+        Out out = new Out();
+        out.varint(MAGIC);
+        out.varint(names.size());
+        for (String n : names)
+            out.string(n);
+        out.varint(units.size());
+        for (Unit u : units) {
+            out.hash(u.hash);
+            out.varint(u.name == null ? -1 : table.get(u.name));
+            out.varint(u.dependencies.length);
+            for (String d : u.dependencies)
+                out.varint(table.get(d));
+            out.varints(u.nodes);
+            out.varints(u.roots);
+            out.varints(u.errors);
+        }
+        os.write(out.buf, 0, out.len);
+        os.flush();
+    }
+
+    public static ClassIndex read(InputStream is) throws IOException {
+        In in = new In(is.readAllBytes());
+        if (in.varint() != MAGIC)
+            throw new IOException("not a class index");
+        String[] names = new String[in.count()];
+        for (int i = 0; i < names.length; i++)
+            names[i] = in.string();
+        ClassIndex index = new ClassIndex();
+        int count = in.count();
+        for (int i = 0; i < count; i++) {
+            Unit u = new Unit();
+            u.hash = in.hash();
+            int name = in.varint();
+            u.name = name < 0 ? null : names[name];
+            u.dependencies = new String[in.count()];
+            for (int d = 0; d < u.dependencies.length; d++)
+                u.dependencies[d] = names[in.varint()];
+            u.nodes = in.varints();
+            u.roots = in.varints();
+            u.errors = in.varints();
+            index.units.add(u);
+        }
+        return index;
+    }
+}
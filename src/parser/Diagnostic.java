@@ -0,0 +1,32 @@
+package parser;
+
+import lexer.Token.Kind;
+import lexer.TokenBuffer;
+
+/**
+ * A syntax error, kept instead of printed: the token it was found at and
+ * what the parser expected there, if it was a single kind of token.
+ */
+public final class Diagnostic {
+    public final int token; // index in the token buffer
+    public final Kind found;
+    public final Kind expected; // or null
+
+    public Diagnostic(int token, Kind found, Kind expected) {
+        this.token = token;
+        this.found = found;
+        this.expected = expected;
+    }
+
+    // the same error after the tokens before it changed in number
+    public Diagnostic shifted(int by) {
+        return by == 0 ? this : new Diagnostic(token + by, found, expected);
+    }
+
+    // the message the parser prints for it
+    public String format(TokenBuffer tokens) {
+        String s = "ERROR: " + found + " at line " + tokens.line(token)
+                + ", column " + tokens.column(token);
+        return expected == null ? s : s + "; Expected " + expected;
+    }
+}
@@ -0,0 +1,277 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lexer.Token.Kind;
+
+/**
+ * An LL(1) grammar over the tokens of the lexer, and its parse table,
+ * computed from the rules as they are written:
+ *
+ *   Name ::= symbol symbol ... | symbol ... | (nothing)
+ *
+ * A symbol is the name of a rule (a nonterminal), of a Kind without its
+ * "TOKEN_" (a terminal), or an action, "#" and a name, which matches no
+ * input and is left to the parser to carry out. The first rule is the
+ * start. A grammar that is not LL(1) is an error, reported with the
+ * tokens on which two productions of a rule conflict.
+ *
+ * A production written after "else" is the one a parser falls back on
+ * when the next token predicts none of its rule (see fallback()), so that
+ * a syntax error is found at a token the production expects.
+ *
+ * Symbols are numbered terminals first (their Kind ordinals), then the
+ * nonterminals in the order of their rules, then the actions in the order
+ * they are first used; sets of terminals are bit sets, as in Parser.
+ */
+final class Grammar {
+    static final int TERMINALS = Kind.values().length;
+
+    private final List<String> nonterminals = new ArrayList<>();
+    private final List<String> actions = new ArrayList<>();
+    private final List<Integer> lhs = new ArrayList<>();
+    private final List<int[]> rhs = new ArrayList<>();
+    private final int[] otherwise; // by nonterminal: "else" production, or -1
+
+    private boolean[] nullable; // by nonterminal
+    private long[] first;
+    private long[] follow;
+    private int[] table; // nonterminal * TERMINALS + lookahead -> production
+
+    Grammar(String... rules) {
+        Map<String, Integer> names = new HashMap<>();
+        for (String rule : rules) {
+            String name = rule.substring(0, rule.indexOf("::=")).trim();
+            if (names.putIfAbsent(name, nonterminals.size()) != null)
+                throw new IllegalStateException("two rules for " + name);
+            nonterminals.add(name);
+        }
+        Map<String, Integer> actionIds = new HashMap<>();
+        otherwise = new int[rules.length];
+        Arrays.fill(otherwise, -1);
+        for (int r = 0; r < rules.length; r++) {
+            String body = rules[r].substring(rules[r].indexOf("::=") + 3);
+            for (String alternative : body.split("\\|", -1)) {
+                String[] words = alternative.trim().split("\\s+");
+                int from = 0;
+                if (words[0].equals("else")) {
+                    if (otherwise[r] >= 0)
+                        throw new IllegalStateException("two else in "
+                                + nonterminals.get(r));
+                    otherwise[r] = rhs.size();
+                    from = 1;
+                }
+                int[] symbols = new int[alternative.isBlank() ? 0
+                        : words.length - from];
+                for (int i = 0; i < symbols.length; i++)
+                    symbols[i] = symbol(words[from + i], names, actionIds);
+                lhs.add(TERMINALS + r);
+                rhs.add(symbols);
+            }
+        }
+        computeNullable();
+        computeFirst();
+        computeFollow();
+        computeTable();
+    }
+
+    private int symbol(String word, Map<String, Integer> names,
+            Map<String, Integer> actionIds) {
+        if (word.startsWith("#")) {
+            Integer id = actionIds.get(word);
+            if (id == null) {
+                id = actions.size();
+                actionIds.put(word, id);
+                actions.add(word.substring(1));
+            }
+            return TERMINALS + nonterminals.size() + id;
+        }
+        Integer n = names.get(word);
+        if (n != null)
+            return TERMINALS + n;
+        try {
+            return Kind.valueOf("TOKEN_" + word).ordinal();
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("no rule or token " + word);
+        }
+    }
+
+    private boolean isTerminal(int s) {
+        return s < TERMINALS;
+    }
+
+    private boolean isNonterminal(int s) {
+        return s >= TERMINALS && s < TERMINALS + nonterminals.size();
+    }
+
+    private void computeNullable() {
+        nullable = new boolean[nonterminals.size()];
+        for (boolean changed = true; changed;) {
+            changed = false;
+            for (int p = 0; p < rhs.size(); p++) {
+                int a = lhs.get(p) - TERMINALS;
+                if (!nullable[a] && nullable(rhs.get(p), 0)) {
+                    nullable[a] = true;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    // whether symbols[from..] can match no input
+    private boolean nullable(int[] symbols, int from) {
+        for (int i = from; i < symbols.length; i++) {
+            int s = symbols[i];
+            if (isTerminal(s) || isNonterminal(s)
+                    && !nullable[s - TERMINALS])
+                return false;
+        }
+        return true;
+    }
+
+    private void computeFirst() {
+        first = new long[nonterminals.size()];
+        for (boolean changed = true; changed;) {
+            changed = false;
+            for (int p = 0; p < rhs.size(); p++) {
+                int a = lhs.get(p) - TERMINALS;
+                long f = first[a] | first(rhs.get(p), 0);
+                if (f != first[a]) {
+                    first[a] = f;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    // the terminals that can start symbols[from..]
+    private long first(int[] symbols, int from) {
+        long f = 0;
+        for (int i = from; i < symbols.length; i++) {
+            int s = symbols[i];
+            if (isTerminal(s))
+                return f | 1L << s;
+            if (isNonterminal(s)) {
+                f |= first[s - TERMINALS];
+                if (!nullable[s - TERMINALS])
+                    return f;
+            }
+        }
+        return f;
+    }
+
+    private void computeFollow() {
+        follow = new long[nonterminals.size()];
+        for (boolean changed = true; changed;) {
+            changed = false;
+            for (int p = 0; p < rhs.size(); p++) {
+                int[] symbols = rhs.get(p);
+                for (int i = 0; i < symbols.length; i++) {
+                    if (!isNonterminal(symbols[i]))
+                        continue;
+                    int b = symbols[i] - TERMINALS;
+                    long f = follow[b] | first(symbols, i + 1);
+                    if (nullable(symbols, i + 1))
+                        f |= follow[lhs.get(p) - TERMINALS];
+                    if (f != follow[b]) {
+                        follow[b] = f;
+                        changed = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private void computeTable() {
+        table = new int[nonterminals.size() * TERMINALS];
+        Arrays.fill(table, -1);
+        for (int p = 0; p < rhs.size(); p++) {
+            int a = lhs.get(p) - TERMINALS;
+            long predict = first(rhs.get(p), 0);
+            if (nullable(rhs.get(p), 0))
+                predict |= follow[a];
+            for (int t = 0; t < TERMINALS; t++) {
+                if ((predict & 1L << t) == 0)
+                    continue;
+                int other = table[a * TERMINALS + t];
+                if (other >= 0)
+                    throw new IllegalStateException("not LL(1): "
+                            + nonterminals.get(a) + " has productions "
+                            + other + " and " + p + " on "
+                            + Kind.values()[t]);
+                table[a * TERMINALS + t] = p;
+            }
+        }
+    }
+
+    // the symbol parsing starts from
+    int start() {
+        return TERMINALS;
+    }
+
+    int nonterminals() {
+        return nonterminals.size();
+    }
+
+    int productions() {
+        return rhs.size();
+    }
+
+    // the symbols of production p
+    int[] production(int p) {
+        return rhs.get(p);
+    }
+
+    // the parse table: the production of nonterminal a on lookahead t at
+    // (a - TERMINALS) * TERMINALS + t, or -1
+    int[] table() {
+        return table.clone();
+    }
+
+    // the production of nonterminal a that matches nothing, or -1
+    int empty(int a) {
+        for (int p = 0; p < rhs.size(); p++)
+            if (lhs.get(p) == a && nullable(rhs.get(p), 0))
+                return p;
+        return -1;
+    }
+
+    // The production of nonterminal a to take on a token that predicts
+    // none: its "else" production, the one that matches nothing, or its
+    // only one; -1 if it has none of these.
+    int fallback(int a) {
+        if (otherwise[a - TERMINALS] >= 0)
+            return otherwise[a - TERMINALS];
+        if (empty(a) >= 0)
+            return empty(a);
+        int only = -1;
+        for (int p = 0; p < rhs.size(); p++)
+            if (lhs.get(p) == a) {
+                if (only >= 0)
+                    return -1;
+                only = p;
+            }
+        return only;
+    }
+
+    // the symbol of the rule called name
+    int nonterminal(String name) {
+        int n = nonterminals.indexOf(name);
+        if (n < 0)
+            throw new IllegalStateException("no rule " + name);
+        return TERMINALS + n;
+    }
+
+    int actions() {
+        return actions.size();
+    }
+
+    // the name of action symbol s, without its "#"
+    String action(int s) {
+        return actions.get(s - TERMINALS - nonterminals.size());
+    }
+}
@@ -0,0 +1,215 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import control.CompilerContext;
+import control.Options;
+import lexer.IncrementalLexer;
+import lexer.TokenBuffer;
+import lexer.TokenCursor;
+import util.SymbolTable;
+
+/**
+ * Parses a file once, then keeps its diagnostics up to date as it is
+ * edited, for tools that check the text on every keystroke.
+ *
+ * The tokens are kept by an IncrementalLexer, which reports which of them
+ * an edit replaced. The parse records an Outline of the declarations, and
+ * after an edit only the innermost method or class around the replaced
+ * tokens is parsed again: if it still ends at the token it ended at
+ * before, everything outside it parses as it did. Otherwise, parsing
+ * resumes at the start of the enclosing class and goes on to the end of
+ * the program, or to a class that starts where one did before.
+ *
+ * The parser recovers from errors as a full compile's does, and the
+ * diagnostics are those it finds, up to the -maxerrors of the context. A
+ * method or class that recovered from an error still ends at a token
+ * whatever came before it, so it can be parsed again on its own; only an
+ * error at the token it ends at, which the parse after it would not
+ * report again, ties it to what follows, and then parsing resumes.
+ *
+ * Every decision the parser makes looks at most one token past the one
+ * under the cursor, which is why a parse that stopped at the limit more
+ * than a token before the edit needs no work at all.
+ */
+public final class IncrementalParser {
+    private final IncrementalLexer lexer;
+    private final TokenBuffer tokens;
+    private final int maxErrors; // 0 for no limit
+    private Outline outline = new Outline();
+    private List<Diagnostic> diagnostics = new ArrayList<>();
+    private int stopped = -1; // token of the error the parse ended at
+
+    public IncrementalParser(byte[] text, CompilerContext context) {
+        this.lexer = new IncrementalLexer(text, context.symbols);
+        this.tokens = lexer.tokens();
+        this.maxErrors = context.options.maxErrors;
+        resume(-1, Integer.MAX_VALUE, 0);
+    }
+
+    public IncrementalParser(byte[] text, SymbolTable symbols) {
+        this(text, new CompilerContext(Options.DEFAULT, symbols));
+    }
+
+    public IncrementalParser(String text) {
+        this(text.getBytes(java.nio.charset.StandardCharsets.UTF_8),
+                new SymbolTable());
+    }
+
+    public TokenBuffer tokens() {
+        return tokens;
+    }
+
+    public byte[] text() {
+        return lexer.text();
+    }
+
+    // the syntax errors of the current text
+    public List<Diagnostic> diagnostics() {
+        return diagnostics;
+    }
+
+    // Replace removed bytes at offset with inserted, and check the text
+    // again.
+    public void edit(int offset, int removed, byte[] inserted) {
+        update(lexer.edit(offset, removed, inserted));
+    }
+
+    public void edit(int offset, int removed, String inserted) {
+        update(lexer.edit(offset, removed, inserted));
+    }
+
+    private void update(IncrementalLexer.Damage damage) {
+        int from = damage.from;
+        int shift = damage.shift();
+        if (stopped >= 0 && stopped + 1 < from)
+            return;
+
+        // the innermost declaration that starts before the damage and
+        // ends after it
+        int e = outline.before(from);
+        while (e >= 0 && outline.end(e) < damage.oldTo)
+            e = outline.parent(e);
+        for (; e >= 0; e = outline.parent(e))
+            if (reparse(e, damage.oldTo, shift))
+                return;
+
+        int top = outline.before(from);
+        resume(top < 0 ? -1 : outline.topLevel(top), damage.oldTo, shift);
+    }
+
+    // parse declaration e again, and keep the result if it ends where e
+    // did before; the diagnostics of e are replaced
+    private boolean reparse(int e, int oldTo, int shift) {
+        // a parse that ended at the limit ends elsewhere if the number of
+        // errors before it changes
+        if (stopped >= 0)
+            return false;
+        int start = outline.start(e);
+        int end = outline.end(e);
+        // those before e, and one at the "class" or "public" it starts
+        // with, from what precedes it
+        List<Diagnostic> found = new ArrayList<>();
+        boolean atEnd = false;
+        for (Diagnostic d : diagnostics)
+            if (d.token < start || d.token == start
+                    && outline.kind(e) != Outline.MAIN)
+                found.add(d);
+            else if (d.token == end)
+                atEnd = true;
+        int before = found.size();
+        Outline sub = new Outline();
+        Parser parser = new Parser(new TokenCursor(tokens, start), found,
+                maxErrors, sub);
+        try {
+            switch (outline.kind(e)) {
+            case Outline.MAIN:
+                parser.parseMainClass();
+                break;
+            case Outline.CLASS:
+                parser.parseClassDecl();
+                break;
+            default:
+                parser.parseMethod();
+            }
+        } catch (Parser.Abort a) {
+            return false;
+        }
+        if (parser.index() != end + shift)
+            return false;
+        // an error at the token e ends at may have been e's, or reported
+        // by what follows only because e did not
+        if (atEnd && (found.size() == before
+                || found.get(found.size() - 1).token != end + shift))
+            return false;
+
+        outline.replace(e, outline.skip(e), sub, outline.parent(e), shift);
+        for (Diagnostic d : diagnostics)
+            if (d.token > end)
+                found.add(d.shifted(shift));
+        diagnostics = found;
+        limit();
+        return true;
+    }
+
+    // Parse from the start of top-level entry top (from the beginning if
+    // it is -1 or the main class), keeping the entries and diagnostics
+    // before it. Once a class declaration starts past the damage, where a
+    // class started before, the rest is kept too, moved by shift tokens.
+    private void resume(int top, int oldTo, int shift) {
+        if (top <= 0)
+            top = -1;
+        int start = top < 0 ? 0 : outline.start(top);
+        int keep = top < 0 ? 0 : top;
+        // those before top, and one at its "class", from the class before
+        List<Diagnostic> found = new ArrayList<>();
+        if (top >= 0)
+            for (Diagnostic d : diagnostics)
+                if (d.token <= start)
+                    found.add(d);
+        Outline sub = new Outline();
+        Parser parser = new Parser(new TokenCursor(tokens, start), found,
+                maxErrors, sub);
+        int sync = outline.size(); // first old entry kept after the parse
+        try {
+            if (top < 0)
+                parser.parseTopLevel(true);
+            while (parser.atClassDecl()) {
+                // what a parse that ended at the limit left out is parsed
+                int was = parser.index() - shift;
+                if (was >= oldTo && stopped < 0) {
+                    int e = outline.before(was + 1);
+                    if (e >= keep && outline.start(e) == was
+                            && outline.kind(e) == Outline.CLASS) {
+                        sync = e;
+                        break;
+                    }
+                }
+                parser.parseTopLevel(false);
+            }
+            if (sync == outline.size())
+                parser.parseEnd();
+        } catch (Parser.Abort a) {
+            // at the limit
+        }
+
+        // the class before sync reported any error at its "class" again
+        if (sync < outline.size())
+            for (Diagnostic d : diagnostics)
+                if (d.token > outline.start(sync))
+                    found.add(d.shifted(shift));
+        diagnostics = found;
+        outline.replace(keep, sync, sub, -1, shift);
+        limit();
+    }
+
+    // keep the diagnostics up to the limit, as a parse that ends there
+    private void limit() {
+        stopped = -1;
+        if (maxErrors > 0 && diagnostics.size() >= maxErrors) {
+            diagnostics = new ArrayList<>(diagnostics.subList(0, maxErrors));
+            stopped = diagnostics.get(maxErrors - 1).token;
+        }
+    }
+}
@@ -0,0 +1,557 @@
+package parser;
+
+import java.util.Arrays;
+
+import ast.Ast;
+import ast.NodeKind;
+import control.CompilerContext;
+import lexer.Token.Kind;
+import lexer.TokenBuffer;
+
+/**
+ * A table-driven parser for the grammar Parser parses by recursive
+ * descent, building the same tree, node for node.
+ *
+ * The grammar is the one in the comments of Parser, made LL(1): without
+ * left recursion, with the binary operators a rule for each level of
+ * precedence, and left factored where two productions start alike (a
+ * field or a local of a class type and a statement both start with an
+ * identifier, as "int" and "int []" do). Grammar computes its parse table
+ * when the class is loaded. The parse keeps the symbols still to match on
+ * an explicit stack, so nesting is limited by the heap and not by the Java
+ * stack, and loops on that stack with no recursion at all.
+ *
+ * Actions in the grammar build the tree on a stack of values (nodes, each
+ * with its last child so far) and a stack of marks (the tokens binary
+ * nodes, and others, are built at):
+ *
+ *   #leaf:K    a node of kind K at the current token
+ *   #wrap:K    a node of kind K at the current token, over the last value
+ *   #mark      the current token, marked
+ *   #unmark    the last mark, dropped
+ *   #marked:K  a node of kind K at the last mark
+ *   #unary:K   a node of kind K at the last mark, over the last value
+ *   #binary:K  a node of kind K at the last mark, over the last two values
+ *   #append    the last value, appended to the children of the one before
+ *   #try:R     a rule R that recovers from errors, entered
+ *   #catch     the rule last entered, left
+ *
+ * Errors are recovered from where Parser recovers from them, on the same
+ * stack: an error unwinds it to the "#catch" of the innermost rule
+ * entered, drops the values and marks made since its "#try", and skips
+ * tokens to the synchronizing set Parser has for that rule (see
+ * recover()). Where the next token predicts no production, a rule goes on
+ * with its fallback (see Grammar.fallback()), as Parser goes on to the
+ * next token it expects, so each error is found at the token Parser finds
+ * it at, expecting the same kind: the errors are those of Parser, and so
+ * is the tree of what could be parsed, but for a parse ended at the limit
+ * of errors, where values not yet appended are left out.
+ */
+public final class LLParser {
+    private static final Grammar GRAMMAR = new Grammar(
+            // Program  ::=  MainClass ClassDecl*
+            "Program ::= #leaf:PROGRAM MainClass #append ClassDecls EOF",
+            "ClassDecls ::= ClassDecl #append ClassDecls |",
+            // MainClass  ::=  class id { public static void main ( String [] id ) { Statement} }
+            "MainClass ::= #try:main CLASS #leaf:MAIN_CLASS ID LBRACE PUBLIC"
+                    + " STATIC VOID MAIN LPAREN STRING LBRACK RBRACK #leaf:ID"
+                    + " #append ID RPAREN LBRACE #try:statement Statement"
+                    + " #catch #append RBRACE RBRACE #catch",
+            // ClassDecl  ::=  class id { VarDecl* MethodDecl* }
+            //            |    class id extends id { VarDecl* MethodDecl* }
+            "ClassDecl ::= CLASS #leaf:CLASS_DECL #try:class #try:header ID"
+                    + " Extends LBRACE #catch VarDecls MethodDecls RBRACE"
+                    + " #catch",
+            "Extends ::= EXTENDS #leaf:EXTENDS #append ID |",
+            "VarDecls ::= #try:field VarDecl #catch #append VarDecls |",
+            // VarDecl  ::=  Type id ;
+            "VarDecl ::= Type #wrap:VAR_DECL ID SEMI",
+            "MethodDecls ::= MethodDecl #append MethodDecls |",
+            // MethodDecl  ::=  public Type id ( FormalList ) { VarDecl* Statement* return Exp ;}
+            // with the locals and statements in any order, as Parser
+            // takes them
+            "MethodDecl ::= #try:method #try:signature PUBLIC Type"
+                    + " #wrap:METHOD_DECL ID LPAREN Params LBRACE #catch Body"
+                    + " #leaf:RETURN RETURN Exp #append #append SEMI RBRACE"
+                    + " #catch",
+            // FormalList  ::=  Type id FormalRest* |
+            // FormalRest  ::=  , Type id
+            // with the ")" after them
+            "Params ::= RPAREN | Formal FormalRest RPAREN",
+            "FormalRest ::= COMMA Formal FormalRest |",
+            "Formal ::= Type #wrap:FORMAL #append ID",
+            "Body ::= else #try:statement BodyItem #catch #append Body |",
+            "BodyItem ::= PrimitiveType #wrap:VAR_DECL ID SEMI"
+                    + " | #mark ID IdItem | Compound",
+            "IdItem ::= #marked:CLASS_TYPE #wrap:VAR_DECL ID SEMI"
+                    + " | IdStatement",
+            // Type  ::=  int [] | boolean | int | id
+            "Type ::= PrimitiveType | #leaf:CLASS_TYPE ID",
+            "PrimitiveType ::= #mark INT IntType"
+                    + " | #leaf:BOOLEAN_TYPE BOOLEAN",
+            "IntType ::= #marked:INT_ARRAY_TYPE LBRACK RBRACK"
+                    + " | #marked:INT_TYPE",
+            // Statement  ::=  { Statement* }
+            //            |    if ( Exp ) Statement else Statement
+            //            |    while ( Exp ) Statement
+            //            |    System.out.println ( Exp ) ;
+            //            |    id = Exp ;
+            //            |    id [ Exp ]= Exp ;
+            "Statements ::= #try:statement Statement #catch #append"
+                    + " Statements |",
+            "Statement ::= Compound | #mark ID IdStatement",
+            "Compound ::= #leaf:BLOCK LBRACE Statements RBRACE"
+                    + " | #leaf:IF IF LPAREN Exp #append RPAREN Statement"
+                    + " #append ELSE Statement #append"
+                    + " | #leaf:WHILE WHILE LPAREN Exp #append RPAREN"
+                    + " Statement #append"
+                    + " | #leaf:PRINT SYSTEM DOT OUT DOT PRINTLN LPAREN Exp"
+                    + " #append RPAREN SEMI",
+            "IdStatement ::= ASSIGN Exp #unary:ASSIGN SEMI"
+                    + " | LBRACK Exp RBRACK ASSIGN Exp #binary:ARRAY_ASSIGN"
+                    + " SEMI",
+            // Exp  ::=  Exp && Exp | Exp < Exp | Exp + Exp | Exp - Exp
+            //      |    Exp * Exp | ! Exp | Exp [ Exp ] | Exp . length
+            //      |    Exp . id ( ExpList ) | PrimaryExp
+            // from the loosest binary operator to "!", which applies to a
+            // primary expression and its suffixes; nothing follows
+            // ".length"
+            "Exp ::= Comparison AndRest",
+            "AndRest ::= #mark AND Comparison #binary:AND AndRest |",
+            "Comparison ::= Sum LtRest",
+            "LtRest ::= #mark LT Sum #binary:LT LtRest |",
+            "Sum ::= Product SumRest",
+            "SumRest ::= #mark ADD Product #binary:ADD SumRest"
+                    + " | #mark SUB Product #binary:SUB SumRest |",
+            "Product ::= Unary TimesRest",
+            "TimesRest ::= #mark TIMES Unary #binary:TIMES TimesRest |",
+            "Unary ::= #mark NOT Unary #unary:NOT | Primary Suffixes",
+            "Suffixes ::= #mark LBRACK Exp #binary:INDEX RBRACK Suffixes"
+                    + " | DOT Member |",
+            "Member ::= #wrap:LENGTH LENGTH"
+                    + " | else #wrap:CALL ID LPAREN Args Suffixes",
+            // ExpList  ::=  Exp ( , Exp )* |
+            // with the ")" after it
+            "Args ::= RPAREN | Exp #append ExpRest RPAREN",
+            "ExpRest ::= COMMA Exp #append ExpRest |",
+            // PrimaryExp  ::=  ( Exp ) | Num | true | false | this | id
+            //             |    new int [ Exp ] | new id ( )
+            "Primary ::= #leaf:NUM NUM | #leaf:TRUE TRUE | #leaf:FALSE FALSE"
+                    + " | #leaf:THIS THIS | #leaf:ID ID | LPAREN Exp RPAREN"
+                    + " | #mark NEW New",
+            "New ::= INT LBRACK Exp #unary:NEW_INT_ARRAY RBRACK"
+                    + " | #unmark #leaf:NEW_OBJECT ID LPAREN RPAREN");
+
+    private static final int TERMINALS = Grammar.TERMINALS;
+    // the first action symbol; the nonterminals are between
+    private static final int ACTIONS = TERMINALS + GRAMMAR.nonterminals();
+    private static final int[] TABLE = GRAMMAR.table();
+    private static final int CLASS_DECLS = GRAMMAR.nonterminal("ClassDecls");
+    private static final int[][] PUSH; // symbols of each production, last first
+
+    // what an action does
+    private static final int LEAF = 0;
+    private static final int WRAP = 1;
+    private static final int MARK = 2;
+    private static final int UNMARK = 3;
+    private static final int MARKED = 4;
+    private static final int UNARY = 5;
+    private static final int BINARY = 6;
+    private static final int APPEND = 7;
+    private static final int TRY = 8;
+    private static final int CATCH = 9;
+    private static final String[] OP_NAMES = { "leaf", "wrap", "mark",
+            "unmark", "marked", "unary", "binary", "append", "try",
+            "catch" };
+
+    // the rules that recover, as Parser's do
+    private static final int STATEMENT = 0;
+    private static final int FIELD = 1;
+    private static final int HEADER = 2; // of a class, up to its "{"
+    private static final int CLASS = 3;
+    private static final int SIGNATURE = 4; // of a method, up to its "{"
+    private static final int METHOD = 5;
+    private static final int MAIN = 6;
+    private static final String[] RULE_NAMES = { "statement", "field",
+            "header", "class", "signature", "method", "main" };
+
+    private static final int[] OPS; // by action
+    private static final NodeKind[] KINDS; // the node each builds, or null
+    private static final int[] RULES; // the rule each enters, or -1
+    private static final int CATCH_SYMBOL;
+
+    static {
+        PUSH = new int[GRAMMAR.productions()][];
+        for (int p = 0; p < PUSH.length; p++) {
+            int[] symbols = GRAMMAR.production(p);
+            PUSH[p] = new int[symbols.length];
+            for (int i = 0; i < symbols.length; i++)
+                PUSH[p][i] = symbols[symbols.length - 1 - i];
+        }
+        OPS = new int[GRAMMAR.actions()];
+        KINDS = new NodeKind[OPS.length];
+        RULES = new int[OPS.length];
+        for (int a = 0; a < OPS.length; a++) {
+            String action = GRAMMAR.action(ACTIONS + a);
+            int colon = action.indexOf(':');
+            String op = colon < 0 ? action : action.substring(0, colon);
+            OPS[a] = Arrays.asList(OP_NAMES).indexOf(op);
+            if (OPS[a] < 0)
+                throw new IllegalStateException("no action " + action);
+            RULES[a] = -1;
+            if (OPS[a] == TRY) {
+                RULES[a] = Arrays.asList(RULE_NAMES).indexOf(action
+                        .substring(colon + 1));
+                if (RULES[a] < 0)
+                    throw new IllegalStateException("no rule " + action);
+            } else if (colon >= 0)
+                KINDS[a] = NodeKind.valueOf(action.substring(colon + 1));
+        }
+        int leave = -1;
+        for (int a = 0; a < OPS.length; a++)
+            if (OPS[a] == CATCH)
+                leave = ACTIONS + a;
+        CATCH_SYMBOL = leave;
+        // On a token that predicts no production, a rule takes its
+        // fallback. The body of a method, whose fallback is an item of it,
+        // still ends at a "}" or at a token recovery always stops at, as
+        // Parser's loop over the body does.
+        long ends = Parser.RBRACE | Parser.HARD_SYNC;
+        for (int a = TERMINALS; a < ACTIONS; a++) {
+            int fallback = GRAMMAR.fallback(a);
+            int empty = GRAMMAR.empty(a);
+            for (int t = 0; t < TERMINALS; t++) {
+                int i = (a - TERMINALS) * TERMINALS + t;
+                if (TABLE[i] < 0)
+                    TABLE[i] = empty >= 0 && (ends & 1L << t) != 0 ? empty
+                            : fallback;
+            }
+        }
+    }
+
+    private static final int EOF = Kind.TOKEN_EOF.ordinal();
+    private static final int SEMI = Kind.TOKEN_SEMI.ordinal();
+    private static final int LBRACE = Kind.TOKEN_LBRACE.ordinal();
+    private static final int RBRACE = Kind.TOKEN_RBRACE.ordinal();
+    private static final int ELSE = Kind.TOKEN_ELSE.ordinal();
+    private static final int PUBLIC = Kind.TOKEN_PUBLIC.ordinal();
+    private static final int CLASS_TOKEN = Kind.TOKEN_CLASS.ordinal();
+
+    private final TokenBuffer tokens;
+    private final CompilerContext context;
+    private Ast ast;
+
+    private int pos; // the current token
+    private int current; // and its kind
+    private int[] symbols = new int[64]; // to match, the next on top
+    private int nSymbols;
+    private int[] values = new int[64]; // nodes
+    private int[] lasts = new int[64]; // the last child of each
+    private int nValues;
+    private int[] marks = new int[16]; // tokens
+    private int nMarks;
+    // the rules entered and not left: which, where its "#catch" is on the
+    // stack of symbols, and how many values and marks there were when each
+    // was entered
+    private int[] rules = new int[16];
+    private int[] ruleSymbols = new int[16];
+    private int[] ruleValues = new int[16];
+    private int[] ruleMarks = new int[16];
+    private int nRules;
+    private int errorToken; // the last token reported
+
+    // a parser of all of tokens, which adds the errors, if any, to the
+    // context's diagnostics
+    public LLParser(TokenBuffer tokens, CompilerContext context) {
+        this.tokens = tokens;
+        this.context = context;
+    }
+
+    // Parse the program into a syntax tree, and report its errors on the
+    // console, as Parser.parse() does.
+    public Ast parse() {
+        parseQuietly();
+        Parser.report(context.diagnostics(), tokens,
+                context.options.maxErrors);
+        return ast;
+    }
+
+    // parse the program into a syntax tree, leaving its errors in the
+    // context's diagnostics
+    public Ast parseQuietly() {
+        ast = new Ast(tokens, context.options.astOffHeap);
+        run();
+        return ast;
+    }
+
+    private void advance() {
+        if (pos < tokens.size() - 1)
+            pos++;
+        current = tokens.kindOrdinal(pos);
+    }
+
+    private void run() {
+        pos = 0;
+        current = tokens.kindOrdinal(0);
+        nSymbols = nValues = nMarks = nRules = 0;
+        errorToken = -1;
+        symbols[nSymbols++] = GRAMMAR.start();
+        while (nSymbols > 0) {
+            int s = symbols[--nSymbols];
+            if (s < TERMINALS) {
+                if (s == current)
+                    advance();
+                else if (!error(Kind.values()[s]))
+                    break;
+            } else if (s < ACTIONS) {
+                int p = TABLE[(s - TERMINALS) * TERMINALS + current];
+                if (p < 0) {
+                    if (!error(null))
+                        break;
+                    continue;
+                }
+                int[] push = PUSH[p];
+                if (nSymbols + push.length > symbols.length)
+                    symbols = Arrays.copyOf(symbols, Math.max(nSymbols
+                            + push.length, symbols.length * 2));
+                // most are a few symbols, too few for arraycopy
+                for (int i = 0; i < push.length; i++)
+                    symbols[nSymbols++] = push[i];
+            } else
+                act(s - ACTIONS);
+        }
+        ast.setRoot(values[0]);
+    }
+
+    // Report an error at the current token, where a token of the given
+    // kind was expected (null if not a single kind), once per token as
+    // Parser does, and recover from it; false at the context's limit of
+    // errors, which ends the parse.
+    private boolean error(Kind kind) {
+        if (pos != errorToken) {
+            errorToken = pos;
+            context.diagnostics().add(new Diagnostic(pos, tokens.kind(pos),
+                    kind));
+            if (context.diagnostics().size() == context.options.maxErrors)
+                return false;
+        }
+        recover();
+        return true;
+    }
+
+    /*
+     * Recover as the rule Parser is in recovers: leave the innermost rule
+     * entered, and all the symbols left of it, and keep of its values only
+     * its node, if the rule builds one and got as far; NIL if it does not.
+     * Then skip tokens as Parser does, and go on with the symbols after
+     * the rule, or, for the header of a class or a method that gets to the
+     * "{" of its body, with the body. A header that does not fails its
+     * class or method, at the same token. Outside any rule, the error is
+     * before the next class, and is skipped to it.
+     */
+    private void recover() {
+        boolean open = true; // whether the method's body is
+        for (;;) {
+            if (nRules == 0) {
+                skipToClass();
+                pushSymbol(EOF);
+                pushSymbol(CLASS_DECLS);
+                return;
+            }
+            int rule = rules[--nRules];
+            nSymbols = ruleSymbols[nRules];
+            int base = ruleValues[nRules];
+            nMarks = ruleMarks[nRules];
+            switch (rule) {
+                case STATEMENT:
+                case FIELD:
+                    nValues = base;
+                    push(Ast.NIL, Ast.NIL);
+                    skip(rule == FIELD ? Parser.FIELD_SYNC
+                            : Parser.STATEMENT_SYNC, 0);
+                    return;
+                case HEADER:
+                    nValues = base;
+                    skip(Parser.BODY_SYNC, 0);
+                    if (current == LBRACE)
+                        advance();
+                    else if (current != PUBLIC)
+                        continue;
+                    return;
+                case CLASS:
+                    nValues = base;
+                    skipToClass();
+                    return;
+                case SIGNATURE:
+                    keep(base, NodeKind.METHOD_DECL);
+                    skip(Parser.BODY_SYNC, 0);
+                    if (current != LBRACE) {
+                        open = false;
+                        continue;
+                    }
+                    advance();
+                    return;
+                case METHOD:
+                    keep(base, NodeKind.METHOD_DECL);
+                    skip(Parser.METHOD_SYNC, open ? 1 : 0);
+                    return;
+                default:
+                    // MAIN
+                    keep(base, NodeKind.MAIN_CLASS);
+                    skipToClass();
+                    return;
+            }
+        }
+    }
+
+    // Where on the stack of symbols the "#catch" of the rule just entered
+    // is: the first below that no "#try" of a rule inside it matches. The
+    // symbols between are of the production the "#try" is in, which is
+    // short.
+    private int leave() {
+        int inside = 0;
+        for (int i = nSymbols - 1;; i--) {
+            int s = symbols[i];
+            if (s < ACTIONS)
+                continue;
+            if (OPS[s - ACTIONS] == TRY)
+                inside++;
+            else if (s == CATCH_SYMBOL && inside-- == 0)
+                return i;
+        }
+    }
+
+    // keep of the values from base only a node of the given kind at base,
+    // or NIL
+    private void keep(int base, NodeKind kind) {
+        if (nValues > base && values[base] != Ast.NIL
+                && ast.kind(values[base]) == kind)
+            nValues = base + 1;
+        else {
+            nValues = base;
+            push(Ast.NIL, Ast.NIL);
+        }
+    }
+
+    private boolean in(long set) {
+        return (set & 1L << current) != 0;
+    }
+
+    // as Parser.skip(): tokens up to one in sync, with depth braces open
+    private void skip(long sync, int depth) {
+        while (!in(Parser.HARD_SYNC)) {
+            if (current == RBRACE) {
+                if (depth == 0)
+                    return;
+                advance();
+                if (--depth == 0 && (sync & Parser.RBRACE) != 0
+                        && current != ELSE)
+                    return;
+                continue;
+            }
+            if (depth == 0 && in(sync)) {
+                if (current == SEMI)
+                    advance();
+                return;
+            }
+            if (current == LBRACE)
+                depth++;
+            advance();
+        }
+    }
+
+    private void skipToClass() {
+        while (current != CLASS_TOKEN && current != EOF)
+            advance();
+    }
+
+    private void pushSymbol(int s) {
+        if (nSymbols == symbols.length)
+            symbols = Arrays.copyOf(symbols, nSymbols * 2);
+        symbols[nSymbols++] = s;
+    }
+
+    private void act(int a) {
+        NodeKind kind = KINDS[a];
+        switch (OPS[a]) {
+            case LEAF:
+                push(ast.add(kind, pos), Ast.NIL);
+                break;
+            case WRAP: {
+                int child = values[--nValues];
+                push(node(kind, pos, child, Ast.NIL), child);
+                break;
+            }
+            case MARK:
+                if (nMarks == marks.length)
+                    marks = Arrays.copyOf(marks, nMarks * 2);
+                marks[nMarks++] = pos;
+                break;
+            case UNMARK:
+                nMarks--;
+                break;
+            case MARKED:
+                push(ast.add(kind, marks[--nMarks]), Ast.NIL);
+                break;
+            case UNARY: {
+                int child = values[--nValues];
+                push(node(kind, marks[--nMarks], child, Ast.NIL), child);
+                break;
+            }
+            case BINARY: {
+                int right = values[--nValues];
+                int left = values[--nValues];
+                push(node(kind, marks[--nMarks], left, right), right);
+                break;
+            }
+            case APPEND: {
+                // a parent or child that is NIL, after an error, is left
+                // out, as in Parser
+                int child = values[--nValues];
+                int parent = values[nValues - 1];
+                if (child == Ast.NIL || parent == Ast.NIL)
+                    break;
+                int last = lasts[nValues - 1];
+                if (last == Ast.NIL)
+                    ast.setFirstChild(parent, child);
+                else
+                    ast.setNextSibling(last, child);
+                lasts[nValues - 1] = child;
+                break;
+            }
+            case TRY:
+                if (nRules == rules.length) {
+                    rules = Arrays.copyOf(rules, nRules * 2);
+                    ruleSymbols = Arrays.copyOf(ruleSymbols, nRules * 2);
+                    ruleValues = Arrays.copyOf(ruleValues, nRules * 2);
+                    ruleMarks = Arrays.copyOf(ruleMarks, nRules * 2);
+                }
+                rules[nRules] = RULES[a];
+                ruleSymbols[nRules] = leave();
+                ruleValues[nRules] = nValues;
+                ruleMarks[nRules++] = nMarks;
+                break;
+            default:
+                // CATCH
+                nRules--;
+        }
+    }
+
+    private void push(int node, int last) {
+        if (nValues == values.length) {
+            values = Arrays.copyOf(values, nValues * 2);
+            lasts = Arrays.copyOf(lasts, nValues * 2);
+        }
+        values[nValues] = node;
+        lasts[nValues++] = last;
+    }
+
+    // a node with one or two children
+    private int node(NodeKind kind, int token, int a, int b) {
+        int n = ast.add(kind, token);
+        ast.setFirstChild(n, a);
+        if (b != Ast.NIL)
+            ast.setNextSibling(a, b);
+        return n;
+    }
+}
@@ -0,0 +1,29 @@
+package parser;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// The parse of a method declaration, for Java Flight Recorder. There is
+// one for every method, so it goes without a stack trace.
+@Name("tiger.MethodDecl")
+@Label("Parse Method")
+@Category({ "Tiger", "Parser" })
+@Description("The parse of one method declaration")
+@StackTrace(false)
+final class MethodDeclEvent extends Event {
+    @Label("Class")
+    String className;
+
+    @Label("Method")
+    String name;
+
+    @Label("Line")
+    int line;
+
+    @Label("Tokens")
+    int tokens;
+}
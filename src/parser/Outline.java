@@ -0,0 +1,132 @@
+package parser;
+
+import java.util.Arrays;
+
+/**
+ * The declarations of a program with the token ranges they span: the main
+ * class, the other classes, and their methods, in the order they start.
+ *
+ * Entry e covers tokens [start(e), end(e)), or has an end of -1 if the
+ * parse stopped inside it; parent(e) is the entry of the class a method
+ * is declared in, or -1.
+ */
+final class Outline {
+    static final int MAIN = 0;
+    static final int CLASS = 1;
+    static final int METHOD = 2;
+
+    private int[] kinds = new int[16];
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int[] parents = new int[16];
+    private int size;
+
+    int open(int kind, int start, int parent) {
+        if (size == kinds.length) {
+            int n = size * 2;
+            kinds = Arrays.copyOf(kinds, n);
+            starts = Arrays.copyOf(starts, n);
+            ends = Arrays.copyOf(ends, n);
+            parents = Arrays.copyOf(parents, n);
+        }
+        kinds[size] = kind;
+        starts[size] = start;
+        ends[size] = -1;
+        parents[size] = parent;
+        return size++;
+    }
+
+    void close(int e, int end) {
+        ends[e] = end;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int kind(int e) {
+        return kinds[e];
+    }
+
+    int start(int e) {
+        return starts[e];
+    }
+
+    int end(int e) {
+        return ends[e];
+    }
+
+    int parent(int e) {
+        return parents[e];
+    }
+
+    // the entry after e and everything declared in it
+    int skip(int e) {
+        int next = e + 1;
+        while (next < size && parents[next] == e)
+            next++;
+        return next;
+    }
+
+    // the last entry that starts before the given token, or -1
+    int before(int token) {
+        int lo = -1;
+        int hi = size - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (starts[mid] < token)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        return lo;
+    }
+
+    // the top-level entry e is, or is declared in
+    int topLevel(int e) {
+        return parents[e] >= 0 ? parents[e] : e;
+    }
+
+    // Replace entries [from, to) with those of other, whose top-level
+    // entries get the given parent; the entries after them, and the end of
+    // the parent, move by shift tokens.
+    void replace(int from, int to, Outline other, int parent, int shift) {
+        int n = size - (to - from) + other.size;
+        int moved = other.size - (to - from);
+        if (n > kinds.length) {
+            int c = Math.max(n, kinds.length * 2);
+            kinds = Arrays.copyOf(kinds, c);
+            starts = Arrays.copyOf(starts, c);
+            ends = Arrays.copyOf(ends, c);
+            parents = Arrays.copyOf(parents, c);
+        }
+        int tail = size - to;
+        System.arraycopy(kinds, to, kinds, from + other.size, tail);
+        System.arraycopy(starts, to, starts, from + other.size, tail);
+        System.arraycopy(ends, to, ends, from + other.size, tail);
+        System.arraycopy(parents, to, parents, from + other.size, tail);
+        for (int i = 0; i < other.size; i++) {
+            kinds[from + i] = other.kinds[i];
+            starts[from + i] = other.starts[i];
+            ends[from + i] = other.ends[i];
+            parents[from + i] = other.parents[i] < 0 ? parent
+                    : other.parents[i] + from;
+        }
+        for (int i = from + other.size; i < n; i++) {
+            starts[i] += shift;
+            if (ends[i] >= 0)
+                ends[i] += shift;
+            if (parents[i] >= to)
+                parents[i] += moved;
+        }
+        // the class around them still ends where it did, moved as well
+        if (parent >= 0 && ends[parent] >= 0)
+            ends[parent] += shift;
+        size = n;
+    }
+
+    // drop the entries from e on
+    void truncate(int e) {
+        size = e;
+    }
+}
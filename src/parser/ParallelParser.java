@@ -0,0 +1,170 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import ast.Ast;
+import ast.NodeKind;
+import control.CompilerContext;
+import control.Options;
+import lexer.Token.Kind;
+import lexer.TokenBuffer;
+import lexer.TokenCursor;
+
+/**
+ * Parses a program whose tokens are all lexed, on several threads.
+ *
+ * Class declarations are independent of each other, and past the first
+ * token every "class" starts one, whatever errors come before it (see
+ * Parser.parseTopLevel). So the tokens are cut at "class" keywords into
+ * chunks of whole classes, and every chunk is parsed on the pool, with
+ * diagnostics of its own: the first into the tree of the program, after
+ * its root, the others into trees of their own, copied after it in order
+ * once all are done. A chunk creates its nodes in the order the sequential
+ * parse does, so the result is the same tree, node for node, and the same
+ * diagnostics.
+ *
+ * Brace matching would find the same boundaries in a program without
+ * errors, but not in one with a missing brace, where a sequential parse
+ * still starts a new class at the next "class".
+ */
+public final class ParallelParser {
+    // chunks of fewer tokens than this are not worth a task
+    static final int MIN_CHUNK = 16 * 1024;
+
+    private static final class Chunk {
+        final int from, to; // tokens, from a "class" (or 0) to the next
+        final List<Diagnostic> diagnostics = new ArrayList<>();
+        Ast ast; // where to parse into, if not a tree of its own
+        int[] roots = new int[8]; // top-level declarations, in ast
+        int count;
+
+        Chunk(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        void parse(TokenBuffer tokens) {
+            int size = to - from;
+            if (ast == null)
+                ast = new Ast(tokens, size / 2 + size / 8, false);
+            Parser parser = new Parser(new TokenCursor(tokens, from), ast,
+                    diagnostics, true, 0);
+            if (from == 0)
+                add(parser.parseTopLevel(true));
+            while (parser.index() < to)
+                add(parser.parseTopLevel(false));
+        }
+
+        private void add(int root) {
+            if (count == roots.length)
+                roots = Arrays.copyOf(roots, count * 2);
+            roots[count++] = root;
+        }
+    }
+
+    private final TokenBuffer tokens;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private final CompilerContext context;
+    private final int maxErrors;
+    private List<Diagnostic> diagnostics = new ArrayList<>();
+
+    public ParallelParser(TokenBuffer tokens, ForkJoinPool pool) {
+        this(tokens, pool, new CompilerContext(Options.DEFAULT,
+                tokens.symbols()));
+    }
+
+    // a parser for a compilation, as Parser(TokenCursor, CompilerContext)
+    public ParallelParser(TokenBuffer tokens, ForkJoinPool pool,
+            CompilerContext context) {
+        this(tokens, pool, context, Math.max(MIN_CHUNK,
+                tokens.size() / (4 * pool.getParallelism()) + 1));
+    }
+
+    // chunks of at least chunkSize tokens, if there are classes to cut at
+    public ParallelParser(TokenBuffer tokens, ForkJoinPool pool,
+            CompilerContext context, int chunkSize) {
+        this.tokens = tokens;
+        this.pool = pool;
+        this.context = context;
+        this.maxErrors = context.options.maxErrors;
+        this.chunkSize = chunkSize;
+    }
+
+    // the syntax errors found, as Parser finds them
+    public List<Diagnostic> diagnostics() {
+        return diagnostics;
+    }
+
+    // Parse the program into a syntax tree, and report its errors on the
+    // console, as Parser.parse() does.
+    public Ast parse() {
+        List<Chunk> chunks = split();
+        Ast ast = new Ast(tokens, context.options.astOffHeap);
+        int program = ast.add(NodeKind.PROGRAM, 0);
+        ast.setRoot(program);
+        chunks.get(0).ast = ast;
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (Chunk c : chunks)
+            tasks.add(pool.submit(() -> c.parse(tokens)));
+        for (ForkJoinTask<?> t : tasks)
+            t.join();
+
+        int[] at = new int[chunks.size()];
+        for (int i = 1; i < at.length; i++)
+            at[i] = ast.extend(chunks.get(i).ast.size());
+        tasks.clear();
+        for (int i = 1; i < at.length; i++) {
+            Chunk c = chunks.get(i);
+            int base = at[i];
+            tasks.add(pool.submit(() -> ast.copy(c.ast, base)));
+        }
+        for (ForkJoinTask<?> t : tasks)
+            t.join();
+
+        int last = Ast.NIL;
+        diagnostics = new ArrayList<>();
+        for (int i = 0; i < at.length; i++) {
+            Chunk c = chunks.get(i);
+            for (int r = 0; r < c.count; r++) {
+                if (c.roots[r] == Ast.NIL)
+                    continue;
+                int n = c.roots[r] + at[i];
+                if (last == Ast.NIL)
+                    ast.setFirstChild(program, n);
+                else
+                    ast.setNextSibling(last, n);
+                last = n;
+            }
+            diagnostics.addAll(c.diagnostics);
+        }
+        // the sequential parse stops at the limit
+        if (maxErrors > 0 && diagnostics.size() > maxErrors)
+            diagnostics = new ArrayList<>(diagnostics.subList(0, maxErrors));
+        context.diagnostics().addAll(diagnostics);
+        Parser.report(diagnostics, tokens, maxErrors);
+        return ast;
+    }
+
+    // cut the tokens into chunks of about chunkSize tokens, each but the
+    // first starting at a "class"
+    private List<Chunk> split() {
+        List<Chunk> chunks = new ArrayList<>();
+        int end = tokens.size() - 1; // TOKEN_EOF
+        int cls = Kind.TOKEN_CLASS.ordinal();
+        int from = 0;
+        for (int i = 1; i < end; i++) {
+            if (i - from >= chunkSize && tokens.kindOrdinal(i) == cls) {
+                chunks.add(new Chunk(from, i));
+                from = i;
+            }
+        }
+        chunks.add(new Chunk(from, end));
+        return chunks;
+    }
+}
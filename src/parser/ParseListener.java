@@ -0,0 +1,44 @@
+package parser;
+
+import ast.NodeKind;
+
+/**
+ * What a parse that builds no tree (Parser.stream) tells its caller, as it
+ * goes: each class (the main class first) and each method in it, entered
+ * and then exited, the statements in them as they start, nested ones
+ * included, and the syntax errors. The main class has no method around
+ * its statement.
+ *
+ * A class or method with an error is still exited, after the tokens
+ * skipped to recover. Each method returns whether to go on: the parse
+ * ends, with no more events, at the first that returns false.
+ */
+public interface ParseListener {
+    // a class, by its name ("?" if it has none), and the line it starts on
+    default boolean enterClass(String name, int line) {
+        return true;
+    }
+
+    default boolean exitClass() {
+        return true;
+    }
+
+    default boolean enterMethod(String name, int line) {
+        return true;
+    }
+
+    default boolean exitMethod() {
+        return true;
+    }
+
+    // a statement: a BLOCK, IF, WHILE, PRINT, ASSIGN or ARRAY_ASSIGN
+    default boolean statement(NodeKind kind, int line) {
+        return true;
+    }
+
+    // a syntax error, at the given line and column; d.token counts the
+    // tokens from the start of the file
+    default boolean error(Diagnostic d, int line, int column) {
+        return true;
+    }
+}
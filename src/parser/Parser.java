@@ -1,213 +1,512 @@
 package parser;
 
-import jdk.nashorn.internal.objects.NativeUint8Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ast.Ast;
+import ast.NodeKind;
+import control.CompilerContext;
+import control.Options;
 import lexer.Lexer;
-import lexer.Token;
+import lexer.Source;
 import lexer.Token.Kind;
+import lexer.TokenBuffer;
+import lexer.TokenCursor;
+import util.Symbol;
 
 public class Parser {
-    private Lexer lexer;
-    private Token current;
-    private int errors;
-    private Token errorToken;
+    private TokenCursor cursor;
+    private Kind current; // kind of the token under the cursor
+    private int errorToken = -1; // index of the last token reported
+    private final List<Diagnostic> diagnostics;
+    // whether to go on after an error (see skip()), or end the parse
+    private final boolean recover;
+    private final int maxErrors; // end the parse at this many; 0 for no limit
+    // where declarations are recorded as they are parsed, or null
+    private Outline outline;
+    private int outlineClass = -1; // outline entry of the enclosing class
+    private String className; // of the enclosing class, for events
+    private Ast ast; // the tree being built, or null for none
+    // told what is parsed, by a parse that builds no tree, or null
+    private ParseListener listener;
+    private int errors; // reported to listener
+
+    // thrown to end a parse: at its first error if it does not recover,
+    // or at its last one allowed
+    static final class Abort extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Abort() {
+            super(null, null, false, false);
+        }
+    }
+
+    // thrown at an error, up to the nearest rule that recovers from it
+    private static final class Panic extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Panic() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final Panic PANIC = new Panic();
+
+    // Tokens a parse that builds no tree keeps behind the cursor: it looks
+    // back no further than the name of a class or method it enters.
+    private static final int KEEP = 16;
 
     public Parser(String fileName, java.io.InputStream inputStream) {
-        lexer = new Lexer(fileName, inputStream);
-        current = lexer.nextToken();
-        errors = 0;
+        this(fileName, Source.of(inputStream));
+    }
+
+    public Parser(String fileName, Source source) {
+        this(fileName, source, new CompilerContext(Options.DEFAULT));
+    }
+
+    // a parser for a compilation: it lexes with the options of the
+    // context, and adds its errors to the context's diagnostics
+    public Parser(String fileName, Source source, CompilerContext context) {
+        this(new TokenCursor(new Lexer(fileName, source, context)), context);
+    }
+
+    public Parser(TokenCursor cursor) {
+        this(cursor, new CompilerContext(Options.DEFAULT,
+                cursor.tokens().symbols()));
+    }
+
+    public Parser(TokenCursor cursor, CompilerContext context) {
+        this(cursor, new Ast(cursor.tokens(), context.options.astOffHeap),
+                context.diagnostics(), true, context.options.maxErrors);
+    }
+
+    public Parser(TokenCursor cursor, Ast ast) {
+        this(cursor, ast, new ArrayList<>(), true, Options.DEFAULT.maxErrors);
+    }
+
+    Parser(TokenCursor cursor, Ast ast, List<Diagnostic> diagnostics,
+            boolean recover, int maxErrors) {
+        this.cursor = cursor;
+        this.ast = ast;
+        this.diagnostics = diagnostics;
+        this.recover = recover;
+        this.maxErrors = maxErrors;
+        current = cursor.kind();
+    }
+
+    // a parser that recovers from errors, adds them to diagnostics, ends
+    // when diagnostics holds maxErrors (0 for no limit), and records the
+    // declarations it parses in outline
+    Parser(TokenCursor cursor, List<Diagnostic> diagnostics, int maxErrors,
+            Outline outline) {
+        this(cursor, new Ast(cursor.tokens(), 64, false), diagnostics, true,
+                maxErrors);
+        this.outline = outline;
+    }
+
+    // index of the token under the cursor
+    int index() {
+        return cursor.index();
+    }
+
+    private int open(int kind) {
+        return outline == null ? -1
+                : outline.open(kind, cursor.index(), outlineClass);
+    }
+
+    private void close(int entry) {
+        if (outline != null)
+            outline.close(entry, cursor.index());
     }
 
     // utility methods to connect the lexer and the parser.
     private void advance() {
-        current = lexer.nextToken();
+        cursor.advance();
+        current = cursor.kind();
     }
 
     private void eatToken(Kind kind) {
-        if (kind == current.kind)
+        if (kind == current)
             advance();
         else {
             error(kind);
         }
     }
 
-    // reports an error to the console
+    // Report an error at the token under the cursor, where a token of the
+    // given kind was expected (null if not a single kind), and unwind to
+    // the nearest rule that recovers.
     private void error(Kind kind) {
         // only report error once per erroneous token
-        if (current == errorToken)
-            return;
-
-        errorToken = current; // set error token to prevent cascading
-        errors++; // increment error counter
+        if (cursor.index() != errorToken) {
+            errorToken = cursor.index();
+            Diagnostic d = new Diagnostic(errorToken, current, kind);
+            int n;
+            if (listener == null) {
+                diagnostics.add(d);
+                n = diagnostics.size();
+            } else {
+                n = ++errors;
+                if (!listener.error(d, cursor.line(errorToken),
+                        cursor.column(errorToken)))
+                    throw new Abort();
+            }
+            if (!recover || n == maxErrors)
+                throw new Abort();
+        }
+        throw PANIC;
+    }
 
-        // print error report
-        System.err.print("ERROR: " + current.kind.toString());
-        System.err.print(" at line " + current.getLineNum() + ", column " + current.getColNum());
-        if (kind == null) return;
-        System.err.println("; Expected " + kind.toString());
-        System.exit(0);
+    /*
+     * Panic-mode recovery. A rule that recovers catches the Panic of an
+     * error in it, skips tokens up to one of its synchronizing set and
+     * goes on from there: a statement up to a ";" (which it eats) or a
+     * token that starts a statement nothing else can start; a field up to
+     * a ";" or the type of the next one; the header of a method or a
+     * class up to the "{" of its body; a method past the "}" of its body.
+     * Braces in between are skipped in pairs, and as "public",
+     * "class" and the end of the file cannot be inside a method, skipping
+     * always stops at them, whatever braces are open.
+     *
+     * The rules that recover are those that parse statements, fields,
+     * methods and classes; between them, the statements, the members of a
+     * class and its classes are parsed one after the other however many
+     * errors there are, each reported once.
+     */
+    static final long RBRACE = set(Kind.TOKEN_RBRACE);
+    static final long HARD_SYNC = set(Kind.TOKEN_PUBLIC, Kind.TOKEN_CLASS,
+            Kind.TOKEN_EOF);
+    // a "}" in a set means that skipping also stops just after a "}" that
+    // closes all the braces open, unless an "else" follows
+    static final long STATEMENT_SYNC = set(Kind.TOKEN_SEMI,
+            Kind.TOKEN_RBRACE, Kind.TOKEN_IF, Kind.TOKEN_WHILE,
+            Kind.TOKEN_SYSTEM, Kind.TOKEN_RETURN);
+    static final long FIELD_SYNC = set(Kind.TOKEN_SEMI, Kind.TOKEN_INT,
+            Kind.TOKEN_BOOLEAN);
+    static final long METHOD_SYNC = RBRACE;
+    static final long BODY_SYNC = set(Kind.TOKEN_LBRACE);
 
+    private static long set(Kind... kinds) {
+        long set = 0;
+        for (Kind k : kinds)
+            set |= 1L << k.ordinal();
+        return set;
     }
 
-/*
-    below are method for parsing.
-    A bunch of parsing methods to parse expressions. The messy
-    parts are to deal with precedence and associativity.
-*/
-
-    /**
-     * PrimaryExp  ::=  ( Exp )
-     * |    Num
-     * |    TrueLiteral
-     * |    FalseLiteral
-     * |    ThisExp
-     * |    Identifier
-     * |    ArrayAllocationExp
-     * |    AllocationExp
-     */
-    private void parsePrimaryExp() {
-        switch (current.kind) {
-            case TOKEN_LPAREN:
-                advance();
-                parseExp();
-                eatToken(Kind.TOKEN_RPAREN);
-                return;
-            case TOKEN_NUM:
-                advance();
-                return;
-            case TOKEN_TRUE:
-                advance();
-                return;
-            case TOKEN_FALSE:
-                advance();
-                return;
-            case TOKEN_THIS:
-                advance();
-                return;
-            case TOKEN_ID:
-                advance();
-                return;
-            case TOKEN_NEW: {
-                advance();
-                switch (current.kind) {
-                    case TOKEN_INT:
-                        advance();
-                        eatToken(Kind.TOKEN_LBRACK);
-                        parseExp();
-                        eatToken(Kind.TOKEN_RBRACK);
-                        return;
-                    case TOKEN_ID:
-                        advance();
-                        eatToken(Kind.TOKEN_LPAREN);
-                        eatToken(Kind.TOKEN_RPAREN);
-                        return;
-                    default:
-                        error(null);
-                        return;
-                }
-            }
-            default:
-                error(null);
-        }
+    private boolean in(long set) {
+        return (set & 1L << current.ordinal()) != 0;
     }
 
-    /**
-     * NotExp  ::=  PrimaryExp
-     * |    PrimaryExp .id (ExpList)
-     * |    PrimaryExp [Exp]
-     * |    PrimaryExp .length
-     */
-    private void parseNotExp() {
-        parsePrimaryExp();
-        while (current.kind == Kind.TOKEN_DOT || current.kind == Kind.TOKEN_LBRACK) {
-            if (current.kind == Kind.TOKEN_DOT) {
-                advance();
-                if (current.kind == Kind.TOKEN_LENGTH) {
-                    advance();
+    // Skip tokens up to one in sync, with depth braces open. An unmatched
+    // "}" is not skipped, a ";" in sync is.
+    private void skip(long sync, int depth) {
+        while (!in(HARD_SYNC)) {
+            if (current == Kind.TOKEN_RBRACE) {
+                if (depth == 0)
                     return;
-                }
-                eatToken(Kind.TOKEN_ID);
-                eatToken(Kind.TOKEN_LPAREN);
-                parseExpList();
-                eatToken(Kind.TOKEN_RPAREN);
-            } else {
                 advance();
-                parseExp();
-                eatToken(Kind.TOKEN_RBRACK);
+                if (--depth == 0 && (sync & RBRACE) != 0
+                        && current != Kind.TOKEN_ELSE)
+                    return;
+                continue;
+            }
+            if (depth == 0 && in(sync)) {
+                if (current == Kind.TOKEN_SEMI)
+                    advance();
+                return;
             }
+            if (current == Kind.TOKEN_LBRACE)
+                depth++;
+            advance();
         }
     }
 
-    /**
-     * TimesExp  ::=  ! TimesExp
-     * |    NotExp
-     */
-    private void parseTimesExp() {
-        while (current.kind == Kind.TOKEN_NOT) {
+    // skip to the next class declaration or the end of the file
+    private void skipToClass() {
+        while (current != Kind.TOKEN_CLASS && current != Kind.TOKEN_EOF)
             advance();
-        }
-        parseNotExp();
     }
 
-    /**
-     * AddSubExp  ::=  AddSubExp * TimesExp
-     * |    TimesExp
-     */
-    private void parseAddSubExp() {
-        parseTimesExp();
-        while (current.kind == Kind.TOKEN_TIMES) {
-            advance();
-            parseTimesExp();
-        }
+/*
+    below are method for parsing.
+
+    Each method returns the tree node it built, or Ast.NIL if there was
+    an error before it could build one.
+*/
+
+    // a node for the token under the cursor
+    private int node(NodeKind kind) {
+        return ast == null ? Ast.NIL : ast.add(kind, cursor.index());
     }
 
-    /**
-     * LtExp  ::=  LtExp + AddSubExp
-     * |    LtExp - AddSubExp
-     * |    AddSubExp
-     */
-    private void parseLtExp() {
-        parseAddSubExp();
-        while (current.kind == Kind.TOKEN_ADD || current.kind == Kind.TOKEN_SUB) {
-            advance();
-            parseAddSubExp();
-        }
+    // a node with the given children (NIL ones left out)
+    private int node(NodeKind kind, int token, int a, int b) {
+        if (ast == null)
+            return Ast.NIL;
+        int n = ast.add(kind, token);
+        append(n, append(n, Ast.NIL, a), b);
+        return n;
+    }
+
+    // Add child to the children of parent, after last (NIL if there are
+    // none yet); return the new last child. A parent that is NIL, after an
+    // error, drops its children.
+    private int append(int parent, int last, int child) {
+        if (child == Ast.NIL || parent == Ast.NIL)
+            return last;
+        if (last == Ast.NIL)
+            ast.setFirstChild(parent, child);
+        else
+            ast.setNextSibling(last, child);
+        return child;
     }
 
     /**
-     * AndExp  ::=  AndExp < LtExp
-     * |    LtExp
+     * Exp  ::=  Exp && Exp
+     * |    Exp < Exp
+     * |    Exp + Exp
+     * |    Exp - Exp
+     * |    Exp * Exp
+     * |    ! Exp
+     * |    Exp [ Exp ]
+     * |    Exp . length
+     * |    Exp . id ( ExpList )
+     * |    PrimaryExp
+     *
+     * PrimaryExp  ::=  ( Exp ) | Num | true | false | this | id
+     * |    new int [ Exp ]
+     * |    new id ( )
+     *
+     * ExpList  ::=  Exp ( , Exp )* |
+     *
+     * Binary operators are all left associative, from the loosest: &&, <,
+     * + and -, then *. "!" applies to a primary expression and its
+     * suffixes, and binds tighter than any binary operator; nothing may
+     * follow ".length" but a binary operator.
+     *
+     * This is one precedence climbing loop, with explicit stacks in place
+     * of recursion: the operands built so far, the operators not applied
+     * yet, and a frame for each bracket that is open, so that nesting is
+     * limited by the heap and not by the Java stack.
      */
-    private void parseAndExp() {
-        parseLtExp();
-        while (current.kind == Kind.TOKEN_LT) {
-            advance();
-            parseLtExp();
+    private static final int[] BINDING = new int[Kind.values().length];
+    private static final NodeKind[] BINARY = new NodeKind[BINDING.length];
+    private static final int PREFIX = 5; // binding power of "!"
+
+    static {
+        binary(Kind.TOKEN_AND, NodeKind.AND, 1);
+        binary(Kind.TOKEN_LT, NodeKind.LT, 2);
+        binary(Kind.TOKEN_ADD, NodeKind.ADD, 3);
+        binary(Kind.TOKEN_SUB, NodeKind.SUB, 3);
+        binary(Kind.TOKEN_TIMES, NodeKind.TIMES, 4);
+    }
+
+    private static void binary(Kind kind, NodeKind node, int power) {
+        BINDING[kind.ordinal()] = power;
+        BINARY[kind.ordinal()] = node;
+    }
+
+    // what an open frame is waiting for
+    private static final int F_TOP = 0; // the end of the expression
+    private static final int F_PAREN = 1; // ")"
+    private static final int F_INDEX = 2; // "]" after an index
+    private static final int F_NEW = 3; // "]" after the size of an array
+    private static final int F_ARGS = 4; // "," or ")" after an argument
+
+    private int[] operands = new int[16];
+    private int nOperands;
+    private int[] ops = new int[16]; // token index of each operator
+    private int[] opKinds = new int[16]; // and its kind
+    private int nOps;
+    // frames: kind, depth of ops when opened, a node (for F_INDEX the
+    // array, for F_ARGS the call) and a token (for F_INDEX and F_NEW) or
+    // node (for F_ARGS, the call's last child)
+    private int[] frames = new int[16 * 4];
+    private int nFrames;
+
+    private void pushOperand(int n) {
+        if (nOperands == operands.length)
+            operands = Arrays.copyOf(operands, nOperands * 2);
+        operands[nOperands++] = n;
+    }
+
+    // the operator under the cursor
+    private void pushOp() {
+        if (nOps == ops.length) {
+            ops = Arrays.copyOf(ops, nOps * 2);
+            opKinds = Arrays.copyOf(opKinds, nOps * 2);
         }
+        opKinds[nOps] = current.ordinal();
+        ops[nOps++] = cursor.index();
     }
 
-    /**
-     * Exp  ::=  Exp && AndExp
-     * |    AndExp
-     */
-    private void parseExp() {
-        parseAndExp();
-        while (current.kind == Kind.TOKEN_AND) {
-            advance();
-            parseAndExp();
+    private void pushFrame(int kind, int node, int token) {
+        if (nFrames * 4 == frames.length)
+            frames = Arrays.copyOf(frames, frames.length * 2);
+        int f = nFrames++ * 4;
+        frames[f] = kind;
+        frames[f + 1] = nOps;
+        frames[f + 2] = node;
+        frames[f + 3] = token;
+    }
+
+    private static int power(int kind) {
+        return kind == Kind.TOKEN_NOT.ordinal() ? PREFIX : BINDING[kind];
+    }
+
+    // apply the operators of the innermost frame that bind at least as
+    // tightly as power
+    private void reduce(int power) {
+        int base = frames[(nFrames - 1) * 4 + 1];
+        while (nOps > base && power(opKinds[nOps - 1]) >= power) {
+            int kind = opKinds[--nOps];
+            int op = ops[nOps];
+            int right = operands[--nOperands];
+            if (kind == Kind.TOKEN_NOT.ordinal())
+                pushOperand(node(NodeKind.NOT, op, right, Ast.NIL));
+            else {
+                int left = operands[--nOperands];
+                pushOperand(node(BINARY[kind], op, left, right));
+            }
         }
     }
 
-    /**
-     * ExpressionList  ::=  Expression ( ExpressionRest )*
-     * ExpressionRest  ::=  "," Expression
-     */
-    private void parseExpList() {
-        if (current.kind == Kind.TOKEN_RPAREN)
-            return;
-        parseExp();
-        while (current.kind == Kind.TOKEN_COMMA) {
-            advance();
-            parseExp();
+    private int parseExp() {
+        nOperands = nOps = nFrames = 0;
+        pushFrame(F_TOP, Ast.NIL, -1);
+        for (;;) {
+            // an operand, after any "!"s and "("s
+            for (;;) {
+                if (current == Kind.TOKEN_NOT) {
+                    pushOp();
+                    advance();
+                } else if (current == Kind.TOKEN_LPAREN) {
+                    pushFrame(F_PAREN, Ast.NIL, -1);
+                    advance();
+                } else
+                    break;
+            }
+            boolean suffixes = true;
+            switch (current) {
+                case TOKEN_NUM:
+                    pushOperand(node(NodeKind.NUM));
+                    advance();
+                    break;
+                case TOKEN_TRUE:
+                    pushOperand(node(NodeKind.TRUE));
+                    advance();
+                    break;
+                case TOKEN_FALSE:
+                    pushOperand(node(NodeKind.FALSE));
+                    advance();
+                    break;
+                case TOKEN_THIS:
+                    pushOperand(node(NodeKind.THIS));
+                    advance();
+                    break;
+                case TOKEN_ID:
+                    pushOperand(node(NodeKind.ID));
+                    advance();
+                    break;
+                case TOKEN_NEW: {
+                    int token = cursor.index();
+                    advance();
+                    if (current == Kind.TOKEN_INT) {
+                        advance();
+                        eatToken(Kind.TOKEN_LBRACK);
+                        pushFrame(F_NEW, Ast.NIL, token);
+                        continue;
+                    }
+                    if (current == Kind.TOKEN_ID) {
+                        pushOperand(node(NodeKind.NEW_OBJECT));
+                        advance();
+                        eatToken(Kind.TOKEN_LPAREN);
+                        eatToken(Kind.TOKEN_RPAREN);
+                        break;
+                    }
+                    error(null);
+                    pushOperand(Ast.NIL);
+                    break;
+                }
+                default:
+                    error(null);
+                    pushOperand(Ast.NIL);
+            }
+
+            // suffixes, binary operators, and the ends of frames, until
+            // another operand is due
+            boolean operand = false;
+            while (!operand) {
+                if (suffixes && current == Kind.TOKEN_DOT) {
+                    advance();
+                    int receiver = operands[--nOperands];
+                    if (current == Kind.TOKEN_LENGTH) {
+                        pushOperand(node(NodeKind.LENGTH, cursor.index(),
+                                receiver, Ast.NIL));
+                        advance();
+                        suffixes = false;
+                        continue;
+                    }
+                    int call = node(NodeKind.CALL);
+                    append(call, Ast.NIL, receiver);
+                    eatToken(Kind.TOKEN_ID);
+                    eatToken(Kind.TOKEN_LPAREN);
+                    if (current == Kind.TOKEN_RPAREN) {
+                        pushOperand(call);
+                        eatToken(Kind.TOKEN_RPAREN);
+                        continue;
+                    }
+                    pushFrame(F_ARGS, call, receiver);
+                    operand = true;
+                } else if (suffixes && current == Kind.TOKEN_LBRACK) {
+                    pushFrame(F_INDEX, operands[--nOperands], cursor.index());
+                    advance();
+                    operand = true;
+                } else if (BINDING[current.ordinal()] > 0) {
+                    reduce(BINDING[current.ordinal()]);
+                    pushOp();
+                    advance();
+                    operand = true;
+                } else {
+                    // the expression of the innermost frame ends here
+                    reduce(0);
+                    int f = --nFrames * 4;
+                    int value = operands[--nOperands];
+                    suffixes = true;
+                    switch (frames[f]) {
+                        case F_TOP:
+                            return value;
+                        case F_PAREN:
+                            pushOperand(value);
+                            eatToken(Kind.TOKEN_RPAREN);
+                            break;
+                        case F_INDEX:
+                            pushOperand(node(NodeKind.INDEX, frames[f + 3],
+                                    frames[f + 2], value));
+                            eatToken(Kind.TOKEN_RBRACK);
+                            break;
+                        case F_NEW:
+                            pushOperand(node(NodeKind.NEW_INT_ARRAY,
+                                    frames[f + 3], value, Ast.NIL));
+                            eatToken(Kind.TOKEN_RBRACK);
+                            break;
+                        default: {
+                            // F_ARGS
+                            int call = frames[f + 2];
+                            int last = append(call, frames[f + 3], value);
+                            if (current == Kind.TOKEN_COMMA) {
+                                advance();
+                                pushFrame(F_ARGS, call, last);
+                                operand = true;
+                            } else {
+                                pushOperand(call);
+                                eatToken(Kind.TOKEN_RPAREN);
+                            }
+                        }
+                    }
+                }
+            }
         }
     }
 
@@ -219,72 +518,111 @@ public class Parser {
      * |    id = Exp ;
      * |    id [ Exp ]= Exp ;
      */
-    private void parseStatement() {
+    private int parseStatement() {
         // Lab1. Exercise 4: Fill in the missing code
         // to parse a statement.
-        switch (current.kind) {
+        int n;
+        switch (current) {
             case TOKEN_LBRACE:
+                started(NodeKind.BLOCK, cursor.index());
+                n = node(NodeKind.BLOCK);
                 advance();
-                parseStatements();
+                parseStatements(n, Ast.NIL);
                 eatToken(Kind.TOKEN_RBRACE);
-                return;
-            case TOKEN_IF:
+                return n;
+            case TOKEN_IF: {
+                started(NodeKind.IF, cursor.index());
+                n = node(NodeKind.IF);
                 advance();
                 eatToken(Kind.TOKEN_LPAREN);
-                parseExp();
+                int last = append(n, Ast.NIL, parseExp());
                 eatToken(Kind.TOKEN_RPAREN);
-                parseStatement();
+                last = append(n, last, parseStatement());
                 eatToken(Kind.TOKEN_ELSE);
-                parseStatement();
-                return;
-            case TOKEN_WHILE:
+                append(n, last, parseStatement());
+                return n;
+            }
+            case TOKEN_WHILE: {
+                started(NodeKind.WHILE, cursor.index());
+                n = node(NodeKind.WHILE);
                 advance();
                 eatToken(Kind.TOKEN_LPAREN);
-                parseExp();
+                int last = append(n, Ast.NIL, parseExp());
                 eatToken(Kind.TOKEN_RPAREN);
-                parseStatement();
-                return;
+                append(n, last, parseStatement());
+                return n;
+            }
             case TOKEN_SYSTEM:
+                started(NodeKind.PRINT, cursor.index());
+                n = node(NodeKind.PRINT);
                 advance();
                 eatToken(Kind.TOKEN_DOT);
                 eatToken(Kind.TOKEN_OUT);
                 eatToken(Kind.TOKEN_DOT);
                 eatToken(Kind.TOKEN_PRINTLN);
                 eatToken(Kind.TOKEN_LPAREN);
-                parseExp();
+                append(n, Ast.NIL, parseExp());
                 eatToken(Kind.TOKEN_RPAREN);
                 eatToken(Kind.TOKEN_SEMI);
-                return;
-            case TOKEN_ID:
+                return n;
+            case TOKEN_ID: {
+                int token = cursor.index();
                 advance();
-                if (current.kind == Kind.TOKEN_ASSIGN) {
+                if (current == Kind.TOKEN_ASSIGN) {
+                    started(NodeKind.ASSIGN, token);
                     advance();
-                    parseExp();
+                    n = node(NodeKind.ASSIGN, token, parseExp(), Ast.NIL);
                     eatToken(Kind.TOKEN_SEMI);
-                } else if (current.kind == Kind.TOKEN_LBRACK) {
+                } else if (current == Kind.TOKEN_LBRACK) {
+                    started(NodeKind.ARRAY_ASSIGN, token);
                     advance();
-                    parseExp();
+                    int index = parseExp();
                     eatToken(Kind.TOKEN_RBRACK);
                     eatToken(Kind.TOKEN_ASSIGN);
-                    parseExp();
+                    n = node(NodeKind.ARRAY_ASSIGN, token, index, parseExp());
                     eatToken(Kind.TOKEN_SEMI);
                 } else {
                     error(null);
+                    n = Ast.NIL;
                 }
-                return;
+                return n;
+            }
             default:
                 error(null);
+                return Ast.NIL;
+        }
+    }
+
+    // tell the listener, if any, that a statement of the given kind
+    // starts at token
+    private void started(NodeKind kind, int token) {
+        if (listener != null
+                && !listener.statement(kind, cursor.line(token)))
+            throw new Abort();
+    }
+
+    // a statement, or NIL for one with an error, after which the tokens
+    // up to the next statement are skipped
+    private int statement() {
+        try {
+            return parseStatement();
+        } catch (Panic p) {
+            skip(STATEMENT_SYNC, 0);
+            return Ast.NIL;
         }
     }
 
     // Statements -> Statement Statements
     // ->
-    private void parseStatements() {
-        while (current.kind == Kind.TOKEN_LBRACE || current.kind == Kind.TOKEN_IF
-                || current.kind == Kind.TOKEN_WHILE
-                || current.kind == Kind.TOKEN_SYSTEM || current.kind == Kind.TOKEN_ID) {
-            parseStatement();
+    // the statements are added to the children of parent, after last;
+    // returns the new last child
+    private int parseStatements(int parent, int last) {
+        while (current == Kind.TOKEN_LBRACE || current == Kind.TOKEN_IF
+                || current == Kind.TOKEN_WHILE
+                || current == Kind.TOKEN_SYSTEM || current == Kind.TOKEN_ID) {
+            last = append(parent, last, statement());
         }
+        return last;
     }
 
     /**
@@ -293,106 +631,202 @@ public class Parser {
      * |    int
      * |    id
      */
-    private void parseType() {
+    private int parseType() {
         // Lab1. Exercise 4: Fill in the missing code
         // to parse a type.
-        switch (current.kind) {
+        int n;
+        switch (current) {
             case TOKEN_INT:
+                n = node(cursor.kind(1) == Kind.TOKEN_LBRACK
+                        ? NodeKind.INT_ARRAY_TYPE : NodeKind.INT_TYPE);
                 advance();
-                if (current.kind == Kind.TOKEN_LBRACK) {
+                if (current == Kind.TOKEN_LBRACK) {
                     advance();
                     eatToken(Kind.TOKEN_RBRACK);
                 }
-                return;
+                return n;
             case TOKEN_BOOLEAN:
+                n = node(NodeKind.BOOLEAN_TYPE);
                 advance();
-                return;
+                return n;
             case TOKEN_ID:
+                n = node(NodeKind.CLASS_TYPE);
                 advance();
-                return;
+                return n;
             default:
                 error(null);
+                return Ast.NIL;
         }
     }
 
     // VarDecl  ::=  Type id ;
-    private void parseVarDecl() {
+    private int parseVarDecl() {
         // to parse the "Type" nonTerminal in this method, instead of writing
         // a fresh one.
-        parseType();
+        int type = parseType();
+        int n = node(NodeKind.VAR_DECL, cursor.index(), type, Ast.NIL);
         eatToken(Kind.TOKEN_ID);
         eatToken(Kind.TOKEN_SEMI);
+        return n;
     }
 
     // VarDecls  ::=  VarDecl VarDecls
     //           |    VarDecl
-    private void parseVarDecls() {
-        while (current.kind == Kind.TOKEN_INT || current.kind == Kind.TOKEN_BOOLEAN
-                || current.kind == Kind.TOKEN_ID) {
-            parseVarDecl();
+    // the declarations are added to the children of parent, after last;
+    // returns the new last child
+    private int parseVarDecls(int parent, int last) {
+        while (current == Kind.TOKEN_INT || current == Kind.TOKEN_BOOLEAN
+                || current == Kind.TOKEN_ID) {
+            try {
+                last = append(parent, last, parseVarDecl());
+            } catch (Panic p) {
+                skip(FIELD_SYNC, 0);
+            }
         }
+        return last;
     }
 
     // FormalList  ::=  Type id FormalRest*
     // FormalRest  ::=  , Type id
-    private void parseFormalList() {
-        if (current.kind == Kind.TOKEN_RPAREN)
-            return;
-        parseType();
+    // the parameters are added to the children of parent, after last;
+    // returns the new last child
+    private int parseFormalList(int parent, int last) {
+        if (current == Kind.TOKEN_RPAREN)
+            return last;
+        int type = parseType();
+        last = append(parent, last,
+                node(NodeKind.FORMAL, cursor.index(), type, Ast.NIL));
         eatToken(Kind.TOKEN_ID);
-        while (current.kind == Kind.TOKEN_COMMA) {
+        while (current == Kind.TOKEN_COMMA) {
             advance();
-            parseType();
+            type = parseType();
+            last = append(parent, last,
+                    node(NodeKind.FORMAL, cursor.index(), type, Ast.NIL));
             eatToken(Kind.TOKEN_ID);
         }
+        return last;
     }
 
     // Method  ::=  public Type id ( FormalList ) { VarDecl* Statement* return Exp ;}
-    private void parseMethod() {
+    int parseMethod() {
         // Lab1. Exercise 4: Fill in the missing code
         // to parse a method.
-        eatToken(Kind.TOKEN_PUBLIC);
-        parseType();
-        eatToken(Kind.TOKEN_ID);
-        eatToken(Kind.TOKEN_LPAREN);
-        parseFormalList();
-        eatToken(Kind.TOKEN_RPAREN);
-        eatToken(Kind.TOKEN_LBRACE);
-        while (current.kind != Kind.TOKEN_RETURN && current.kind != Kind.TOKEN_EOF) {
-
-            switch (current.kind) {
-
-                // int and boolean signals start of var declaration
-                case TOKEN_INT:
-                case TOKEN_BOOLEAN:
-                    parseVarDecl();
-                    break;
+        MethodDeclEvent event = new MethodDeclEvent();
+        event.begin();
+        int line = listener != null || event.isEnabled()
+                ? cursor.line(cursor.index()) : 0;
+        int first = cursor.index();
+        int name = -1;
+        String methodName = null; // once the header is parsed
+        int entry = open(Outline.METHOD);
+        int n = Ast.NIL;
+        int depth = 0; // of the braces of the body, once open
+        try {
+            int last = Ast.NIL;
+            try {
+                eatToken(Kind.TOKEN_PUBLIC);
+                int type = parseType();
+                n = node(NodeKind.METHOD_DECL, cursor.index(), type, Ast.NIL);
+                last = type;
+                name = cursor.index();
+                eatToken(Kind.TOKEN_ID);
+                methodName = enterMethod(name, line);
+                eatToken(Kind.TOKEN_LPAREN);
+                last = parseFormalList(n, last);
+                eatToken(Kind.TOKEN_RPAREN);
+                eatToken(Kind.TOKEN_LBRACE);
+            } catch (Panic p) {
+                if (methodName == null)
+                    methodName = enterMethod(name, line);
+                // after the parameters parsed before the error
+                if (n != Ast.NIL)
+                    while (ast.nextSibling(last) != Ast.NIL)
+                        last = ast.nextSibling(last);
+                // go on with the body, if there is one
+                skip(BODY_SYNC, 0);
+                if (current != Kind.TOKEN_LBRACE)
+                    throw p;
+                advance();
+            }
+            depth = 1;
+            // up to the return, or a token that no statement starts with
+            // and that ends the method if it is missing its return
+            while (current != Kind.TOKEN_RETURN && current != Kind.TOKEN_RBRACE
+                    && !in(HARD_SYNC)) {
+                int item;
+                try {
+                    item = bodyItem();
+                } catch (Panic p) {
+                    skip(STATEMENT_SYNC, 0);
+                    continue;
+                }
+                last = append(n, last, item);
+            }
+            int ret = node(NodeKind.RETURN);
+            eatToken(Kind.TOKEN_RETURN);
+            append(ret, Ast.NIL, parseExp());
+            append(n, last, ret);
+            eatToken(Kind.TOKEN_SEMI);
+            eatToken(Kind.TOKEN_RBRACE);
+        } catch (Panic p) {
+            skip(METHOD_SYNC, depth);
+        }
+        close(entry);
+        if (listener != null && !listener.exitMethod())
+            throw new Abort();
+        if (event.shouldCommit()) {
+            event.className = className;
+            event.name = methodName;
+            event.line = line;
+            event.tokens = cursor.index() - first;
+            event.commit();
+        }
+        return n;
+    }
 
-                // identifier requires peeking at next token to determine if
-                // it's a var declaration or a statement in the method
-                case TOKEN_ID:
-                    // id followed by another id is a var declaration
-                    if (lexer.peek().kind == Kind.TOKEN_ID) {
-                        parseVarDecl();
-                        break;
-                    }
+    // the name of a method at token i, once its header is parsed, told
+    // to the listener
+    private String enterMethod(int i, int line) {
+        String name = name(i);
+        if (listener != null && !listener.enterMethod(name, line))
+            throw new Abort();
+        return name;
+    }
 
-                    // otherwise it is a statement, fall through
-                default:
-                    parseStatement();
-            }
+    // the identifier at token i, for events
+    private String name(int i) {
+        Symbol s = i < 0 ? null : cursor.symbol(i);
+        return s == null ? "?" : s.name;
+    }
+
+    // a local variable declaration or a statement
+    private int bodyItem() {
+        switch (current) {
+
+            // int and boolean signals start of var declaration
+            case TOKEN_INT:
+            case TOKEN_BOOLEAN:
+                return parseVarDecl();
+
+            // identifier requires peeking at next token to determine if
+            // it's a var declaration or a statement in the method
+            case TOKEN_ID:
+                // id followed by another id is a var declaration
+                if (cursor.kind(1) == Kind.TOKEN_ID)
+                    return parseVarDecl();
+
+                // otherwise it is a statement, fall through
+            default:
+                return parseStatement();
         }
-        eatToken(Kind.TOKEN_RETURN);
-        parseExp();
-        eatToken(Kind.TOKEN_SEMI);
-        eatToken(Kind.TOKEN_RBRACE);
     }
 
     // MethodDecls  ::=  MethodDecl MethodDecls
     //              |    MethodDecl
-    private void parseMethodDecls() {
-        while (current.kind == Kind.TOKEN_PUBLIC) {
-            parseMethod();
+    // the methods are added to the children of parent, after last
+    private void parseMethodDecls(int parent, int last) {
+        while (current == Kind.TOKEN_PUBLIC) {
+            last = append(parent, last, parseMethod());
         }
     }
 
@@ -400,62 +834,199 @@ public class Parser {
      * ClassDecl  ::=  class id { VarDecl* MethodDecl* }
      * |    class id extends id { VarDecl* MethodDecl* }
      */
-    private void parseClassDecl() {
+    int parseClassDecl() {
+        ClassDeclEvent event = new ClassDeclEvent();
+        event.begin();
+        int line = listener != null || event.isEnabled()
+                ? cursor.line(cursor.index()) : 0;
+        int first = cursor.index();
+        int entry = open(Outline.CLASS);
+        outlineClass = entry;
         eatToken(Kind.TOKEN_CLASS);
-        eatToken(Kind.TOKEN_ID);
-        if (current.kind == Kind.TOKEN_EXTENDS) {
-            eatToken(Kind.TOKEN_EXTENDS);
-            eatToken(Kind.TOKEN_ID);
+        className = name(cursor.index());
+        if (listener != null && !listener.enterClass(className, line))
+            throw new Abort();
+        int n = node(NodeKind.CLASS_DECL);
+        int last = Ast.NIL;
+        try {
+            try {
+                eatToken(Kind.TOKEN_ID);
+                if (current == Kind.TOKEN_EXTENDS) {
+                    eatToken(Kind.TOKEN_EXTENDS);
+                    last = append(n, last, node(NodeKind.EXTENDS));
+                    eatToken(Kind.TOKEN_ID);
+                }
+                eatToken(Kind.TOKEN_LBRACE);
+            } catch (Panic p) {
+                // go on with the body, if there is one
+                skip(BODY_SYNC, 0);
+                if (current == Kind.TOKEN_LBRACE)
+                    advance();
+                else if (current != Kind.TOKEN_PUBLIC)
+                    throw p;
+            }
+            last = parseVarDecls(n, last);
+            parseMethodDecls(n, last);
+            eatToken(Kind.TOKEN_RBRACE);
+        } catch (Panic p) {
+            skipToClass();
         }
-        eatToken(Kind.TOKEN_LBRACE);
-        parseVarDecls();
-        parseMethodDecls();
-        eatToken(Kind.TOKEN_RBRACE);
-    }
-
-    // ClassDecls  ::=  ClassDecl ClassDecls
-    //             |    ClassDecl
-    private void parseClassDecls() {
-        while (current.kind == Kind.TOKEN_CLASS) {
-            parseClassDecl();
+        outlineClass = -1;
+        close(entry);
+        if (listener != null && !listener.exitClass())
+            throw new Abort();
+        if (event.shouldCommit()) {
+            event.name = className;
+            event.line = line;
+            event.tokens = cursor.index() - first;
+            event.commit();
         }
+        className = null;
+        return n;
     }
 
     // MainClass  ::=  class id { public static void main ( String [] id ) { Statement} }
-    private void parseMainClass() {
+    int parseMainClass() {
         // Lab1. Exercise 4: Fill in the missing code
         // to parse a main class as described by the
         // grammar above.
-        eatToken(Kind.TOKEN_CLASS);
-        eatToken(Kind.TOKEN_ID);
-        eatToken(Kind.TOKEN_LBRACE);
-        eatToken(Kind.TOKEN_PUBLIC);
-        eatToken(Kind.TOKEN_STATIC);
-        eatToken(Kind.TOKEN_VOID);
-        eatToken(Kind.TOKEN_MAIN);
-        eatToken(Kind.TOKEN_LPAREN);
-        eatToken(Kind.TOKEN_STRING);
-        eatToken(Kind.TOKEN_LBRACK);
-        eatToken(Kind.TOKEN_RBRACK);
-        eatToken(Kind.TOKEN_ID);
-        eatToken(Kind.TOKEN_RPAREN);
-        eatToken(Kind.TOKEN_LBRACE);
-        parseStatement();
-        eatToken(Kind.TOKEN_RBRACE);
-        eatToken(Kind.TOKEN_RBRACE);
+        int entry = open(Outline.MAIN);
+        int n = Ast.NIL;
+        boolean entered = false; // told the listener
+        try {
+            int line = listener == null ? 0 : cursor.line(cursor.index());
+            eatToken(Kind.TOKEN_CLASS);
+            n = node(NodeKind.MAIN_CLASS);
+            if (listener != null && !listener.enterClass(name(cursor
+                    .index()), line))
+                throw new Abort();
+            entered = true;
+            eatToken(Kind.TOKEN_ID);
+            eatToken(Kind.TOKEN_LBRACE);
+            eatToken(Kind.TOKEN_PUBLIC);
+            eatToken(Kind.TOKEN_STATIC);
+            eatToken(Kind.TOKEN_VOID);
+            eatToken(Kind.TOKEN_MAIN);
+            eatToken(Kind.TOKEN_LPAREN);
+            eatToken(Kind.TOKEN_STRING);
+            eatToken(Kind.TOKEN_LBRACK);
+            eatToken(Kind.TOKEN_RBRACK);
+            int last = append(n, Ast.NIL, node(NodeKind.ID));
+            eatToken(Kind.TOKEN_ID);
+            eatToken(Kind.TOKEN_RPAREN);
+            eatToken(Kind.TOKEN_LBRACE);
+            append(n, last, statement());
+            eatToken(Kind.TOKEN_RBRACE);
+            eatToken(Kind.TOKEN_RBRACE);
+        } catch (Panic p) {
+            skipToClass();
+        }
+        close(entry);
+        if (entered && listener != null && !listener.exitClass())
+            throw new Abort();
+        return n;
     }
 
     // Program  ::=  MainClass ClassDecl*
-    private void parseProgram() {
-        parseMainClass();
-        parseClassDecls();
+    int parseProgram() {
+        int n = node(NodeKind.PROGRAM, 0, Ast.NIL, Ast.NIL);
+        if (ast != null)
+            ast.setRoot(n);
+        int last = append(n, Ast.NIL, parseTopLevel(true));
+        while (current == Kind.TOKEN_CLASS)
+            last = append(n, last, parseTopLevel(false));
+        eatToken(Kind.TOKEN_EOF);
+        return n;
+    }
+
+    // The main class or a class declaration, then anything before the next
+    // "class" or the end of the file, as an error.
+    //
+    // After the first token, every "class" starts a class declaration
+    // here: no other rule eats one, and recovery always stops at one. The
+    // classes can therefore be parsed apart from each other, as
+    // ParallelParser does.
+    int parseTopLevel(boolean main) {
+        int n = main ? parseMainClass() : parseClassDecl();
+        if (current != Kind.TOKEN_CLASS && current != Kind.TOKEN_EOF) {
+            try {
+                error(Kind.TOKEN_EOF);
+            } catch (Panic p) {
+                skipToClass();
+            }
+        }
+        return n;
+    }
+
+    // whether a class declaration starts at the cursor
+    boolean atClassDecl() {
+        return current == Kind.TOKEN_CLASS;
+    }
+
+    // the end of the program, after its last class declaration
+    void parseEnd() {
         eatToken(Kind.TOKEN_EOF);
     }
 
-    public void parse() {
-        parseProgram();
-        if (errors == 0) {
+    // the syntax errors found, in the order of the tokens they are at
+    public List<Diagnostic> diagnostics() {
+        return diagnostics;
+    }
+
+    // Parse the program into a syntax tree, and report its errors on the
+    // console. The tree of a program with errors leaves out what could not
+    // be parsed.
+    public Ast parse() {
+        parseQuietly();
+        report(diagnostics, cursor.tokens(), maxErrors);
+        return ast;
+    }
+
+    // parse the program into a syntax tree, leaving its errors in
+    // diagnostics()
+    public Ast parseQuietly() {
+        try {
+            parseProgram();
+        } catch (Abort a) {
+            // as many errors as allowed
+        }
+        return ast;
+    }
+
+    // Parse a file as the events of listener (see ParseListener), building
+    // no tree, and reading it through a window of its tokens. The window
+    // takes the same memory for a file of any size; what grows is the
+    // context's SymbolTable, as every distinct name is interned, and that
+    // bounds the heap a stream needs. A synthetic 64 MB program from
+    // bench.Inputs has about 90,000 names, and needs a heap of 12 to 16
+    // MB. The errors go to listener only; the parse ends at the context's
+    // limit of them.
+    public static void stream(String fileName, Source source,
+            CompilerContext context, ParseListener listener) {
+        Parser p = new Parser(TokenCursor.window(fileName, source, context,
+                KEEP), null, new ArrayList<>(), true,
+                context.options.maxErrors);
+        p.listener = listener;
+        p.parseQuietly();
+    }
+
+    public static void stream(String fileName, Source source,
+            ParseListener listener) {
+        stream(fileName, source, new CompilerContext(Options.DEFAULT),
+                listener);
+    }
+
+    // print the outcome of a parse on the console
+    public static void report(List<Diagnostic> diagnostics, TokenBuffer tokens,
+            int maxErrors) {
+        if (diagnostics.isEmpty()) {
             System.out.println("No error!");
+            return;
         }
+        for (Diagnostic d : diagnostics)
+            System.err.println(d.format(tokens));
+        int n = diagnostics.size();
+        System.err.println(n + (n == 1 ? " error" : " errors")
+                + (n == maxErrors ? " (stopped at the limit)" : ""));
     }
 }
@@ -1,6 +1,7 @@
 package slp;
 
-import control.Control;
+import control.CompilerContext;
+import control.Options;
 import slp.Slp.Exp;
 import slp.Slp.Exp.Eseq;
 import slp.Slp.Exp.Id;
@@ -15,6 +16,12 @@ import java.io.FileWriter;
 import java.util.HashSet;
 
 public class Main {
+    private final CompilerContext context;
+
+    public Main(CompilerContext context) {
+        this.context = context;
+    }
+
     // maximum number of args
     private int maxArgsExp(Exp.T exp) {
         if (exp instanceof Exp.Eseq) {
@@ -220,19 +227,21 @@ public class Main {
 
     // ////////////////////////////////////////
     public void doit(Stm.T prog) {
+        Options.Slp action = context.options.slp;
+
         // return the maximum number of arguments
-        if (Control.ConSlp.action == Control.ConSlp.T.ARGS) {
+        if (action == Options.Slp.ARGS) {
             int numArgs = maxArgsStm(prog);
             System.out.println(numArgs);
         }
 
         // interpret a given program
-        if (Control.ConSlp.action == Control.ConSlp.T.INTERP) {
+        if (action == Options.Slp.INTERP) {
             interpStm(prog);
         }
 
         // compile a given SLP program to x86
-        if (Control.ConSlp.action == Control.ConSlp.T.COMPILE) {
+        if (action == Options.Slp.COMPILE) {
             ids = new HashSet<>();
             buf = new StringBuffer();
 
@@ -261,7 +270,7 @@ public class Main {
                 writer.close();
                 Process child = Runtime.getRuntime().exec("cl slp_gen.s");
                 child.waitFor();
-                if (!Control.ConSlp.keepasm)
+                if (!context.options.keepAsm)
                     Runtime.getRuntime().exec("del slp_gen.s");
             } catch (Exception e) {
                 e.printStackTrace();
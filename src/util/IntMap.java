@@ -0,0 +1,118 @@
+package util;
+
+import java.util.Arrays;
+
+// A map from ints that are not negative, such as symbol ids, to values.
+//
+// The table is open-addressed, with linear probing, in a parallel array of
+// keys and one of values, so a key is never boxed and a lookup touches no
+// object but the value it finds. It is not synchronized.
+public final class IntMap<V>
+{
+  private static final int EMPTY = -1;
+
+  private int[] keys;
+  private Object[] values;
+  private int size = 0;
+
+  public IntMap()
+  {
+    this(8);
+  }
+
+  // a map that holds expected keys without growing
+  public IntMap(int expected)
+  {
+    int capacity = 8;
+    while (capacity < expected * 2)
+      capacity *= 2;
+    keys = new int[capacity];
+    Arrays.fill(keys, EMPTY);
+    values = new Object[capacity];
+  }
+
+  // a map with the keys and values of from, which it does not share
+  public IntMap(IntMap<V> from)
+  {
+    keys = from.keys.clone();
+    values = from.values.clone();
+    size = from.size;
+  }
+
+  // spread the key, so that dense ids do not cluster
+  private static int mix(int h)
+  {
+    h *= 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  // the slot of key, or the empty one where it would go
+  private int slot(int key)
+  {
+    int mask = keys.length - 1;
+    int i = mix(key) & mask;
+    while (keys[i] != key && keys[i] != EMPTY)
+      i = (i + 1) & mask;
+    return i;
+  }
+
+  @SuppressWarnings("unchecked")
+  public V get(int key)
+  {
+    return (V) values[slot(key)];
+  }
+
+  public boolean containsKey(int key)
+  {
+    return keys[slot(key)] == key;
+  }
+
+  // map key to value, and return what it was mapped to, or null
+  public V put(int key, V value)
+  {
+    if (key < 0)
+      new Bug();
+    int i = slot(key);
+    @SuppressWarnings("unchecked")
+    V old = (V) values[i];
+    values[i] = value;
+    if (keys[i] == EMPTY) {
+      keys[i] = key;
+      // keep the load factor at or below one half
+      if (++size * 2 > keys.length)
+        rehash(keys.length * 2);
+    }
+    return old;
+  }
+
+  private void rehash(int capacity)
+  {
+    int[] oldKeys = keys;
+    Object[] oldValues = values;
+    keys = new int[capacity];
+    Arrays.fill(keys, EMPTY);
+    values = new Object[capacity];
+    for (int j = 0; j < oldKeys.length; j++) {
+      if (oldKeys[j] == EMPTY)
+        continue;
+      int i = slot(oldKeys[j]);
+      keys[i] = oldKeys[j];
+      values[i] = oldValues[j];
+    }
+  }
+
+  public int size()
+  {
+    return size;
+  }
+
+  // remove all the keys, keeping the room they took
+  public void clear()
+  {
+    if (size == 0)
+      return;
+    Arrays.fill(keys, EMPTY);
+    Arrays.fill(values, null);
+    size = 0;
+  }
+}
@@ -1,13 +1,14 @@
 package util;
 
+// A label of the generated code. Labels are numbered by the compilation
+// that makes them (see control.CompilerContext.newLabel).
 public class Label
 {
   private int i;
-  private static int count = 0;
 
-  public Label()
+  public Label(int i)
   {
-    i = count++;
+    this.i = i;
   }
 
   @Override
@@ -0,0 +1,23 @@
+package util;
+
+// An interned name. Each distinct name exists exactly once in its
+// SymbolTable, so symbols can be compared by reference, or by id.
+public final class Symbol
+{
+  public final String name;
+  public final int id; // dense, in order of first appearance
+  final int hash;
+
+  Symbol(String name, int id, int hash)
+  {
+    this.name = name;
+    this.id = id;
+    this.hash = hash;
+  }
+
+  @Override
+  public String toString()
+  {
+    return this.name;
+  }
+}
@@ -0,0 +1,118 @@
+package util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Interns names into Symbols.
+//
+// The table is open-addressed and keyed by byte slices, so the lexer can
+// intern an identifier straight out of its input buffer with the hash it
+// computed while scanning; a String is only created the first time a name
+// is seen. Lookups do not lock: slots are only ever filled with fully
+// constructed symbols, and a resized table is published as a whole.
+// Insertions are serialized.
+public final class SymbolTable
+{
+  private volatile Symbol[] slots = new Symbol[1024];
+  private Symbol[] byId = new Symbol[256];
+  private volatile int size = 0;
+
+  // the hash the lexer computes while scanning: h = 31 * h + c
+  public static int hash(byte[] buf, int off, int len)
+  {
+    int h = 0;
+    for (int i = off; i < off + len; i++)
+      h = 31 * h + (buf[i] & 0xff);
+    return h;
+  }
+
+  private static boolean matches(Symbol s, int hash, byte[] buf, int off,
+      int len)
+  {
+    if (s.hash != hash || s.name.length() != len)
+      return false;
+    for (int i = 0; i < len; i++)
+      if (s.name.charAt(i) != (buf[off + i] & 0xff))
+        return false;
+    return true;
+  }
+
+  // spread the scan hash so that similar names do not cluster
+  private static int mix(int h)
+  {
+    h *= 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  public Symbol intern(byte[] buf, int off, int len, int hash)
+  {
+    Symbol[] t = this.slots;
+    int mask = t.length - 1;
+    for (int i = mix(hash) & mask;; i = (i + 1) & mask) {
+      Symbol s = t[i];
+      if (s == null)
+        break;
+      if (matches(s, hash, buf, off, len))
+        return s;
+    }
+    return insert(buf, off, len, hash);
+  }
+
+  public Symbol intern(String name)
+  {
+    byte[] bytes = name.getBytes(StandardCharsets.ISO_8859_1);
+    return intern(bytes, 0, bytes.length, hash(bytes, 0, bytes.length));
+  }
+
+  private synchronized Symbol insert(byte[] buf, int off, int len, int hash)
+  {
+    // probe again: another thread may have inserted the name, or
+    // resized the table, since the unlocked lookup
+    Symbol[] t = this.slots;
+    int mask = t.length - 1;
+    int i = mix(hash) & mask;
+    for (; t[i] != null; i = (i + 1) & mask)
+      if (matches(t[i], hash, buf, off, len))
+        return t[i];
+
+    Symbol s = new Symbol(new String(buf, off, len,
+        StandardCharsets.ISO_8859_1), size, hash);
+    if (size == byId.length)
+      byId = Arrays.copyOf(byId, size * 2);
+    byId[size] = s;
+    size++;
+    // keep the load factor at or below one half
+    if (size * 2 > t.length)
+      this.slots = rehash(t.length * 2);
+    else
+      t[i] = s;
+    return s;
+  }
+
+  private Symbol[] rehash(int capacity)
+  {
+    Symbol[] t = new Symbol[capacity];
+    int mask = capacity - 1;
+    for (int k = 0; k < size; k++) {
+      Symbol s = byId[k];
+      int i = mix(s.hash) & mask;
+      while (t[i] != null)
+        i = (i + 1) & mask;
+      t[i] = s;
+    }
+    return t;
+  }
+
+  // reading size first makes every symbol below it visible
+  public Symbol get(int id)
+  {
+    if (id < 0 || id >= this.size)
+      new Bug();
+    return byId[id];
+  }
+
+  public int size()
+  {
+    return this.size;
+  }
+}
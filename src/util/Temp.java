@@ -0,0 +1,19 @@
+package util;
+
+// A temporary of the generated code. Temporaries are numbered by the
+// compilation that makes them (see control.CompilerContext.newTemp).
+public class Temp
+{
+  private int i;
+
+  public Temp(int i)
+  {
+    this.i = i;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "t_" + (Integer.toString(this.i));
+  }
+}
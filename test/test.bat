@@ -1,7 +1,7 @@
 @echo ==================================================
 @echo test starting
 @echo =============
-for %%i in (*.java) do java -cp ../bin Tiger %%i
+java -cp ../bin Tiger .
 @echo =============
 @echo test finished
 @echo ==================================================